@@ -5,25 +5,47 @@ import com.dreikraft.ai.embedding.postgres.model.ThreadedDiscussionItem;
 import com.dreikraft.ai.embedding.postgres.service.ArticleService;
 import com.dreikraft.ai.embedding.postgres.service.DiscussionService;
 import com.dreikraft.ai.embedding.postgres.service.RagService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Controller
+@Slf4j
 public class ViewController {
+    private static final int MAX_REFERENCE_IDS = 20;
+
     private final ArticleService articleService;
     private final DiscussionService discussionService;
     private final RagService ragService;
+    private final long ragStreamTimeoutMillis;
+    private final ExecutorService ragStreamExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rag-stream-", 0).factory());
 
-    public ViewController(ArticleService articleService, DiscussionService discussionService, RagService ragService) {
+    public ViewController(ArticleService articleService,
+                          DiscussionService discussionService,
+                          RagService ragService,
+                          @Value("${app.rag.stream-timeout-ms:60000}") long ragStreamTimeoutMillis) {
         this.articleService = articleService;
         this.discussionService = discussionService;
         this.ragService = ragService;
+        this.ragStreamTimeoutMillis = ragStreamTimeoutMillis;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        ragStreamExecutor.shutdownNow();
     }
 
     @GetMapping("/")
@@ -35,8 +57,9 @@ public class ViewController {
         if (q != null && !q.isBlank()) {
             List<ArticleDocument> results;
             if ("rag".equals(mode)) {
-                model.addAttribute("ragAnswer", ragService.answer(q));
-                results = articleService.semanticSearch(q, ArticleService.ARTICLE_FILTER_EXPRESSION);
+                // One retrieval serves the result list and, via the ids, the streamed answer.
+                results = ragService.retrieve(q);
+                model.addAttribute("ragReferenceIds", results.stream().map(ArticleDocument::id).toList());
             } else if ("semantic".equals(mode)) {
                 results = articleService.semanticSearch(q, ArticleService.ARTICLE_FILTER_EXPRESSION);
             } else {
@@ -53,4 +76,45 @@ public class ViewController {
         model.addAttribute("count", articleService.count() + discussionService.count());
         return "index";
     }
+
+    /**
+     * Streams a RAG answer as Server-Sent Events: one {@code references} event with the retrieved
+     * articles, then a {@code token} event per answer chunk, and finally {@code done}, or
+     * {@code error} if retrieval or generation failed. With {@code ids} the answer is grounded in
+     * those articles, typically the results the caller already retrieved, instead of running the
+     * retrieval again.
+     */
+    @GetMapping(value = "/rag/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamRagAnswer(@RequestParam String q, @RequestParam(required = false) List<Long> ids) {
+        SseEmitter emitter = new SseEmitter(ragStreamTimeoutMillis);
+        ragStreamExecutor.execute(() -> {
+            try {
+                List<ArticleDocument> references = ids == null
+                        ? ragService.retrieve(q)
+                        : articleService.findByIds(ids.stream().limit(MAX_REFERENCE_IDS).toList());
+                emitter.send(SseEmitter.event().name("references").data(references, MediaType.APPLICATION_JSON));
+                // Chunks are sent as JSON so leading spaces and newlines survive the SSE framing.
+                ragService.streamAnswer(q, references, token -> send(emitter, "token", Map.of("text", token)));
+                emitter.send(SseEmitter.event().name("done").data(""));
+                emitter.complete();
+            } catch (IOException ex) {
+                log.debug("RAG stream client disconnected", ex);
+                emitter.completeWithError(ex);
+            } catch (RuntimeException ex) {
+                log.warn("RAG stream failed for query '{}'", q, ex);
+                send(emitter, "error", Map.of("message", "The answer could not be generated."));
+                emitter.complete();
+            }
+        });
+        return emitter;
+    }
+
+    private static boolean send(SseEmitter emitter, String event, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException ex) {
+            return false;
+        }
+    }
 }
@@ -44,6 +44,9 @@ public class ArticleEntity {
     @Column(name = "embedding_content_hash")
     private String embeddingContentHash;
 
+    @Column(name = "embedding_source_hash")
+    private String embeddingSourceHash;
+
     @Enumerated(EnumType.STRING)
     @Column(name = "embedding_status", length = 32)
     private EmbeddingStatus embeddingStatus;
@@ -39,6 +39,9 @@ public class DiscussionEntity {
     @Column(nullable = false, columnDefinition = "TEXT")
     private String content;
 
+    @Column(name = "content_hash")
+    private String contentHash;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "article_id")
     private ArticleEntity article;
@@ -73,12 +76,18 @@ public class DiscussionEntity {
     @Column(name = "classification_source", length = 64)
     private String classificationSource;
 
+    @Column(name = "classification_input_hash")
+    private String classificationInputHash;
+
     @Column(name = "embedded_at")
     private OffsetDateTime embeddedAt;
 
     @Column(name = "embedding_content_hash")
     private String embeddingContentHash;
 
+    @Column(name = "embedding_source_hash")
+    private String embeddingSourceHash;
+
     @Enumerated(EnumType.STRING)
     @Column(name = "embedding_status", length = 32)
     private EmbeddingStatus embeddingStatus;
@@ -41,6 +41,12 @@ public class DocumentIndexingJobEntity {
     @Column(name = "started_at")
     private OffsetDateTime startedAt;
 
+    @Column(name = "lease_until")
+    private OffsetDateTime leaseUntil;
+
+    @Column(name = "worker_id")
+    private String workerId;
+
     @Column(name = "completed_at")
     private OffsetDateTime completedAt;
 
@@ -125,6 +131,22 @@ public class DocumentIndexingJobEntity {
         this.startedAt = startedAt;
     }
 
+    public OffsetDateTime getLeaseUntil() {
+        return leaseUntil;
+    }
+
+    public void setLeaseUntil(OffsetDateTime leaseUntil) {
+        this.leaseUntil = leaseUntil;
+    }
+
+    public String getWorkerId() {
+        return workerId;
+    }
+
+    public void setWorkerId(String workerId) {
+        this.workerId = workerId;
+    }
+
     public OffsetDateTime getCompletedAt() {
         return completedAt;
     }
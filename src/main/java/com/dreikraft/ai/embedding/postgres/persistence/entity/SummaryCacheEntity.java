@@ -0,0 +1,101 @@
+package com.dreikraft.ai.embedding.postgres.persistence.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+
+import java.io.Serializable;
+import java.time.OffsetDateTime;
+import java.util.Objects;
+
+@Entity
+@Table(name = "summary_cache")
+public class SummaryCacheEntity {
+
+    @EmbeddedId
+    private Key key;
+
+    @Column(name = "summary", nullable = false, columnDefinition = "TEXT")
+    private String summary;
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt;
+
+    public Key getKey() {
+        return key;
+    }
+
+    public void setKey(Key key) {
+        this.key = key;
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    public void setSummary(String summary) {
+        this.summary = summary;
+    }
+
+    public OffsetDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(OffsetDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @Embeddable
+    public static class Key implements Serializable {
+
+        @Column(name = "source_hash", nullable = false)
+        private String sourceHash;
+
+        @Column(name = "chat_model", nullable = false, length = 128)
+        private String chatModel;
+
+        @Column(name = "prompt_version", nullable = false, length = 32)
+        private String promptVersion;
+
+        protected Key() {
+        }
+
+        public Key(String sourceHash, String chatModel, String promptVersion) {
+            this.sourceHash = sourceHash;
+            this.chatModel = chatModel;
+            this.promptVersion = promptVersion;
+        }
+
+        public String getSourceHash() {
+            return sourceHash;
+        }
+
+        public String getChatModel() {
+            return chatModel;
+        }
+
+        public String getPromptVersion() {
+            return promptVersion;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key key)) {
+                return false;
+            }
+            return Objects.equals(sourceHash, key.sourceHash)
+                    && Objects.equals(chatModel, key.chatModel)
+                    && Objects.equals(promptVersion, key.promptVersion);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sourceHash, chatModel, promptVersion);
+        }
+    }
+}
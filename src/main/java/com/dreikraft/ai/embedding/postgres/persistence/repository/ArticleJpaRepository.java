@@ -2,9 +2,11 @@ package com.dreikraft.ai.embedding.postgres.persistence.repository;
 
 import com.dreikraft.ai.embedding.postgres.persistence.entity.ArticleEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,6 +26,34 @@ public interface ArticleJpaRepository extends JpaRepository<ArticleEntity, Long>
             """, nativeQuery = true)
     List<ArticleEntity> findArticlesByIdIn(@Param("ids") List<Long> ids);
 
+    /**
+     * Records the embedding lineage of several articles in one statement. The three arrays are
+     * zipped by position.
+     */
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Query(value = """
+            UPDATE article_documents a
+            SET embedding_content_hash = v.embedding_content_hash,
+                embedding_source_hash = v.embedding_source_hash,
+                embedding_status = :status,
+                embedding_source = :source,
+                embedding_model = :model,
+                embedded_at = :embeddedAt,
+                updated_at = :embeddedAt
+            FROM unnest(CAST(:ids AS BIGINT[]),
+                        CAST(:embeddingContentHashes AS TEXT[]),
+                        CAST(:embeddingSourceHashes AS TEXT[]))
+                AS v(id, embedding_content_hash, embedding_source_hash)
+            WHERE a.id = v.id
+            """, nativeQuery = true)
+    int updateEmbeddingLineage(@Param("ids") Long[] ids,
+                               @Param("embeddingContentHashes") String[] embeddingContentHashes,
+                               @Param("embeddingSourceHashes") String[] embeddingSourceHashes,
+                               @Param("status") String status,
+                               @Param("source") String source,
+                               @Param("model") String model,
+                               @Param("embeddedAt") OffsetDateTime embeddedAt);
+
     @Query(value = """
             SELECT *
             FROM article_documents
@@ -2,14 +2,27 @@ package com.dreikraft.ai.embedding.postgres.persistence.repository;
 
 import com.dreikraft.ai.embedding.postgres.persistence.entity.DiscussionEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Optional;
 
 public interface DiscussionJpaRepository extends JpaRepository<DiscussionEntity, Long> {
 
+    /**
+     * The article a discussion belongs to, resolved through its chain of parent discussions.
+     */
+    interface RootArticle {
+        Long getDiscussionId();
+
+        Long getArticleId();
+
+        String getArticleTitle();
+    }
+
     @Query(value = """
             SELECT *
             FROM discussion_documents
@@ -17,6 +30,65 @@ public interface DiscussionJpaRepository extends JpaRepository<DiscussionEntity,
             """, nativeQuery = true)
     Optional<DiscussionEntity> findDiscussionById(@Param("id") Long id);
 
+    @Query(value = """
+            SELECT *
+            FROM discussion_documents
+            WHERE id IN (:ids)
+            """, nativeQuery = true)
+    List<DiscussionEntity> findDiscussionsByIdIn(@Param("ids") List<Long> ids);
+
+    /**
+     * Walks up the parent chain of every given discussion in one recursive query. Discussions
+     * whose chain does not end at an article are missing from the result.
+     */
+    @Query(value = """
+            WITH RECURSIVE chain (discussion_id, parent_discussion_id, article_id, depth) AS (
+                SELECT d.id, d.parent_discussion_id, d.article_id, 0
+                FROM discussion_documents d
+                WHERE d.id IN (:ids)
+                UNION ALL
+                SELECT c.discussion_id, p.parent_discussion_id, p.article_id, c.depth + 1
+                FROM chain c
+                JOIN discussion_documents p ON p.id = c.parent_discussion_id
+                WHERE c.article_id IS NULL
+                  AND c.depth < 1000
+            )
+            SELECT c.discussion_id AS discussionId,
+                   a.id AS articleId,
+                   a.title AS articleTitle
+            FROM chain c
+            JOIN article_documents a ON a.id = c.article_id
+            """, nativeQuery = true)
+    List<RootArticle> findRootArticles(@Param("ids") List<Long> ids);
+
+    /**
+     * Records the embedding lineage of several discussions in one statement. The three arrays are
+     * zipped by position.
+     */
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Query(value = """
+            UPDATE discussion_documents d
+            SET embedding_content_hash = v.embedding_content_hash,
+                embedding_source_hash = v.embedding_source_hash,
+                embedding_status = :status,
+                embedding_source = :source,
+                embedding_model = :model,
+                embedded_at = :embeddedAt,
+                updated_at = :embeddedAt
+            FROM unnest(CAST(:ids AS BIGINT[]),
+                        CAST(:embeddingContentHashes AS TEXT[]),
+                        CAST(:embeddingSourceHashes AS TEXT[]))
+                AS v(id, embedding_content_hash, embedding_source_hash)
+            WHERE d.id = v.id
+            """, nativeQuery = true)
+    int updateEmbeddingLineage(@Param("ids") Long[] ids,
+                               @Param("embeddingContentHashes") String[] embeddingContentHashes,
+                               @Param("embeddingSourceHashes") String[] embeddingSourceHashes,
+                               @Param("status") String status,
+                               @Param("source") String source,
+                               @Param("model") String model,
+                               @Param("embeddedAt") OffsetDateTime embeddedAt);
+
     @Query(value = """
             SELECT *
             FROM discussion_documents
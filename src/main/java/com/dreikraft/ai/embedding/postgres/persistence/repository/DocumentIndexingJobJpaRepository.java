@@ -8,21 +8,101 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface DocumentIndexingJobJpaRepository extends JpaRepository<DocumentIndexingJobEntity, Long> {
 
+    /**
+     * Inserts a pending job or folds the call into the pending job for the same document. A folded
+     * call starts the job over: its attempts are reset and it takes the new {@code availableAt},
+     * capped at {@code maxWaitMs} after the pending job was first created so that a steady stream
+     * of writes cannot postpone it indefinitely. {@code xmax = 0} only holds for a freshly
+     * inserted row.
+     */
+    @Query(value = """
+            INSERT INTO document_indexing_job (
+                job_type, document_type, document_id, status, attempt, max_attempts, available_at, created_at, updated_at
+            )
+            VALUES (
+                :jobType, :documentType, :documentId, 'pending', 0, :maxAttempts,
+                LEAST(CAST(:availableAt AS TIMESTAMPTZ),
+                      CAST(:now AS TIMESTAMPTZ) + CAST(:maxWaitMs AS DOUBLE PRECISION) * INTERVAL '1 millisecond'),
+                :now, :now
+            )
+            ON CONFLICT (job_type, document_type, document_id) WHERE status = 'pending'
+            DO UPDATE SET attempt = 0,
+                          available_at = LEAST(EXCLUDED.available_at,
+                                               document_indexing_job.created_at
+                                                   + CAST(:maxWaitMs AS DOUBLE PRECISION) * INTERVAL '1 millisecond'),
+                          updated_at = EXCLUDED.updated_at
+            RETURNING id AS "id", xmax = 0 AS "inserted", available_at <= :now AS "due"
+            """, nativeQuery = true)
+    PendingUpsert upsertPending(
+            @Param("jobType") String jobType,
+            @Param("documentType") String documentType,
+            @Param("documentId") long documentId,
+            @Param("availableAt") OffsetDateTime availableAt,
+            @Param("maxAttempts") int maxAttempts,
+            @Param("maxWaitMs") long maxWaitMs,
+            @Param("now") OffsetDateTime now
+    );
+
+    interface PendingUpsert {
+        Long getId();
+
+        Boolean getInserted();
+
+        Boolean getDue();
+    }
+
+    @Query("""
+            select min(j.availableAt)
+            from DocumentIndexingJobEntity j
+            where j.status = :status
+            """)
+    OffsetDateTime findMinAvailableAtByStatus(@Param("status") String status);
+
     List<DocumentIndexingJobEntity> findByStatusAndAvailableAtLessThanEqualOrderByAvailableAtAscIdAsc(
             String status,
             OffsetDateTime dueAt,
             Pageable pageable
     );
 
+    @Query(value = """
+            UPDATE document_indexing_job
+            SET status = :running,
+                started_at = :claimedAt,
+                lease_until = :leaseUntil,
+                worker_id = :workerId,
+                updated_at = :claimedAt
+            WHERE id IN (
+                SELECT id
+                FROM document_indexing_job
+                WHERE status = :pending
+                  AND available_at <= :claimedAt
+                ORDER BY available_at, id
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING *
+            """, nativeQuery = true)
+    List<DocumentIndexingJobEntity> claimDueBatch(
+            @Param("pending") String pending,
+            @Param("running") String running,
+            @Param("workerId") String workerId,
+            @Param("claimedAt") OffsetDateTime claimedAt,
+            @Param("leaseUntil") OffsetDateTime leaseUntil,
+            @Param("limit") int limit
+    );
+
     @Modifying(clearAutomatically = true, flushAutomatically = true)
     @Query("""
             update DocumentIndexingJobEntity j
             set j.status = :running,
                 j.startedAt = :claimedAt,
+                j.leaseUntil = :leaseUntil,
+                j.workerId = :workerId,
                 j.updatedAt = :updatedAt
             where j.id = :id
               and j.status = :pending
@@ -31,7 +111,9 @@ public interface DocumentIndexingJobJpaRepository extends JpaRepository<Document
             @Param("id") long id,
             @Param("pending") String pending,
             @Param("running") String running,
+            @Param("workerId") String workerId,
             @Param("claimedAt") OffsetDateTime claimedAt,
+            @Param("leaseUntil") OffsetDateTime leaseUntil,
             @Param("updatedAt") OffsetDateTime updatedAt
     );
 
@@ -40,12 +122,35 @@ public interface DocumentIndexingJobJpaRepository extends JpaRepository<Document
             update DocumentIndexingJobEntity j
             set j.status = :succeeded,
                 j.completedAt = :completedAt,
+                j.leaseUntil = null,
                 j.updatedAt = :updatedAt
             where j.id = :id
               and j.status = :running
+              and j.workerId = :workerId
             """)
     int markSucceeded(
             @Param("id") long id,
+            @Param("workerId") String workerId,
+            @Param("running") String running,
+            @Param("succeeded") String succeeded,
+            @Param("completedAt") OffsetDateTime completedAt,
+            @Param("updatedAt") OffsetDateTime updatedAt
+    );
+
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Query("""
+            update DocumentIndexingJobEntity j
+            set j.status = :succeeded,
+                j.completedAt = :completedAt,
+                j.leaseUntil = null,
+                j.updatedAt = :updatedAt
+            where j.id in :ids
+              and j.status = :running
+              and j.workerId = :workerId
+            """)
+    int markAllSucceeded(
+            @Param("ids") Collection<Long> ids,
+            @Param("workerId") String workerId,
             @Param("running") String running,
             @Param("succeeded") String succeeded,
             @Param("completedAt") OffsetDateTime completedAt,
@@ -59,13 +164,25 @@ public interface DocumentIndexingJobJpaRepository extends JpaRepository<Document
                 j.attempt = j.attempt + 1,
                 j.availableAt = :nextAttemptAt,
                 j.lastError = :errorMessage,
+                j.leaseUntil = null,
+                j.workerId = null,
                 j.updatedAt = :updatedAt
             where j.id = :id
               and j.status = :running
+              and j.workerId = :workerId
               and j.attempt < j.maxAttempts
+              and not exists (
+                  select p.id
+                  from DocumentIndexingJobEntity p
+                  where p.status = :pending
+                    and p.jobType = j.jobType
+                    and p.documentType = j.documentType
+                    and p.documentId = j.documentId
+              )
             """)
     int markFailedWithRetry(
             @Param("id") long id,
+            @Param("workerId") String workerId,
             @Param("running") String running,
             @Param("pending") String pending,
             @Param("nextAttemptAt") OffsetDateTime nextAttemptAt,
@@ -73,23 +190,149 @@ public interface DocumentIndexingJobJpaRepository extends JpaRepository<Document
             @Param("updatedAt") OffsetDateTime updatedAt
     );
 
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Query("""
+            update DocumentIndexingJobEntity j
+            set j.status = :superseded,
+                j.completedAt = :completedAt,
+                j.lastError = :errorMessage,
+                j.leaseUntil = null,
+                j.updatedAt = :updatedAt
+            where j.id = :id
+              and j.status = :running
+              and j.workerId = :workerId
+              and exists (
+                  select p.id
+                  from DocumentIndexingJobEntity p
+                  where p.status = :pending
+                    and p.jobType = j.jobType
+                    and p.documentType = j.documentType
+                    and p.documentId = j.documentId
+              )
+            """)
+    int markSuperseded(
+            @Param("id") long id,
+            @Param("workerId") String workerId,
+            @Param("running") String running,
+            @Param("pending") String pending,
+            @Param("superseded") String superseded,
+            @Param("completedAt") OffsetDateTime completedAt,
+            @Param("errorMessage") String errorMessage,
+            @Param("updatedAt") OffsetDateTime updatedAt
+    );
+
     @Modifying(clearAutomatically = true, flushAutomatically = true)
     @Query("""
             update DocumentIndexingJobEntity j
             set j.status = :deadLetter,
                 j.completedAt = :completedAt,
                 j.lastError = :errorMessage,
+                j.leaseUntil = null,
                 j.updatedAt = :updatedAt
             where j.id = :id
               and j.status = :running
-              and j.attempt >= j.maxAttempts
+              and j.workerId = :workerId
             """)
     int markDeadLetter(
             @Param("id") long id,
+            @Param("workerId") String workerId,
             @Param("running") String running,
             @Param("deadLetter") String deadLetter,
             @Param("completedAt") OffsetDateTime completedAt,
             @Param("errorMessage") String errorMessage,
             @Param("updatedAt") OffsetDateTime updatedAt
     );
+
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Query("""
+            update DocumentIndexingJobEntity j
+            set j.leaseUntil = :leaseUntil
+            where j.id in :ids
+              and j.status = :running
+              and j.workerId = :workerId
+            """)
+    int extendLeases(
+            @Param("ids") Collection<Long> ids,
+            @Param("running") String running,
+            @Param("workerId") String workerId,
+            @Param("leaseUntil") OffsetDateTime leaseUntil
+    );
+
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Query("""
+            update DocumentIndexingJobEntity j
+            set j.leaseUntil = :expiredAt
+            where j.status = :running
+              and j.workerId = :workerId
+            """)
+    int expireLeases(
+            @Param("running") String running,
+            @Param("workerId") String workerId,
+            @Param("expiredAt") OffsetDateTime expiredAt
+    );
+
+    /**
+     * Returns running jobs whose lease ran out to pending with the lost attempt counted. Jobs out
+     * of attempts are dead-lettered, and jobs that already have a pending successor are superseded.
+     * Only one job per document is reaped per call, so two expired runs of the same document
+     * cannot both become pending.
+     */
+    @Query(value = """
+            WITH expired AS (
+                SELECT DISTINCT ON (job_type, document_type, document_id) id
+                FROM (
+                    SELECT id, job_type, document_type, document_id
+                    FROM document_indexing_job
+                    WHERE status = :running
+                      AND (lease_until < :now
+                           OR (lease_until IS NULL AND COALESCE(started_at, updated_at) < :staleBefore))
+                    ORDER BY id
+                    LIMIT :limit
+                    FOR UPDATE SKIP LOCKED
+                ) locked
+                ORDER BY job_type, document_type, document_id, id DESC
+            ), resolved AS (
+                SELECT j.id,
+                       CASE
+                           WHEN EXISTS (
+                               SELECT 1
+                               FROM document_indexing_job p
+                               WHERE p.status = :pending
+                                 AND p.job_type = j.job_type
+                                 AND p.document_type = j.document_type
+                                 AND p.document_id = j.document_id
+                           ) THEN :superseded
+                           WHEN j.attempt < j.max_attempts THEN :pending
+                           ELSE :deadLetter
+                       END AS next_status
+                FROM document_indexing_job j
+                JOIN expired e ON e.id = j.id
+            )
+            UPDATE document_indexing_job j
+            SET status = r.next_status,
+                attempt = j.attempt + 1,
+                available_at = :now,
+                completed_at = CASE WHEN r.next_status = :pending THEN NULL ELSE CAST(:now AS TIMESTAMPTZ) END,
+                last_error = 'Lease expired on worker ' || COALESCE(j.worker_id, 'unknown'),
+                lease_until = NULL,
+                worker_id = CASE WHEN r.next_status = :pending THEN NULL ELSE j.worker_id END,
+                updated_at = :now
+            FROM resolved r
+            WHERE j.id = r.id
+            RETURNING j.*
+            """, nativeQuery = true)
+    List<DocumentIndexingJobEntity> reapExpiredLeases(
+            @Param("pending") String pending,
+            @Param("running") String running,
+            @Param("superseded") String superseded,
+            @Param("deadLetter") String deadLetter,
+            @Param("now") OffsetDateTime now,
+            @Param("staleBefore") OffsetDateTime staleBefore,
+            @Param("limit") int limit
+    );
+
+    @Query(value = """
+            SELECT CAST(pg_notify(:channel, :payload) AS TEXT)
+            """, nativeQuery = true)
+    String notifyChannel(@Param("channel") String channel, @Param("payload") String payload);
 }
@@ -0,0 +1,26 @@
+package com.dreikraft.ai.embedding.postgres.persistence.repository;
+
+import com.dreikraft.ai.embedding.postgres.persistence.entity.SummaryCacheEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.OffsetDateTime;
+
+public interface SummaryCacheJpaRepository extends JpaRepository<SummaryCacheEntity, SummaryCacheEntity.Key> {
+
+    @Modifying
+    @Query(value = """
+            INSERT INTO summary_cache (source_hash, chat_model, prompt_version, summary, created_at)
+            VALUES (:sourceHash, :chatModel, :promptVersion, :summary, :createdAt)
+            ON CONFLICT (source_hash, chat_model, prompt_version) DO NOTHING
+            """, nativeQuery = true)
+    int insertIfAbsent(
+            @Param("sourceHash") String sourceHash,
+            @Param("chatModel") String chatModel,
+            @Param("promptVersion") String promptVersion,
+            @Param("summary") String summary,
+            @Param("createdAt") OffsetDateTime createdAt
+    );
+}
@@ -12,6 +12,8 @@ public record DocumentIndexingJobRecord(
         int maxAttempts,
         OffsetDateTime availableAt,
         OffsetDateTime startedAt,
+        OffsetDateTime leaseUntil,
+        String workerId,
         OffsetDateTime completedAt,
         String lastError,
         OffsetDateTime createdAt,
@@ -3,20 +3,53 @@ package com.dreikraft.ai.embedding.postgres.repository;
 import java.time.OffsetDateTime;
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface DocumentIndexingJobRepository {
 
+    /**
+     * Enqueues a job, or folds it into the pending job for the same document. Folding resets the
+     * attempts and moves the job to the new {@code availableAt}, which is what debounces bursts of
+     * writes, but never past the configured maximum wait after the pending job was created.
+     */
     long enqueue(String jobType, String documentType, long documentId, OffsetDateTime availableAt, int maxAttempts);
 
     List<Long> enqueueBatch(Collection<DocumentIndexingJobCreateRequest> jobs);
 
+    Optional<OffsetDateTime> findNextAvailableAt();
+
     List<DocumentIndexingJobRecord> pollDue(DocumentIndexingJobStatus status, OffsetDateTime dueAt, int limit);
 
-    boolean claimPending(long jobId, OffsetDateTime claimedAt);
+    boolean claimPending(long jobId, String workerId, OffsetDateTime claimedAt, OffsetDateTime leaseUntil);
+
+    /**
+     * Claims up to {@code limit} due jobs for {@code workerId}. The claim is a lease: unless it is
+     * extended through {@link #extendLeases}, the job is handed back by {@link #reapExpiredLeases}
+     * once {@code leaseUntil} has passed.
+     */
+    List<DocumentIndexingJobRecord> claimBatch(String workerId, int limit, OffsetDateTime now, OffsetDateTime leaseUntil);
+
+    int extendLeases(String workerId, Collection<Long> jobIds, OffsetDateTime leaseUntil);
+
+    int expireLeases(String workerId, OffsetDateTime expiredAt);
+
+    /**
+     * Running jobs without a lease (claimed before leases existed) count as expired once they
+     * started before {@code staleBefore}.
+     */
+    List<DocumentIndexingJobRecord> reapExpiredLeases(OffsetDateTime now, OffsetDateTime staleBefore, int limit);
+
+    boolean markSucceeded(long jobId, String workerId, OffsetDateTime completedAt);
+
+    /**
+     * Completes the given jobs in one statement. Returns how many were still leased to
+     * {@code workerId}.
+     */
+    int markAllSucceeded(Collection<Long> jobIds, String workerId, OffsetDateTime completedAt);
 
-    boolean markSucceeded(long jobId, OffsetDateTime completedAt);
+    boolean markFailedWithRetry(long jobId, String workerId, OffsetDateTime nextAttemptAt, String errorMessage);
 
-    boolean markFailedWithRetry(long jobId, OffsetDateTime nextAttemptAt, String errorMessage);
+    boolean markSuperseded(long jobId, String workerId, OffsetDateTime completedAt, String errorMessage);
 
-    boolean markDeadLetter(long jobId, OffsetDateTime completedAt, String errorMessage);
+    boolean markDeadLetter(long jobId, String workerId, OffsetDateTime completedAt, String errorMessage);
 }
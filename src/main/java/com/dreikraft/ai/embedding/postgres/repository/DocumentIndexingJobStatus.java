@@ -4,6 +4,7 @@ public enum DocumentIndexingJobStatus {
     PENDING("pending"),
     RUNNING("running"),
     SUCCEEDED("succeeded"),
+    SUPERSEDED("superseded"),
     DEAD_LETTER("dead_letter");
 
     private final String value;
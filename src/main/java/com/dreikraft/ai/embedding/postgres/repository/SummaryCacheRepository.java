@@ -0,0 +1,14 @@
+package com.dreikraft.ai.embedding.postgres.repository;
+
+import java.util.Optional;
+
+public interface SummaryCacheRepository {
+
+    Optional<String> find(String sourceHash, String chatModel, String promptVersion);
+
+    /**
+     * Stores a summary unless one is already cached for the same key; concurrent workers that
+     * summarized the same source keep whichever summary was written first.
+     */
+    void save(String sourceHash, String chatModel, String promptVersion, String summary);
+}
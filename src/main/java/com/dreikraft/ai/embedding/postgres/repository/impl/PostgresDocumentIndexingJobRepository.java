@@ -6,47 +6,68 @@ import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobCreateR
 import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobRecord;
 import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobRepository;
 import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobStatus;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.OffsetDateTime;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 @Transactional
 public class PostgresDocumentIndexingJobRepository implements DocumentIndexingJobRepository {
+    public static final String NOTIFICATION_CHANNEL = "document_indexing_job";
 
     private final DocumentIndexingJobJpaRepository jpaRepository;
+    private final boolean notifyEnabled;
+    private final long debounceMaxWaitMillis;
 
-    public PostgresDocumentIndexingJobRepository(DocumentIndexingJobJpaRepository jpaRepository) {
+    public PostgresDocumentIndexingJobRepository(
+            DocumentIndexingJobJpaRepository jpaRepository,
+            @Value("${app.document-indexing.notify.enabled:false}") boolean notifyEnabled,
+            @Value("${app.document-indexing.debounce.max-wait-ms:60000}") long debounceMaxWaitMillis) {
         this.jpaRepository = jpaRepository;
+        this.notifyEnabled = notifyEnabled;
+        this.debounceMaxWaitMillis = debounceMaxWaitMillis;
     }
 
     @Override
     public long enqueue(String jobType, String documentType, long documentId, OffsetDateTime availableAt, int maxAttempts) {
-        DocumentIndexingJobEntity entity = new DocumentIndexingJobEntity();
-        entity.setJobType(jobType);
-        entity.setDocumentType(documentType);
-        entity.setDocumentId(documentId);
-        entity.setStatus(DocumentIndexingJobStatus.PENDING.value());
-        entity.setAttempt(0);
-        entity.setMaxAttempts(maxAttempts);
-        entity.setAvailableAt(availableAt);
-        entity.setCreatedAt(OffsetDateTime.now());
-        entity.setUpdatedAt(OffsetDateTime.now());
-        return jpaRepository.save(entity).getId();
+        DocumentIndexingJobJpaRepository.PendingUpsert upsert = jpaRepository.upsertPending(
+                jobType, documentType, documentId, availableAt, maxAttempts, debounceMaxWaitMillis, OffsetDateTime.now());
+        if (needsWakeUp(upsert)) {
+            notifyWorkers(jobType);
+        }
+        return upsert.getId();
     }
 
     @Override
     public List<Long> enqueueBatch(Collection<DocumentIndexingJobCreateRequest> jobs) {
-        List<DocumentIndexingJobEntity> entities = jobs.stream()
-                .map(this::toEntity)
-                .toList();
-        return jpaRepository.saveAll(entities).stream()
-                .map(DocumentIndexingJobEntity::getId)
+        OffsetDateTime now = OffsetDateTime.now();
+        List<DocumentIndexingJobJpaRepository.PendingUpsert> upserts = jobs.stream()
+                .map(job -> jpaRepository.upsertPending(
+                        job.jobType(),
+                        job.documentType(),
+                        job.documentId(),
+                        job.availableAt(),
+                        job.maxAttempts(),
+                        debounceMaxWaitMillis,
+                        now))
                 .toList();
+        if (upserts.stream().anyMatch(this::needsWakeUp)) {
+            notifyWorkers("batch");
+        }
+        return upserts.stream().map(DocumentIndexingJobJpaRepository.PendingUpsert::getId).toList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<OffsetDateTime> findNextAvailableAt() {
+        return Optional.ofNullable(jpaRepository.findMinAvailableAtByStatus(DocumentIndexingJobStatus.PENDING.value()));
     }
 
     @Override
@@ -62,19 +83,66 @@ public class PostgresDocumentIndexingJobRepository implements DocumentIndexingJo
     }
 
     @Override
-    public boolean claimPending(long jobId, OffsetDateTime claimedAt) {
+    public boolean claimPending(long jobId, String workerId, OffsetDateTime claimedAt, OffsetDateTime leaseUntil) {
         return jpaRepository.claimPending(
                 jobId,
                 DocumentIndexingJobStatus.PENDING.value(),
                 DocumentIndexingJobStatus.RUNNING.value(),
+                workerId,
                 claimedAt,
+                leaseUntil,
                 OffsetDateTime.now()) == 1;
     }
 
     @Override
-    public boolean markSucceeded(long jobId, OffsetDateTime completedAt) {
+    public List<DocumentIndexingJobRecord> claimBatch(String workerId, int limit, OffsetDateTime now, OffsetDateTime leaseUntil) {
+        return jpaRepository.claimDueBatch(
+                        DocumentIndexingJobStatus.PENDING.value(),
+                        DocumentIndexingJobStatus.RUNNING.value(),
+                        workerId,
+                        now,
+                        leaseUntil,
+                        limit
+                ).stream()
+                .sorted(Comparator.comparing(DocumentIndexingJobEntity::getAvailableAt)
+                        .thenComparing(DocumentIndexingJobEntity::getId))
+                .map(this::toRecord)
+                .toList();
+    }
+
+    @Override
+    public int extendLeases(String workerId, Collection<Long> jobIds, OffsetDateTime leaseUntil) {
+        if (jobIds.isEmpty()) {
+            return 0;
+        }
+        return jpaRepository.extendLeases(jobIds, DocumentIndexingJobStatus.RUNNING.value(), workerId, leaseUntil);
+    }
+
+    @Override
+    public int expireLeases(String workerId, OffsetDateTime expiredAt) {
+        return jpaRepository.expireLeases(DocumentIndexingJobStatus.RUNNING.value(), workerId, expiredAt);
+    }
+
+    @Override
+    public List<DocumentIndexingJobRecord> reapExpiredLeases(OffsetDateTime now, OffsetDateTime staleBefore, int limit) {
+        return jpaRepository.reapExpiredLeases(
+                        DocumentIndexingJobStatus.PENDING.value(),
+                        DocumentIndexingJobStatus.RUNNING.value(),
+                        DocumentIndexingJobStatus.SUPERSEDED.value(),
+                        DocumentIndexingJobStatus.DEAD_LETTER.value(),
+                        now,
+                        staleBefore,
+                        limit
+                ).stream()
+                .map(this::toRecord)
+                .toList();
+    }
+
+    @Override
+    public boolean markSucceeded(long jobId, String workerId, OffsetDateTime completedAt) {
         return jpaRepository.markSucceeded(
                 jobId,
+                workerId,
                 DocumentIndexingJobStatus.RUNNING.value(),
                 DocumentIndexingJobStatus.SUCCEEDED.value(),
                 completedAt,
@@ -82,9 +150,24 @@ public class PostgresDocumentIndexingJobRepository implements DocumentIndexingJo
     }
 
     @Override
-    public boolean markFailedWithRetry(long jobId, OffsetDateTime nextAttemptAt, String errorMessage) {
+    public int markAllSucceeded(Collection<Long> jobIds, String workerId, OffsetDateTime completedAt) {
+        if (jobIds.isEmpty()) {
+            return 0;
+        }
+        return jpaRepository.markAllSucceeded(
+                jobIds,
+                workerId,
+                DocumentIndexingJobStatus.RUNNING.value(),
+                DocumentIndexingJobStatus.SUCCEEDED.value(),
+                completedAt,
+                OffsetDateTime.now());
+    }
+
+    @Override
+    public boolean markFailedWithRetry(long jobId, String workerId, OffsetDateTime nextAttemptAt, String errorMessage) {
         return jpaRepository.markFailedWithRetry(
                 jobId,
+                workerId,
                 DocumentIndexingJobStatus.RUNNING.value(),
                 DocumentIndexingJobStatus.PENDING.value(),
                 nextAttemptAt,
@@ -93,9 +176,23 @@ public class PostgresDocumentIndexingJobRepository implements DocumentIndexingJo
     }
 
     @Override
-    public boolean markDeadLetter(long jobId, OffsetDateTime completedAt, String errorMessage) {
+    public boolean markSuperseded(long jobId, String workerId, OffsetDateTime completedAt, String errorMessage) {
+        return jpaRepository.markSuperseded(
+                jobId,
+                workerId,
+                DocumentIndexingJobStatus.RUNNING.value(),
+                DocumentIndexingJobStatus.PENDING.value(),
+                DocumentIndexingJobStatus.SUPERSEDED.value(),
+                completedAt,
+                errorMessage,
+                OffsetDateTime.now()) == 1;
+    }
+
+    @Override
+    public boolean markDeadLetter(long jobId, String workerId, OffsetDateTime completedAt, String errorMessage) {
         return jpaRepository.markDeadLetter(
                 jobId,
+                workerId,
                 DocumentIndexingJobStatus.RUNNING.value(),
                 DocumentIndexingJobStatus.DEAD_LETTER.value(),
                 completedAt,
@@ -103,18 +200,23 @@ public class PostgresDocumentIndexingJobRepository implements DocumentIndexingJo
                 OffsetDateTime.now()) == 1;
     }
 
-    private DocumentIndexingJobEntity toEntity(DocumentIndexingJobCreateRequest request) {
-        DocumentIndexingJobEntity entity = new DocumentIndexingJobEntity();
-        entity.setJobType(request.jobType());
-        entity.setDocumentType(request.documentType());
-        entity.setDocumentId(request.documentId());
-        entity.setStatus(DocumentIndexingJobStatus.PENDING.value());
-        entity.setAttempt(0);
-        entity.setMaxAttempts(request.maxAttempts());
-        entity.setAvailableAt(request.availableAt());
-        entity.setCreatedAt(OffsetDateTime.now());
-        entity.setUpdatedAt(OffsetDateTime.now());
-        return entity;
+    /**
+     * Workers are told about new jobs and about jobs that are due right away. A call folded into a
+     * pending job that is still debounced needs no wake-up: the workers already armed one for that
+     * job when they last found nothing due, and claiming now would find nothing either.
+     */
+    private boolean needsWakeUp(DocumentIndexingJobJpaRepository.PendingUpsert upsert) {
+        return Boolean.TRUE.equals(upsert.getInserted()) || Boolean.TRUE.equals(upsert.getDue());
+    }
+
+    /**
+     * Postgres delivers the notification on commit, so listening workers only wake up once the new
+     * rows are visible to their claim query.
+     */
+    private void notifyWorkers(String payload) {
+        if (notifyEnabled) {
+            jpaRepository.notifyChannel(NOTIFICATION_CHANNEL, payload);
+        }
     }
 
     private DocumentIndexingJobRecord toRecord(DocumentIndexingJobEntity entity) {
@@ -128,6 +230,8 @@ public class PostgresDocumentIndexingJobRepository implements DocumentIndexingJo
                 entity.getMaxAttempts(),
                 entity.getAvailableAt(),
                 entity.getStartedAt(),
+                entity.getLeaseUntil(),
+                entity.getWorkerId(),
                 entity.getCompletedAt(),
                 entity.getLastError(),
                 entity.getCreatedAt(),
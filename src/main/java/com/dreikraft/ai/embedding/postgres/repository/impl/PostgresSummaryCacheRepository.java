@@ -0,0 +1,32 @@
+package com.dreikraft.ai.embedding.postgres.repository.impl;
+
+import com.dreikraft.ai.embedding.postgres.persistence.entity.SummaryCacheEntity;
+import com.dreikraft.ai.embedding.postgres.persistence.repository.SummaryCacheJpaRepository;
+import com.dreikraft.ai.embedding.postgres.repository.SummaryCacheRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+
+@Repository
+@Transactional
+public class PostgresSummaryCacheRepository implements SummaryCacheRepository {
+    private final SummaryCacheJpaRepository jpaRepository;
+
+    public PostgresSummaryCacheRepository(SummaryCacheJpaRepository jpaRepository) {
+        this.jpaRepository = jpaRepository;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<String> find(String sourceHash, String chatModel, String promptVersion) {
+        return jpaRepository.findById(new SummaryCacheEntity.Key(sourceHash, chatModel, promptVersion))
+                .map(SummaryCacheEntity::getSummary);
+    }
+
+    @Override
+    public void save(String sourceHash, String chatModel, String promptVersion, String summary) {
+        jpaRepository.insertIfAbsent(sourceHash, chatModel, promptVersion, summary, OffsetDateTime.now());
+    }
+}
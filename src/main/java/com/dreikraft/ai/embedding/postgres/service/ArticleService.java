@@ -5,21 +5,33 @@ import com.dreikraft.ai.embedding.postgres.model.ArticleCreateRequest;
 import com.dreikraft.ai.embedding.postgres.model.ArticleDocument;
 import com.dreikraft.ai.embedding.postgres.persistence.entity.ArticleEntity;
 import com.dreikraft.ai.embedding.postgres.persistence.repository.ArticleJpaRepository;
+import com.dreikraft.ai.embedding.postgres.service.DocumentVectorStoreService.ScoredId;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 @Service
 @Transactional
+@Slf4j
 public class ArticleService {
     public static final String ARTICLE_FILTER_EXPRESSION = "sampleType == 'article'";
 
@@ -29,8 +41,14 @@ public class ArticleService {
     private final DocumentVectorStoreService vectorStoreService;
     private final DocumentIndexingJobService documentIndexingJobService;
     private final SemanticSearchRerankingService rerankingService;
+    private final SemanticSearchRerankGate rerankGate;
     private final boolean queryRewriteEnabled;
     private final boolean dualQueryEnabled;
+    private final long rewriteDeadlineNanos;
+    private final ExecutorService executor;
+    private final Timer singleQueryTimer;
+    private final Timer dualQueryTimer;
+    private final Counter rewriteDeadlineMisses;
 
     public ArticleService(ArticleJpaRepository articleRepository,
                           ArticleEntityMapper articleMapper,
@@ -38,22 +56,39 @@ public class ArticleService {
                           DocumentVectorStoreService vectorStoreService,
                           DocumentIndexingJobService documentIndexingJobService,
                           SemanticSearchRerankingService rerankingService,
+                          SemanticSearchRerankGate rerankGate,
+                          MeterRegistry meterRegistry,
                           @Value("${app.semantic-search.query-rewrite.enabled:true}") boolean queryRewriteEnabled,
-                          @Value("${app.semantic-search.dual-query.enabled:false}") boolean dualQueryEnabled) {
+                          @Value("${app.semantic-search.dual-query.enabled:false}") boolean dualQueryEnabled,
+                          @Value("${app.semantic-search.dual-query.rewrite-deadline-ms:1500}") long rewriteDeadlineMs) {
         this.articleRepository = articleRepository;
         this.articleMapper = articleMapper;
         this.semanticSummaryService = semanticSummaryService;
         this.vectorStoreService = vectorStoreService;
         this.documentIndexingJobService = documentIndexingJobService;
         this.rerankingService = rerankingService;
+        this.rerankGate = rerankGate;
         this.queryRewriteEnabled = queryRewriteEnabled;
         this.dualQueryEnabled = dualQueryEnabled;
+        this.rewriteDeadlineNanos = Duration.ofMillis(rewriteDeadlineMs).toNanos();
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("semantic-search-", 0).factory());
+        this.singleQueryTimer = searchTimer(meterRegistry, "single");
+        this.dualQueryTimer = searchTimer(meterRegistry, "dual");
+        this.rewriteDeadlineMisses = Counter.builder("semantic.search.rewrite.deadline.missed")
+                .description("Dual-query searches that returned original-query results because the rewrite was too slow")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
     }
 
     public long create(ArticleCreateRequest request) {
         ArticleEntity entity = new ArticleEntity();
         entity.setTitle(request.title());
         entity.setContent(request.content());
+        entity.setContentHash(ContentHashes.sha256(request.content()));
         ArticleEntity saved = articleRepository.save(entity);
         documentIndexingJobService.enqueue(DocumentIndexingJobType.EMBED_UPSERT, DocumentType.ARTICLE, saved.getId());
         return saved.getId();
@@ -62,11 +97,20 @@ public class ArticleService {
     public void update(long id, String content) {
         ArticleEntity entity = articleRepository.findArticleById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Article not found: " + id));
+        String contentHash = ContentHashes.sha256(content);
+        boolean contentChanged = !contentHash.equals(entity.getContentHash());
+        if (!contentChanged && entity.getEmbeddingStatus() == EmbeddingStatus.SUCCEEDED) {
+            return;
+        }
         entity.setContent(content);
-        entity.setContentHash(hashContent(content));
+        entity.setContentHash(contentHash);
         entity.setEmbeddedAt(null);
         articleRepository.save(entity);
         documentIndexingJobService.enqueue(DocumentIndexingJobType.EMBED_UPSERT, DocumentType.ARTICLE, id);
+        if (contentChanged) {
+            // Root discussions are classified against the article, so their labels are stale now.
+            documentIndexingJobService.enqueue(DocumentIndexingJobType.DISCUSSION_CLASSIFY, DocumentType.ARTICLE, id);
+        }
     }
 
     @Transactional(readOnly = true)
@@ -76,6 +120,21 @@ public class ArticleService {
                 .orElseThrow(() -> new IllegalArgumentException("Article not found: " + id));
     }
 
+    /**
+     * Loads the given articles in the order of {@code ids}, skipping ids that no longer exist.
+     */
+    @Transactional(readOnly = true)
+    public List<ArticleDocument> findByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, ArticleDocument> byId = articleRepository.findArticlesByIdIn(ids)
+                .stream()
+                .map(articleMapper::toArticleDocument)
+                .collect(Collectors.toMap(ArticleDocument::id, article -> article));
+        return ids.stream().map(byId::get).filter(java.util.Objects::nonNull).toList();
+    }
+
     @Transactional(readOnly = true)
     public List<ArticleDocument> keywordSearch(String term) {
         return articleRepository.keywordSearchArticles(term, 20).stream().map(articleMapper::toArticleDocument).toList();
@@ -88,37 +147,113 @@ public class ArticleService {
 
     @Transactional(readOnly = true)
     public List<ArticleDocument> semanticSearch(String query, String filterExpression) {
+        long started = System.nanoTime();
+        List<ScoredId> hits = dualQueryEnabled
+                ? dualQueryTimer.record(() -> searchDualQueryIds(query, filterExpression))
+                : singleQueryTimer.record(() -> searchIds(query, filterExpression));
+        if (hits.isEmpty()) {
+            return List.of();
+        }
+        List<Long> ids = hits.stream().map(ScoredId::id).toList();
+
+        List<ArticleDocument> candidates = findByIds(ids);
+        Map<Long, ArticleDocument> byId = candidates.stream()
+                .collect(Collectors.toMap(ArticleDocument::id, article -> article));
+        List<Long> rerankedIds = ids;
+        if (rerankGate.decide(hits, System.nanoTime() - started).rerank()) {
+            long rerankStarted = System.nanoTime();
+            rerankedIds = rerankingService.rerank(query, ids, candidates);
+            rerankGate.recordRerankLatency(System.nanoTime() - rerankStarted);
+        }
+
+        return rerankedIds.stream().map(byId::get).filter(java.util.Objects::nonNull).toList();
+    }
+
+    private List<ScoredId> searchIds(String query, String filterExpression) {
         String rewrittenQuery = queryRewriteEnabled
                 ? semanticSummaryService.summarizeQueryForSemanticSearch(query)
                 : query;
+        return vectorStoreService.searchScoredIds(rewrittenQuery, 20, filterExpression);
+    }
 
-        List<Long> ids = dualQueryEnabled
-                ? mergeRankedIds(
-                vectorStoreService.searchIds(query, 20, filterExpression),
-                vectorStoreService.searchIds(rewrittenQuery, 20, filterExpression)
-        )
-                : vectorStoreService.searchIds(rewrittenQuery, 20, filterExpression);
-        if (ids.isEmpty()) {
-            return List.of();
+    /**
+     * Starts the original-query search right away and the rewritten-query search as soon as the
+     * rewrite returns. If the rewrite and its search are not done by the rewrite deadline, the
+     * original-query results are returned alone; the late rewrite still lands in the rewrite cache,
+     * but a rewrite that returns after the deadline does not start a search whose result would be
+     * thrown away.
+     */
+    private List<ScoredId> searchDualQueryIds(String query, String filterExpression) {
+        long deadline = System.nanoTime() + rewriteDeadlineNanos;
+        CompletableFuture<List<ScoredId>> originalIds = CompletableFuture.supplyAsync(
+                () -> vectorStoreService.searchScoredIds(query, 20, filterExpression), executor);
+        if (!queryRewriteEnabled) {
+            return join(originalIds);
         }
+        CompletableFuture<List<ScoredId>> rewrittenIds = CompletableFuture
+                .supplyAsync(() -> semanticSummaryService.summarizeQueryForSemanticSearch(query), executor)
+                .thenCompose(rewrittenQuery -> {
+                    if (rewrittenQuery.equals(query)) {
+                        return originalIds;
+                    }
+                    if (deadline - System.nanoTime() <= 0) {
+                        return CompletableFuture.failedFuture(new TimeoutException("Query rewrite returned after its deadline"));
+                    }
+                    return CompletableFuture.supplyAsync(() -> vectorStoreService.searchScoredIds(rewrittenQuery, 20, filterExpression), executor);
+                });
 
-        Map<Long, ArticleDocument> byId = articleRepository.findArticlesByIdIn(ids)
-                .stream()
-                .map(articleMapper::toArticleDocument)
-                .collect(Collectors.toMap(ArticleDocument::id, article -> article));
+        List<ScoredId> original = join(originalIds);
+        try {
+            return mergeRankedIds(original, rewrittenIds.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+        } catch (TimeoutException ex) {
+            return missedRewriteDeadline(original);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof TimeoutException) {
+                return missedRewriteDeadline(original);
+            }
+            log.warn("Rewritten-query search failed; using original-query results", ex.getCause());
+            return original;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return original;
+        }
+    }
 
-        List<ArticleDocument> candidates = ids.stream().map(byId::get).filter(java.util.Objects::nonNull).toList();
-        List<Long> rerankedIds = rerankingService.rerank(query, ids, candidates);
+    private List<ScoredId> missedRewriteDeadline(List<ScoredId> original) {
+        rewriteDeadlineMisses.increment();
+        log.debug("Query rewrite missed its {} ms deadline; using original-query results", TimeUnit.NANOSECONDS.toMillis(rewriteDeadlineNanos));
+        return original;
+    }
 
-        return rerankedIds.stream().map(byId::get).filter(java.util.Objects::nonNull).toList();
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw ex;
+        }
+    }
+
+    private static Timer searchTimer(MeterRegistry meterRegistry, String mode) {
+        return Timer.builder("semantic.search")
+                .description("Vector retrieval latency of semantic search, before loading and reranking")
+                .tag("mode", mode)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
     }
 
-    private List<Long> mergeRankedIds(List<Long> originalQueryIds, List<Long> rewrittenQueryIds) {
+    /**
+     * Orders by reciprocal rank fusion; each merged hit keeps its best similarity score from either query.
+     */
+    private List<ScoredId> mergeRankedIds(List<ScoredId> originalQueryIds, List<ScoredId> rewrittenQueryIds) {
         Map<Long, Double> rrfScores = new HashMap<>();
         Map<Long, Integer> bestRank = new HashMap<>();
+        Map<Long, Double> bestScore = new HashMap<>();
 
-        accumulateRrfScores(originalQueryIds, rrfScores, bestRank);
-        accumulateRrfScores(rewrittenQueryIds, rrfScores, bestRank);
+        accumulateRrfScores(originalQueryIds, rrfScores, bestRank, bestScore);
+        accumulateRrfScores(rewrittenQueryIds, rrfScores, bestRank, bestScore);
 
         return rrfScores.entrySet().stream()
                 .sorted(Comparator
@@ -126,18 +261,22 @@ public class ArticleService {
                         .reversed()
                         .thenComparing(entry -> bestRank.get(entry.getKey()))
                         .thenComparing(Map.Entry::getKey))
-                .map(Map.Entry::getKey)
+                .map(entry -> new ScoredId(entry.getKey(), bestScore.get(entry.getKey())))
                 .toList();
     }
 
-    private void accumulateRrfScores(List<Long> ids, Map<Long, Double> rrfScores, Map<Long, Integer> bestRank) {
+    private void accumulateRrfScores(List<ScoredId> hits,
+                                     Map<Long, Double> rrfScores,
+                                     Map<Long, Integer> bestRank,
+                                     Map<Long, Double> bestScore) {
         final int rankConstant = 60;
-        for (int i = 0; i < ids.size(); i++) {
-            Long id = ids.get(i);
+        for (int i = 0; i < hits.size(); i++) {
+            Long id = hits.get(i).id();
             int rank = i + 1;
             double score = 1.0d / (rankConstant + rank);
             rrfScores.merge(id, score, Double::sum);
             bestRank.merge(id, rank, Math::min);
+            bestScore.merge(id, hits.get(i).score(), Math::max);
         }
     }
 
@@ -145,18 +284,4 @@ public class ArticleService {
     public long count() {
         return articleRepository.countArticles();
     }
-
-    private String hashContent(String content) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(content.getBytes(StandardCharsets.UTF_8));
-            StringBuilder builder = new StringBuilder();
-            for (byte b : hash) {
-                builder.append(String.format("%02x", b));
-            }
-            return builder.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException("SHA-256 algorithm is not available", e);
-        }
-    }
 }
@@ -0,0 +1,66 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 hex digests used to detect unchanged documents before any model is called.
+ */
+final class ContentHashes {
+
+    private ContentHashes() {
+    }
+
+    static String sha256(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder();
+            for (byte b : hash) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 algorithm is not available", ex);
+        }
+    }
+
+    /**
+     * Hash of everything an embedding is derived from: the raw title and content, the parent
+     * article title for discussions, and the embedding model. Parts are NUL-separated so that
+     * shifting text between fields changes the hash.
+     */
+    static String embeddingSource(String embeddingModel, String title, String content, String articleTitle) {
+        return sha256(String.join("\u0000",
+                nullToEmpty(embeddingModel), nullToEmpty(title), nullToEmpty(content), nullToEmpty(articleTitle)));
+    }
+
+    /**
+     * Like {@link #embeddingSource(String, String, String, String)} for documents embedded in
+     * chunks, with the chunk settings as another part.
+     */
+    static String embeddingSource(String embeddingModel, String title, String content, String articleTitle, String chunking) {
+        return sha256(String.join("\u0000",
+                nullToEmpty(embeddingModel), nullToEmpty(title), nullToEmpty(content), nullToEmpty(articleTitle), chunking));
+    }
+
+    /**
+     * Hash of the title and content a document summary is generated from.
+     */
+    static String summarySource(String title, String content) {
+        return sha256(String.join("\u0000", nullToEmpty(title), nullToEmpty(content)));
+    }
+
+    /**
+     * Hash of what a discussion item is classified against: its own content plus the article
+     * title and content for root items, or the direct parent's content for responses.
+     */
+    static String classificationInput(String contextTitle, String context, String content) {
+        return sha256(String.join("\u0000", nullToEmpty(contextTitle), nullToEmpty(context), nullToEmpty(content)));
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
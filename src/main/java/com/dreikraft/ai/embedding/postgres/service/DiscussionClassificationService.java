@@ -4,15 +4,35 @@ import com.dreikraft.ai.embedding.postgres.model.DiscussionDocument;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 public interface DiscussionClassificationService {
     Map<Long, DiscussionClassification> classify(DiscussionClassificationInput input);
 
+    /**
+     * The whole discussion tree of an article. Only {@code targetIds} are classified and returned;
+     * the remaining items provide parent context.
+     */
     record DiscussionClassificationInput(String articleTitle,
                                          String articleContent,
-                                         List<DiscussionDocument> discussions) {
+                                         List<DiscussionDocument> discussions,
+                                         Set<Long> targetIds) {
+
+        DiscussionClassificationInput(String articleTitle, String articleContent, List<DiscussionDocument> discussions) {
+            this(articleTitle, articleContent, discussions, discussions.stream()
+                    .map(DiscussionDocument::id)
+                    .collect(Collectors.toUnmodifiableSet()));
+        }
     }
 
-    record DiscussionClassification(String sentiment, String responseDepth) {
+    /**
+     * {@code fallback} marks default labels used because the model returned no classification.
+     */
+    record DiscussionClassification(String sentiment, String responseDepth, boolean fallback) {
+
+        DiscussionClassification(String sentiment, String responseDepth) {
+            this(sentiment, responseDepth, false);
+        }
     }
 }
@@ -40,6 +40,7 @@ public class DiscussionService {
         DiscussionEntity entity = new DiscussionEntity();
         entity.setTitle(request.title());
         entity.setContent(request.content());
+        entity.setContentHash(ContentHashes.sha256(request.content()));
         entity.setDiscussionSection(request.discussionSection());
 
         if (request.respondsToDocumentId() != null) {
@@ -66,7 +67,12 @@ public class DiscussionService {
     public void update(long discussionId, String content) {
         DiscussionEntity discussion = discussionRepository.findDiscussionById(discussionId)
                 .orElseThrow(() -> new IllegalArgumentException("Discussion not found: " + discussionId));
+        String contentHash = ContentHashes.sha256(content);
+        if (contentHash.equals(discussion.getContentHash()) && discussion.getEmbeddingStatus() == EmbeddingStatus.SUCCEEDED) {
+            return;
+        }
         discussion.setContent(content);
+        discussion.setContentHash(contentHash);
         DiscussionEntity saved = discussionRepository.save(discussion);
 
         long articleId = resolveArticleId(saved);
@@ -0,0 +1,107 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits long document content into overlapping chunks of at most {@code chunk-size} characters.
+ * A chunk ends at the last sentence boundary in the second half of its window, or at the last
+ * whitespace if there is none, so passages are rarely cut mid-sentence. The next chunk starts up
+ * to {@code overlap} characters earlier, at a word boundary.
+ */
+@Component
+public class DocumentChunker {
+
+    private final DocumentChunkingProperties properties;
+
+    public DocumentChunker(DocumentChunkingProperties properties) {
+        this.properties = properties;
+    }
+
+    public boolean enabled() {
+        return properties.enabled();
+    }
+
+    /**
+     * Identifies the chunk settings used for a document type, so a change of them can be told
+     * apart from an unchanged source.
+     */
+    public String strategy(DocumentType documentType) {
+        return "chunks:" + properties.chunkSize(documentType) + "/" + properties.overlap(documentType);
+    }
+
+    public List<Chunk> chunk(DocumentType documentType, String content) {
+        if (content == null || content.isBlank()) {
+            return List.of();
+        }
+        int chunkSize = Math.max(1, properties.chunkSize(documentType));
+        int overlap = Math.clamp(properties.overlap(documentType), 0, chunkSize / 2);
+
+        List<Chunk> chunks = new ArrayList<>();
+        int start = skipWhitespace(content, 0);
+        while (start < content.length()) {
+            int end = Math.min(start + chunkSize, content.length());
+            if (end < content.length()) {
+                end = breakPoint(content, start, end, start + chunkSize / 2);
+            }
+            int trimmedEnd = end;
+            while (trimmedEnd > start && Character.isWhitespace(content.charAt(trimmedEnd - 1))) {
+                trimmedEnd--;
+            }
+            chunks.add(new Chunk(chunks.size(), start, trimmedEnd, content.substring(start, trimmedEnd)));
+            if (end >= content.length()) {
+                break;
+            }
+            start = skipWhitespace(content, wordStart(content, Math.max(end - overlap, start + 1), end));
+        }
+        return chunks;
+    }
+
+    /**
+     * Last sentence end in {@code [min, end]}, else the last whitespace, else {@code end} itself.
+     */
+    private static int breakPoint(String content, int start, int end, int min) {
+        int whitespace = -1;
+        for (int i = end; i > min && i > start; i--) {
+            char previous = content.charAt(i - 1);
+            boolean atWhitespace = Character.isWhitespace(content.charAt(i));
+            if (previous == '\n' || (atWhitespace && (previous == '.' || previous == '!' || previous == '?'))) {
+                return i;
+            }
+            if (whitespace < 0 && atWhitespace) {
+                whitespace = i;
+            }
+        }
+        return whitespace > 0 ? whitespace : end;
+    }
+
+    /**
+     * {@code from} if a word starts there, otherwise the start of the next word before {@code end}.
+     */
+    private static int wordStart(String content, int from, int end) {
+        if (Character.isWhitespace(content.charAt(from - 1))) {
+            return from;
+        }
+        int i = from;
+        while (i < end && !Character.isWhitespace(content.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipWhitespace(String content, int from) {
+        int i = from;
+        while (i < content.length() && Character.isWhitespace(content.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * A passage of the content; {@code start} and {@code end} are character offsets into it.
+     */
+    public record Chunk(int index, int start, int end, String content) {
+    }
+}
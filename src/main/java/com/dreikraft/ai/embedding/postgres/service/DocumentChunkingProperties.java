@@ -0,0 +1,40 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.Map;
+
+/**
+ * How the embedding pipeline splits documents at or above {@code summarize-threshold-chars} into
+ * chunks that are embedded directly, instead of summarizing them first.
+ *
+ * @param enabled   chunk long documents; when {@code false} they are summarized by the chat model
+ * @param chunkSize maximum characters per chunk
+ * @param overlap   characters a chunk repeats from the end of the previous one
+ * @param types     per-document-type overrides, keyed by type ({@code article}, {@code discussion})
+ */
+@ConfigurationProperties(prefix = "app.document-indexing.chunking")
+public record DocumentChunkingProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("1000") int chunkSize,
+        @DefaultValue("150") int overlap,
+        Map<DocumentType, TypeChunking> types) {
+
+    public DocumentChunkingProperties {
+        types = types == null ? Map.of() : Map.copyOf(types);
+    }
+
+    public record TypeChunking(Integer chunkSize, Integer overlap) {
+    }
+
+    int chunkSize(DocumentType documentType) {
+        TypeChunking chunking = types.get(documentType);
+        return chunking == null || chunking.chunkSize() == null ? chunkSize : chunking.chunkSize();
+    }
+
+    int overlap(DocumentType documentType) {
+        TypeChunking chunking = types.get(documentType);
+        return chunking == null || chunking.overlap() == null ? overlap : chunking.overlap();
+    }
+}
@@ -0,0 +1,403 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import com.dreikraft.ai.embedding.postgres.persistence.entity.ArticleEntity;
+import com.dreikraft.ai.embedding.postgres.persistence.entity.DiscussionEntity;
+import com.dreikraft.ai.embedding.postgres.persistence.repository.ArticleJpaRepository;
+import com.dreikraft.ai.embedding.postgres.persistence.repository.DiscussionJpaRepository;
+import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobRecord;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Runs EMBED_UPSERT jobs through four stages, each with its own bounded queue and concurrency:
+ * <ol>
+ *     <li>{@code summarize} splits long content into chunks, or condenses it with the chat model
+ *     if chunking is disabled,</li>
+ *     <li>{@code transform} derives the embedding variants (chat model); chunked content is
+ *     embedded as is, one vector per chunk,</li>
+ *     <li>{@code embed} waits for the variants to be embedded and stored by the shared
+ *     {@link VectorUpsertBatcher} (embedding model),</li>
+ *     <li>{@code write} records the embedding lineage and completes the jobs, batching whatever
+ *     has queued up into one update per table.</li>
+ * </ol>
+ * Chat and embedding work therefore overlap across jobs and can be sized independently. The
+ * documents of a claimed batch are loaded up front with one query per table, before the jobs
+ * enter the pipeline.
+ *
+ * <p>Before any model is called, {@code summarize} compares a hash of the raw source (title,
+ * content, parent article title and embedding model) with the one recorded by the last successful
+ * embedding. If nothing changed the job completes right there. For chunked documents the hash
+ * includes the chunk settings, so changing them re-embeds the documents. Documents embedded from
+ * a fallback (the summary or the variants could not be generated) are stored without that hash,
+ * so the next job for them embeds them again.
+ */
+@Service
+@Slf4j
+public class DocumentEmbeddingPipeline {
+
+    /**
+     * How a finished job is recorded. The worker owns the job lifecycle (leases, retries), the
+     * pipeline only reports the outcome.
+     */
+    public interface JobOutcome {
+        void succeeded(List<DocumentIndexingJobRecord> jobs, Runnable writeBack);
+
+        void failed(DocumentIndexingJobRecord job, Exception ex);
+    }
+
+    private final ArticleJpaRepository articleRepository;
+    private final DiscussionJpaRepository discussionRepository;
+    private final EmbeddingTransformationService embeddingTransformationService;
+    private final SemanticSummaryService semanticSummaryService;
+    private final DocumentVectorStoreService vectorStoreService;
+    private final VectorUpsertBatcher vectorUpsertBatcher;
+    private final DocumentChunker documentChunker;
+    private final TransactionOperations transactionOperations;
+    private final int summarizeThresholdChars;
+    private final String embeddingModel;
+    private final Counter unchangedCounter;
+
+    private final IndexingPipelineStage<EmbedTask> summarizeStage;
+    private final IndexingPipelineStage<EmbedTask> transformStage;
+    private final IndexingPipelineStage<EmbedTask> embedStage;
+    private final IndexingPipelineStage<EmbedTask> writeStage;
+
+    public DocumentEmbeddingPipeline(
+            ArticleJpaRepository articleRepository,
+            DiscussionJpaRepository discussionRepository,
+            EmbeddingTransformationService embeddingTransformationService,
+            SemanticSummaryService semanticSummaryService,
+            DocumentVectorStoreService vectorStoreService,
+            VectorUpsertBatcher vectorUpsertBatcher,
+            DocumentChunker documentChunker,
+            TransactionOperations transactionOperations,
+            MeterRegistry meterRegistry,
+            @Value("${app.document-indexing.worker.summarize-threshold-chars:1200}") int summarizeThresholdChars,
+            @Value("${spring.ai.openai.embedding.options.model:unknown}") String embeddingModel,
+            @Value("${app.document-indexing.pipeline.queue-capacity:32}") int queueCapacity,
+            @Value("${app.document-indexing.pipeline.summarize-concurrency:2}") int summarizeConcurrency,
+            @Value("${app.document-indexing.pipeline.transform-concurrency:4}") int transformConcurrency,
+            @Value("${app.document-indexing.pipeline.embed-concurrency:64}") int embedConcurrency,
+            @Value("${app.document-indexing.pipeline.write-concurrency:2}") int writeConcurrency,
+            @Value("${app.document-indexing.pipeline.write-batch-size:32}") int writeBatchSize) {
+        this.articleRepository = articleRepository;
+        this.discussionRepository = discussionRepository;
+        this.embeddingTransformationService = embeddingTransformationService;
+        this.semanticSummaryService = semanticSummaryService;
+        this.vectorStoreService = vectorStoreService;
+        this.vectorUpsertBatcher = vectorUpsertBatcher;
+        this.documentChunker = documentChunker;
+        this.transactionOperations = transactionOperations;
+        this.summarizeThresholdChars = summarizeThresholdChars;
+        this.embeddingModel = embeddingModel;
+        this.unchangedCounter = Counter.builder("indexing.pipeline.unchanged")
+                .description("Embedding jobs completed without model calls because the source was unchanged")
+                .register(meterRegistry);
+
+        this.writeStage = new IndexingPipelineStage<>("write", writeConcurrency, queueCapacity,
+                writeBatchSize, this::write, this::fail, meterRegistry);
+        this.embedStage = new IndexingPipelineStage<>("embed", embedConcurrency, queueCapacity,
+                this::embed, writeStage, this::fail, meterRegistry);
+        this.transformStage = new IndexingPipelineStage<>("transform", transformConcurrency, queueCapacity,
+                this::transform, embedStage, this::fail, meterRegistry);
+        this.summarizeStage = new IndexingPipelineStage<>("summarize", summarizeConcurrency, queueCapacity,
+                this::summarize, transformStage, this::fail, meterRegistry);
+    }
+
+    /**
+     * Loads the documents of all jobs, then queues the jobs, blocking while the first stage is
+     * full. Each returned future completes after the outcome of its job has been reported, whether
+     * the job succeeded or failed. If the caller is interrupted while queueing, the remaining jobs
+     * are left to expire with their lease.
+     */
+    public List<CompletableFuture<Void>> submitAll(List<DocumentIndexingJobRecord> jobs, JobOutcome outcome) {
+        List<EmbedTask> tasks = jobs.stream().map(job -> new EmbedTask(job, outcome)).toList();
+        try {
+            loadSources(tasks);
+        } catch (RuntimeException ex) {
+            tasks.forEach(task -> fail(task, ex));
+            return tasks.stream().map(task -> task.done).toList();
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                summarizeStage.submit(tasks.get(i));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while queueing {} embedding jobs; their leases will expire", tasks.size() - i);
+                tasks.subList(i, tasks.size()).forEach(task -> task.done.complete(null));
+                break;
+            }
+        }
+        return tasks.stream().map(task -> task.done).toList();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        List.of(summarizeStage, transformStage, embedStage, writeStage).forEach(IndexingPipelineStage::shutdown);
+    }
+
+    private boolean summarize(EmbedTask task) {
+        DocumentIndexingJobRecord job = task.job;
+        log.info("Starting embedding upsert for {} {}", job.documentType(), job.documentId());
+        if (task.loadFailure != null) {
+            throw task.loadFailure;
+        }
+        if (task.source.unchanged()) {
+            unchangedCounter.increment();
+            task.outcome.succeeded(List.of(job), () -> { });
+            log.info("Skipped embedding upsert for {} {}: source unchanged since last embedding",
+                    task.source.documentType().value(), task.source.id());
+            task.done.complete(null);
+            return false;
+        }
+        if (isChunked(task.source.content())) {
+            task.chunks = documentChunker.chunk(task.source.documentType(), task.source.content());
+            task.materialized = task.source.content();
+            log.debug("Split content for embedding title={} length={} into {} chunks",
+                    task.source.title(), task.source.content().length(), task.chunks.size());
+        } else {
+            SemanticSummaryService.DocumentSummary summary = summarizeIfNeeded(task.source.title(), task.source.content());
+            task.materialized = summary.content();
+            task.fellBack = summary.fallback();
+        }
+        return true;
+    }
+
+    private boolean transform(EmbedTask task) {
+        EmbedSource source = task.source;
+        if (task.chunks != null) {
+            task.variantCount = task.chunks.size();
+            task.documents = vectorStoreService.toChunkDocuments(
+                    source.id(), source.documentType().value(), source.title(), task.chunks, source.metadata());
+            return true;
+        }
+        List<EmbeddingTransformationService.EmbeddingVariant> variants = source.documentType() == DocumentType.ARTICLE
+                ? embeddingTransformationService.transformForArticle(source.title(), task.materialized)
+                : embeddingTransformationService.transformForDiscussion(source.articleTitle(), source.title(), task.materialized);
+        task.variantCount = variants.size();
+        task.fellBack |= variants.stream().anyMatch(EmbeddingTransformationService.EmbeddingVariant::fallback);
+        task.documents = vectorStoreService.toVectorDocuments(
+                source.id(), source.documentType().value(), source.title(), variants, source.metadata());
+        return true;
+    }
+
+    private boolean embed(EmbedTask task) {
+        try {
+            vectorUpsertBatcher.submit(task.documents).join();
+            vectorStoreService.deleteOtherDocuments(task.source.documentType().value(), task.source.id(),
+                    task.documents.stream().map(Document::getId).toList());
+            return true;
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    private void write(List<EmbedTask> tasks) {
+        Map<JobOutcome, List<EmbedTask>> byOutcome = new LinkedHashMap<>();
+        tasks.forEach(task -> byOutcome.computeIfAbsent(task.outcome, ignored -> new ArrayList<>()).add(task));
+        byOutcome.forEach((outcome, group) -> {
+            try {
+                List<DocumentIndexingJobRecord> jobs = group.stream().map(task -> task.job).toList();
+                outcome.succeeded(jobs, () -> writeLineage(group));
+            } catch (RuntimeException ex) {
+                group.forEach(task -> fail(task, ex));
+                return;
+            }
+            for (EmbedTask task : group) {
+                log.info("Completed embedding upsert for {} {} with {} variants",
+                        task.source.documentType().value(), task.source.id(), task.variantCount);
+                task.done.complete(null);
+            }
+        });
+    }
+
+    private void writeLineage(List<EmbedTask> tasks) {
+        OffsetDateTime now = OffsetDateTime.now();
+        for (DocumentType documentType : List.of(DocumentType.ARTICLE, DocumentType.DISCUSSION)) {
+            List<EmbedTask> ofType = tasks.stream()
+                    .filter(task -> task.source.documentType() == documentType)
+                    .toList();
+            if (ofType.isEmpty()) {
+                continue;
+            }
+            Long[] ids = ofType.stream().map(task -> task.source.id()).toArray(Long[]::new);
+            String[] embeddingContentHashes = ofType.stream().map(task -> ContentHashes.sha256(task.materialized)).toArray(String[]::new);
+            String[] sourceHashes = ofType.stream()
+                    .map(task -> task.fellBack ? null : task.source.sourceHash())
+                    .toArray(String[]::new);
+            int updated = documentType == DocumentType.ARTICLE
+                    ? articleRepository.updateEmbeddingLineage(ids, embeddingContentHashes, sourceHashes,
+                            EmbeddingStatus.SUCCEEDED.name(), "worker", embeddingModel, now)
+                    : discussionRepository.updateEmbeddingLineage(ids, embeddingContentHashes, sourceHashes,
+                            EmbeddingStatus.SUCCEEDED.name(), "worker", embeddingModel, now);
+            if (updated < ids.length) {
+                log.warn("Recorded embedding lineage for {} of {} {} documents; the others were deleted meanwhile",
+                        updated, ids.length, documentType.value());
+            }
+        }
+    }
+
+    private void fail(EmbedTask task, Exception ex) {
+        try {
+            task.outcome.failed(task.job, ex);
+        } finally {
+            task.done.complete(null);
+        }
+    }
+
+    private void loadSources(List<EmbedTask> tasks) {
+        List<Long> articleIds = documentIds(tasks, DocumentType.ARTICLE);
+        List<Long> discussionIds = documentIds(tasks, DocumentType.DISCUSSION);
+        transactionOperations.executeWithoutResult(status -> {
+            Map<Long, EmbedSource> articles = articleIds.isEmpty() ? Map.of() : articleRepository.findArticlesByIdIn(articleIds).stream()
+                    .collect(Collectors.toMap(ArticleEntity::getId, this::toSource));
+            Map<Long, EmbedSource> discussions = discussionIds.isEmpty() ? Map.of() : loadDiscussions(discussionIds);
+            for (EmbedTask task : tasks) {
+                DocumentIndexingJobRecord job = task.job;
+                DocumentType documentType = documentType(job);
+                if (documentType == DocumentType.ARTICLE) {
+                    task.source = articles.get(job.documentId());
+                    if (task.source == null) {
+                        task.loadFailure = new PermanentJobFailureException("Article not found: " + job.documentId());
+                    }
+                } else if (documentType == DocumentType.DISCUSSION) {
+                    task.source = discussions.get(job.documentId());
+                    if (task.source == null) {
+                        task.loadFailure = new PermanentJobFailureException(
+                                "Discussion not found or not attached to an article: " + job.documentId());
+                    }
+                } else {
+                    task.loadFailure = new PermanentJobFailureException(
+                            "Unsupported document_type for EMBED_UPSERT: " + job.documentType());
+                }
+            }
+        });
+    }
+
+    private Map<Long, EmbedSource> loadDiscussions(List<Long> discussionIds) {
+        Map<Long, DiscussionJpaRepository.RootArticle> rootArticles = discussionRepository.findRootArticles(discussionIds).stream()
+                .collect(Collectors.toMap(DiscussionJpaRepository.RootArticle::getDiscussionId, Function.identity()));
+        Map<Long, EmbedSource> sources = new HashMap<>();
+        for (DiscussionEntity entity : discussionRepository.findDiscussionsByIdIn(discussionIds)) {
+            DiscussionJpaRepository.RootArticle rootArticle = rootArticles.get(entity.getId());
+            if (rootArticle != null) {
+                sources.put(entity.getId(), toSource(entity, rootArticle));
+            }
+        }
+        return sources;
+    }
+
+    private EmbedSource toSource(ArticleEntity entity) {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("sampleType", DocumentType.ARTICLE.value());
+        String sourceHash = sourceHash(DocumentType.ARTICLE, entity.getTitle(), entity.getContent(), null);
+        return new EmbedSource(DocumentType.ARTICLE, entity.getId(), entity.getTitle(), entity.getContent(), null, metadata,
+                sourceHash, isEmbedded(entity.getEmbeddingStatus(), entity.getEmbeddingSourceHash(), sourceHash));
+    }
+
+    private EmbedSource toSource(DiscussionEntity entity, DiscussionJpaRepository.RootArticle rootArticle) {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("sampleType", DocumentType.DISCUSSION.value());
+        metadata.put("relatedArticleDocumentId", rootArticle.getArticleId());
+        metadata.put("respondsToDocumentId", entity.getParentDocumentId());
+        metadata.put("discussionSection", entity.getDiscussionSection());
+        String articleTitle = rootArticle.getArticleTitle();
+        String sourceHash = sourceHash(DocumentType.DISCUSSION, entity.getTitle(), entity.getContent(), articleTitle);
+        return new EmbedSource(DocumentType.DISCUSSION, entity.getId(), entity.getTitle(), entity.getContent(),
+                articleTitle, metadata, sourceHash,
+                isEmbedded(entity.getEmbeddingStatus(), entity.getEmbeddingSourceHash(), sourceHash));
+    }
+
+    private String sourceHash(DocumentType documentType, String title, String content, String articleTitle) {
+        return isChunked(content)
+                ? ContentHashes.embeddingSource(embeddingModel, title, content, articleTitle, documentChunker.strategy(documentType))
+                : ContentHashes.embeddingSource(embeddingModel, title, content, articleTitle);
+    }
+
+    private List<Long> documentIds(List<EmbedTask> tasks, DocumentType documentType) {
+        return tasks.stream()
+                .filter(task -> documentType(task.job) == documentType)
+                .map(task -> task.job.documentId())
+                .distinct()
+                .toList();
+    }
+
+    private DocumentType documentType(DocumentIndexingJobRecord job) {
+        try {
+            return DocumentType.fromValue(job.documentType());
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private boolean isEmbedded(EmbeddingStatus status, String storedSourceHash, String sourceHash) {
+        return status == EmbeddingStatus.SUCCEEDED && sourceHash.equals(storedSourceHash);
+    }
+
+    private boolean isChunked(String content) {
+        return documentChunker.enabled() && content != null && content.length() >= summarizeThresholdChars;
+    }
+
+    private SemanticSummaryService.DocumentSummary summarizeIfNeeded(String title, String content) {
+        if (content == null) {
+            return new SemanticSummaryService.DocumentSummary("");
+        }
+        if (content.length() < summarizeThresholdChars) {
+            return new SemanticSummaryService.DocumentSummary(content);
+        }
+        log.debug("Summarizing content for embedding title={} length={} threshold={}", title, content.length(), summarizeThresholdChars);
+        return semanticSummaryService.summarizeDocumentForEmbedding(title, content);
+    }
+
+    private record EmbedSource(DocumentType documentType,
+                               long id,
+                               String title,
+                               String content,
+                               String articleTitle,
+                               Map<String, Object> metadata,
+                               String sourceHash,
+                               boolean unchanged) {
+    }
+
+    /**
+     * Carries one job through the stages. Each stage writes its own fields before handing the task
+     * on, and the queue hand-off publishes them to the next stage's thread.
+     */
+    private static final class EmbedTask {
+        private final DocumentIndexingJobRecord job;
+        private final JobOutcome outcome;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private EmbedSource source;
+        private PermanentJobFailureException loadFailure;
+        private String materialized;
+        private List<DocumentChunker.Chunk> chunks;
+        private int variantCount;
+        private boolean fellBack;
+        private List<Document> documents;
+
+        private EmbedTask(DocumentIndexingJobRecord job, JobOutcome outcome) {
+            this.job = job;
+            this.outcome = outcome;
+        }
+    }
+}
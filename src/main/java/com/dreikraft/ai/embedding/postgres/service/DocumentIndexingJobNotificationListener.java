@@ -0,0 +1,144 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import com.dreikraft.ai.embedding.postgres.repository.impl.PostgresDocumentIndexingJobRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+/**
+ * Holds a dedicated (non-pooled) connection that LISTENs on the indexing job channel and wakes the
+ * worker as soon as new jobs are committed.
+ */
+@Component
+@ConditionalOnProperty(name = "app.document-indexing.notify.enabled", havingValue = "true")
+@Slf4j
+public class DocumentIndexingJobNotificationListener implements SmartLifecycle {
+    private static final Duration RECONNECT_DELAY = Duration.ofSeconds(5);
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(5);
+
+    private final DataSourceProperties dataSourceProperties;
+    private final DocumentIndexingWorkerService worker;
+    private final int listenTimeoutMillis;
+
+    private volatile boolean running;
+    private volatile Connection listenConnection;
+    private Thread listenerThread;
+
+    public DocumentIndexingJobNotificationListener(
+            DataSourceProperties dataSourceProperties,
+            DocumentIndexingWorkerService worker,
+            @Value("${app.document-indexing.notify.listen-timeout-ms:10000}") int listenTimeoutMillis) {
+        this.dataSourceProperties = dataSourceProperties;
+        this.worker = worker;
+        this.listenTimeoutMillis = listenTimeoutMillis;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        listenerThread = Thread.ofPlatform()
+                .daemon()
+                .name("indexing-job-listener")
+                .start(this::listen);
+    }
+
+    /**
+     * Closes the LISTEN connection, which ends a blocking {@code getNotifications} call, and waits
+     * for the listener thread to exit.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        closeListenConnection();
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+            try {
+                if (!listenerThread.join(STOP_TIMEOUT)) {
+                    log.warn("Indexing job listener did not stop within {}", STOP_TIMEOUT);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            listenerThread = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = openConnection()) {
+                listenConnection = connection;
+                if (!running) {
+                    return;
+                }
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + PostgresDocumentIndexingJobRepository.NOTIFICATION_CHANNEL);
+                }
+                log.info("Listening for indexing job notifications on channel {}", PostgresDocumentIndexingJobRepository.NOTIFICATION_CHANNEL);
+                // Pick up anything that was enqueued while no listener was connected.
+                worker.wakeUp();
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(listenTimeoutMillis);
+                    if (notifications != null && notifications.length > 0) {
+                        log.debug("Received {} indexing job notifications", notifications.length);
+                        worker.wakeUp();
+                    }
+                }
+            } catch (SQLException ex) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Indexing job listener connection failed. Reconnecting in {}", RECONNECT_DELAY, ex);
+                sleepBeforeReconnect();
+            } finally {
+                listenConnection = null;
+            }
+        }
+    }
+
+    private void closeListenConnection() {
+        Connection connection = listenConnection;
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException ex) {
+            log.debug("Failed to close indexing job listener connection", ex);
+        }
+    }
+
+    private Connection openConnection() throws SQLException {
+        return DriverManager.getConnection(
+                dataSourceProperties.determineUrl(),
+                dataSourceProperties.determineUsername(),
+                dataSourceProperties.determinePassword()
+        );
+    }
+
+    private void sleepBeforeReconnect() {
+        try {
+            Thread.sleep(RECONNECT_DELAY);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -2,8 +2,10 @@ package com.dreikraft.ai.embedding.postgres.service;
 
 import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobRepository;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.OffsetDateTime;
 
 @Service
@@ -12,13 +14,33 @@ public class DocumentIndexingJobService {
     private static final int DEFAULT_MAX_ATTEMPTS = 5;
 
     private final DocumentIndexingJobRepository repository;
+    private final Duration embedUpsertDebounce;
+    private final Duration discussionClassifyDebounce;
 
-    public DocumentIndexingJobService(DocumentIndexingJobRepository repository) {
+    public DocumentIndexingJobService(
+            DocumentIndexingJobRepository repository,
+            @Value("${app.document-indexing.debounce.embed-upsert-ms:0}") long embedUpsertDebounceMillis,
+            @Value("${app.document-indexing.debounce.discussion-classify-ms:5000}") long discussionClassifyDebounceMillis) {
         this.repository = repository;
+        this.embedUpsertDebounce = Duration.ofMillis(embedUpsertDebounceMillis);
+        this.discussionClassifyDebounce = Duration.ofMillis(discussionClassifyDebounceMillis);
     }
 
+    /**
+     * Enqueues a job that becomes due after the debounce window of its type. Repeated calls for the
+     * same document fold into the one pending job and push it back, so a burst of writes is
+     * processed once after it settles.
+     */
     public void enqueue(DocumentIndexingJobType jobType, DocumentType documentType, long documentId) {
         log.debug("Enqueuing indexing job type={}, documentType={}, documentId={}", jobType, documentType, documentId);
-        repository.enqueue(jobType.name(), documentType.value(), documentId, OffsetDateTime.now(), DEFAULT_MAX_ATTEMPTS);
+        OffsetDateTime availableAt = OffsetDateTime.now().plus(debounceFor(jobType));
+        repository.enqueue(jobType.name(), documentType.value(), documentId, availableAt, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    private Duration debounceFor(DocumentIndexingJobType jobType) {
+        return switch (jobType) {
+            case EMBED_UPSERT -> embedUpsertDebounce;
+            case DISCUSSION_CLASSIFY -> discussionClassifyDebounce;
+        };
     }
 }
@@ -0,0 +1,54 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobRecord;
+import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobRepository;
+import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Hands jobs of crashed or killed workers back to the queue once their lease has expired.
+ */
+@Service
+@Slf4j
+public class DocumentIndexingLeaseReaper {
+
+    private final DocumentIndexingJobRepository jobRepository;
+    private final DocumentIndexingWorkerService worker;
+    private final Duration leaseDuration;
+    private final int batchSize;
+
+    public DocumentIndexingLeaseReaper(
+            DocumentIndexingJobRepository jobRepository,
+            DocumentIndexingWorkerService worker,
+            @Value("${app.document-indexing.lease.duration-ms:60000}") long leaseDurationMillis,
+            @Value("${app.document-indexing.lease.reaper-batch-size:100}") int batchSize) {
+        this.jobRepository = jobRepository;
+        this.worker = worker;
+        this.leaseDuration = Duration.ofMillis(leaseDurationMillis);
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${app.document-indexing.lease.reaper-interval-ms:30000}")
+    public void reapExpiredLeases() {
+        OffsetDateTime now = OffsetDateTime.now();
+        List<DocumentIndexingJobRecord> reaped = jobRepository.reapExpiredLeases(now, now.minus(leaseDuration), batchSize);
+        if (reaped.isEmpty()) {
+            return;
+        }
+
+        for (DocumentIndexingJobRecord job : reaped) {
+            log.warn("Reaped job id={}, type={}, documentType={}, documentId={} with expired lease as {} (attempt {}/{})",
+                    job.id(), job.jobType(), job.documentType(), job.documentId(), job.status(), job.attempt(), job.maxAttempts());
+        }
+        if (reaped.stream().anyMatch(job -> job.status() == DocumentIndexingJobStatus.PENDING)) {
+            worker.wakeUp();
+        }
+    }
+}
@@ -6,24 +6,35 @@ import com.dreikraft.ai.embedding.postgres.persistence.repository.ArticleJpaRepo
 import com.dreikraft.ai.embedding.postgres.persistence.repository.DiscussionJpaRepository;
 import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobRecord;
 import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobRepository;
-import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobStatus;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionOperations;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 @Slf4j
@@ -32,83 +43,323 @@ public class DocumentIndexingWorkerService {
     private final DocumentIndexingJobRepository jobRepository;
     private final ArticleJpaRepository articleRepository;
     private final DiscussionJpaRepository discussionRepository;
-    private final EmbeddingTransformationService embeddingTransformationService;
-    private final SemanticSummaryService semanticSummaryService;
-    private final DocumentVectorStoreService vectorStoreService;
+    private final DocumentEmbeddingPipeline embeddingPipeline;
     private final DiscussionClassificationService discussionClassificationService;
+    private final TransactionOperations transactionOperations;
+    private final ExecutorService executor;
+    private final Semaphore concurrencyLimit;
+    private final Semaphore inFlightLimit;
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final AtomicBoolean runRequested = new AtomicBoolean();
+    private final AtomicLong scheduledWakeUpAtMillis = new AtomicLong();
+    private final Set<Long> leasedJobIds = ConcurrentHashMap.newKeySet();
+    private final PipelineOutcome pipelineOutcome = new PipelineOutcome();
+    private volatile boolean shuttingDown;
 
     private final int batchSize;
+    private final int maxInFlight;
     private final long baseBackoffMillis;
-    private final int summarizeThresholdChars;
-    private final String embeddingModel;
+    private final boolean notifyEnabled;
+    private final long fallbackPollMillis;
+    private final String workerId;
+    private final Duration leaseDuration;
 
     public DocumentIndexingWorkerService(
             DocumentIndexingJobRepository jobRepository,
             ArticleJpaRepository articleRepository,
             DiscussionJpaRepository discussionRepository,
-            EmbeddingTransformationService embeddingTransformationService,
-            SemanticSummaryService semanticSummaryService,
-            DocumentVectorStoreService vectorStoreService,
+            DocumentEmbeddingPipeline embeddingPipeline,
             DiscussionClassificationService discussionClassificationService,
+            TransactionOperations transactionOperations,
             @Value("${app.document-indexing.worker.batch-size:10}") int batchSize,
+            @Value("${app.document-indexing.worker.concurrency:4}") int concurrency,
+            @Value("${app.document-indexing.worker.max-in-flight:200}") int maxInFlight,
             @Value("${app.document-indexing.worker.base-backoff-ms:2000}") long baseBackoffMillis,
-            @Value("${app.document-indexing.worker.summarize-threshold-chars:1200}") int summarizeThresholdChars,
-            @Value("${spring.ai.openai.embedding.options.model:unknown}") String embeddingModel) {
+            @Value("${app.document-indexing.notify.enabled:false}") boolean notifyEnabled,
+            @Value("${app.document-indexing.notify.fallback-poll-ms:30000}") long fallbackPollMillis,
+            @Value("${app.document-indexing.worker.id:}") String workerId,
+            @Value("${app.document-indexing.lease.duration-ms:60000}") long leaseDurationMillis) {
         this.jobRepository = jobRepository;
         this.articleRepository = articleRepository;
         this.discussionRepository = discussionRepository;
-        this.embeddingTransformationService = embeddingTransformationService;
-        this.semanticSummaryService = semanticSummaryService;
-        this.vectorStoreService = vectorStoreService;
+        this.embeddingPipeline = embeddingPipeline;
         this.discussionClassificationService = discussionClassificationService;
+        this.transactionOperations = transactionOperations;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("indexing-worker-", 0).factory());
+        this.concurrencyLimit = new Semaphore(Math.max(1, concurrency));
         this.batchSize = batchSize;
+        this.maxInFlight = Math.max(batchSize, maxInFlight);
+        this.inFlightLimit = new Semaphore(this.maxInFlight);
         this.baseBackoffMillis = baseBackoffMillis;
-        this.summarizeThresholdChars = summarizeThresholdChars;
-        this.embeddingModel = embeddingModel;
+        this.notifyEnabled = notifyEnabled;
+        this.fallbackPollMillis = fallbackPollMillis;
+        this.workerId = resolveWorkerId(workerId);
+        this.leaseDuration = Duration.ofMillis(leaseDurationMillis);
+        log.info("Indexing worker id is {}", this.workerId);
     }
 
-    @Scheduled(fixedDelayString = "${app.document-indexing.worker.fixed-delay-ms:1000}")
-    @Transactional
+    /**
+     * Polls the queue. With LISTEN/NOTIFY enabled the schedule is only a fallback poll; wake-ups
+     * arrive through {@link #wakeUp()}. The drain itself runs on the worker executor, because it
+     * blocks while the pipeline is full and would otherwise hold the scheduler thread that the
+     * {@link #heartbeat()} and the lease reaper run on.
+     */
+    @Scheduled(fixedDelayString = "#{${app.document-indexing.notify.enabled:false} "
+            + "? '${app.document-indexing.notify.fallback-poll-ms:30000}' "
+            + ": '${app.document-indexing.worker.fixed-delay-ms:1000}'}")
+    public void pollQueue() {
+        wakeUp();
+    }
+
+    /**
+     * Drains the queue on the calling thread. Concurrent calls fold into the drain already
+     * running, which then goes round once more.
+     */
     public void runQueue() {
-        OffsetDateTime now = OffsetDateTime.now();
-        List<DocumentIndexingJobRecord> dueJobs = jobRepository.pollDue(DocumentIndexingJobStatus.PENDING, now, batchSize);
-        if (dueJobs.isEmpty()) {
-            log.debug("No due indexing jobs found");
+        runRequested.set(true);
+        do {
+            if (!drainLock.tryLock()) {
+                return;
+            }
+            try {
+                while (runRequested.getAndSet(false)) {
+                    drainDueJobs();
+                }
+            } finally {
+                drainLock.unlock();
+            }
+        } while (runRequested.get());
+    }
+
+    public void wakeUp() {
+        if (shuttingDown) {
             return;
         }
+        executor.execute(this::runQueue);
+    }
+
+    /**
+     * Extends the leases of claimed jobs that are still queued or in flight, so long LLM-bound jobs
+     * are not reaped while this worker is alive.
+     */
+    @Scheduled(fixedDelayString = "${app.document-indexing.lease.heartbeat-ms:15000}")
+    public void heartbeat() {
+        if (leasedJobIds.isEmpty()) {
+            return;
+        }
+        List<Long> jobIds = List.copyOf(leasedJobIds);
+        int extended = jobRepository.extendLeases(workerId, jobIds, OffsetDateTime.now().plus(leaseDuration));
+        long stillLeased = jobIds.stream().filter(leasedJobIds::contains).count();
+        if (extended < stillLeased) {
+            log.warn("Could only extend {} of {} indexing job leases; the others were reaped and may run again elsewhere",
+                    extended, stillLeased);
+        }
+    }
+
+    /**
+     * Waits until no claimed job is queued or in flight any more, e.g. for tests that check the
+     * outcome of a drain.
+     *
+     * @return {@code false} if jobs were still in flight after {@code timeout}
+     */
+    boolean awaitIdle(Duration timeout) throws InterruptedException {
+        if (!inFlightLimit.tryAcquire(maxInFlight, timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+        inFlightLimit.release(maxInFlight);
+        return true;
+    }
 
-        log.info("Polled {} due indexing jobs", dueJobs.size());
-        for (DocumentIndexingJobRecord job : dueJobs) {
-            if (!jobRepository.claimPending(job.id(), now)) {
-                log.debug("Skipping job {} because claim failed", job.id());
-                continue;
+    /**
+     * Claims batches for as long as full batches come back. EMBED_UPSERT jobs of a claimed batch go
+     * through the staged {@link DocumentEmbeddingPipeline} together, so their documents are loaded
+     * with one query per table; every other job runs on its own virtual thread, bounded by the
+     * worker concurrency. The worker does not wait for a batch before claiming the next one: the
+     * pipeline's bounded stage queues push back on it, and it only stops to wait when
+     * {@code max-in-flight} claimed jobs are not finished yet.
+     */
+    private void drainDueJobs() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                inFlightLimit.acquire(batchSize);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while waiting for in-flight indexing jobs to finish");
+                return;
+            }
+            List<DocumentIndexingJobRecord> claimedJobs;
+            try {
+                OffsetDateTime now = OffsetDateTime.now();
+                claimedJobs = jobRepository.claimBatch(workerId, batchSize, now, now.plus(leaseDuration));
+            } catch (RuntimeException ex) {
+                inFlightLimit.release(batchSize);
+                throw ex;
+            }
+            // Each claimed job keeps its permit until it is done.
+            inFlightLimit.release(batchSize - claimedJobs.size());
+            if (claimedJobs.isEmpty()) {
+                log.debug("No due indexing jobs found");
+                scheduleWakeUpForNextDueJob();
+                return;
+            }
+
+            log.info("Claimed {} due indexing jobs", claimedJobs.size());
+            claimedJobs.forEach(job -> leasedJobIds.add(job.id()));
+            List<DocumentIndexingJobRecord> embedJobs = new ArrayList<>();
+            for (DocumentIndexingJobRecord job : claimedJobs) {
+                if (DocumentIndexingJobType.EMBED_UPSERT.name().equals(job.jobType())) {
+                    logProcessing(job);
+                    embedJobs.add(job);
+                } else {
+                    releaseWhenDone(job, CompletableFuture.runAsync(() -> processWithPermit(job), executor));
+                }
+            }
+            if (!embedJobs.isEmpty()) {
+                List<CompletableFuture<Void>> embedded = embeddingPipeline.submitAll(embedJobs, pipelineOutcome);
+                for (int i = 0; i < embedJobs.size(); i++) {
+                    releaseWhenDone(embedJobs.get(i), embedded.get(i));
+                }
+            }
+            if (claimedJobs.size() < batchSize) {
+                return;
             }
+        }
+    }
+
+    /**
+     * Debounced and backed-off jobs become due without a new notification, so in LISTEN/NOTIFY
+     * mode the worker arms a one-shot wake-up for the earliest pending job instead of waiting for
+     * the fallback poll.
+     */
+    private void scheduleWakeUpForNextDueJob() {
+        if (!notifyEnabled) {
+            return;
+        }
+        jobRepository.findNextAvailableAt().ifPresent(nextAvailableAt -> {
+            long now = System.currentTimeMillis();
+            long wakeUpAt = Math.max(now, nextAvailableAt.toInstant().toEpochMilli());
+            if (wakeUpAt - now >= fallbackPollMillis) {
+                return;
+            }
+            long alreadyScheduled = scheduledWakeUpAtMillis.get();
+            if (alreadyScheduled > now && alreadyScheduled <= wakeUpAt) {
+                return;
+            }
+            if (scheduledWakeUpAtMillis.compareAndSet(alreadyScheduled, wakeUpAt)) {
+                log.debug("Next indexing job is due at {}; scheduling wake-up", nextAvailableAt);
+                CompletableFuture.delayedExecutor(wakeUpAt - now, TimeUnit.MILLISECONDS, executor).execute(this::runQueue);
+            }
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        shuttingDown = true;
+        executor.shutdownNow();
+        if (!leasedJobIds.isEmpty()) {
+            // Let the reaper of any instance hand the interrupted jobs back right away.
+            int expired = jobRepository.expireLeases(workerId, OffsetDateTime.now());
+            log.info("Expired {} indexing job leases of worker {} on shutdown", expired, workerId);
+        }
+    }
+
+    private void releaseWhenDone(DocumentIndexingJobRecord job, CompletableFuture<Void> processing) {
+        processing.whenComplete((ignored, ex) -> {
+            if (ex != null) {
+                log.error("Indexing job {} failed unexpectedly", job.id(), ex);
+            }
+            leasedJobIds.remove(job.id());
+            inFlightLimit.release();
+        });
+    }
+
+    private void processWithPermit(DocumentIndexingJobRecord job) {
+        try {
+            concurrencyLimit.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted before processing job {}", job.id());
+            return;
+        }
+        try {
             processClaimedJob(job);
+        } finally {
+            concurrencyLimit.release();
         }
     }
 
     private void processClaimedJob(DocumentIndexingJobRecord job) {
-        log.info("Processing job id={}, type={}, documentType={}, documentId={}, attempt={}/{}",
-                job.id(), job.jobType(), job.documentType(), job.documentId(), job.attempt() + 1, job.maxAttempts());
+        logProcessing(job);
         try {
             dispatch(job);
-            jobRepository.markSucceeded(job.id(), OffsetDateTime.now());
             log.info("Job {} completed successfully", job.id());
         } catch (Exception ex) {
             handleFailure(job, ex);
         }
     }
 
+    private void logProcessing(DocumentIndexingJobRecord job) {
+        log.info("Processing job id={}, type={}, documentType={}, documentId={}, attempt={}/{}",
+                job.id(), job.jobType(), job.documentType(), job.documentId(), job.attempt() + 1, job.maxAttempts());
+    }
+
     private void dispatch(DocumentIndexingJobRecord job) {
         DocumentIndexingJobType jobType = parseJobType(job.jobType());
         log.debug("Dispatching job {} as {}", job.id(), jobType);
         switch (jobType) {
-            case EMBED_UPSERT -> processEmbedUpsert(job.documentType(), job.documentId());
-            case DISCUSSION_CLASSIFY -> processDiscussionClassify(job.documentType(), job.documentId());
+            case EMBED_UPSERT -> throw new IllegalStateException("EMBED_UPSERT jobs run through the embedding pipeline");
+            case DISCUSSION_CLASSIFY -> processDiscussionClassify(job);
             default -> throw new PermanentJobFailureException("Unknown job_type: " + job.jobType());
         }
     }
 
+    /**
+     * Runs the entity write-back and the job completion in one short transaction, so no connection
+     * is held while the LLM calls of the job are in flight.
+     */
+    private void completeJob(DocumentIndexingJobRecord job, Runnable writeBack) {
+        transactionOperations.executeWithoutResult(status -> {
+            writeBack.run();
+            if (!jobRepository.markSucceeded(job.id(), workerId, OffsetDateTime.now())) {
+                log.warn("Job {} lost its lease before it completed; keeping the result and leaving the job to its new owner", job.id());
+            }
+        });
+    }
+
+    private void completeJobs(List<DocumentIndexingJobRecord> jobs, Runnable writeBack) {
+        List<Long> jobIds = jobs.stream().map(DocumentIndexingJobRecord::id).toList();
+        transactionOperations.executeWithoutResult(status -> {
+            writeBack.run();
+            int completed = jobRepository.markAllSucceeded(jobIds, workerId, OffsetDateTime.now());
+            if (completed < jobIds.size()) {
+                log.warn("{} of jobs {} lost their lease before they completed; keeping the results and leaving the jobs to their new owners",
+                        jobIds.size() - completed, jobIds);
+            }
+        });
+    }
+
+    /**
+     * Falls back to the host name (the pod name on Kubernetes) plus a random suffix, so a restarted
+     * process never mistakes the leases of its predecessor for its own.
+     */
+    private static String resolveWorkerId(String configuredWorkerId) {
+        if (configuredWorkerId != null && !configuredWorkerId.isBlank()) {
+            return configuredWorkerId;
+        }
+        String host = System.getenv("HOSTNAME");
+        if (host == null || host.isBlank()) {
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException ex) {
+                host = "indexing-worker";
+            }
+        }
+        if (host.length() > 100) {
+            host = host.substring(0, 100);
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
     private DocumentIndexingJobType parseJobType(String value) {
         try {
             return DocumentIndexingJobType.valueOf(value);
@@ -117,102 +368,74 @@ public class DocumentIndexingWorkerService {
         }
     }
 
-    private void processEmbedUpsert(String documentType, long documentId) {
-        switch (DocumentType.fromValue(documentType)) {
-            case ARTICLE -> embedArticle(documentId);
-            case DISCUSSION -> embedDiscussion(documentId);
-            default -> throw new PermanentJobFailureException("Unsupported document_type for EMBED_UPSERT: " + documentType);
-        }
-    }
-
-    private void processDiscussionClassify(String documentType, long documentId) {
-        if (DocumentType.fromValue(documentType) != DocumentType.ARTICLE) {
-            throw new PermanentJobFailureException("DISCUSSION_CLASSIFY expects article document_type but got: " + documentType);
+    private void processDiscussionClassify(DocumentIndexingJobRecord job) {
+        if (DocumentType.fromValue(job.documentType()) != DocumentType.ARTICLE) {
+            throw new PermanentJobFailureException("DISCUSSION_CLASSIFY expects article document_type but got: " + job.documentType());
         }
 
+        long documentId = job.documentId();
         log.info("Starting discussion classification for article {}", documentId);
-        ArticleEntity article = articleRepository.findArticleById(documentId)
-                .orElseThrow(() -> new PermanentJobFailureException("Article not found: " + documentId));
-        List<DiscussionEntity> discussions = flattenDiscussionTree(documentId);
-        if (discussions.isEmpty()) {
-            log.info("No discussions to classify for article {}", documentId);
+        ClassificationWork work = transactionOperations.execute(status -> {
+            ArticleEntity article = articleRepository.findArticleById(documentId)
+                    .orElseThrow(() -> new PermanentJobFailureException("Article not found: " + documentId));
+            List<DiscussionEntity> tree = flattenDiscussionTree(documentId);
+            Map<Long, String> contentById = new HashMap<>();
+            for (DiscussionEntity discussion : tree) {
+                contentById.put(discussion.getId(), discussion.getContent());
+            }
+            // Only items whose own content, parent content or (for roots) article changed since
+            // their last classification are sent to the model; the rest only provide context.
+            Map<Long, String> inputHashes = new LinkedHashMap<>();
+            for (DiscussionEntity discussion : tree) {
+                String inputHash = discussion.getParentDocumentId() == null
+                        ? ContentHashes.classificationInput(article.getTitle(), article.getContent(), discussion.getContent())
+                        : ContentHashes.classificationInput(null, contentById.get(discussion.getParentDocumentId()), discussion.getContent());
+                if (discussion.getClassificationStatus() != ClassificationStatus.SUCCEEDED
+                        || !inputHash.equals(discussion.getClassificationInputHash())) {
+                    inputHashes.put(discussion.getId(), inputHash);
+                }
+            }
+            List<com.dreikraft.ai.embedding.postgres.model.DiscussionDocument> discussions = tree.stream()
+                    .map(this::toDiscussionDocument)
+                    .toList();
+            return new ClassificationWork(new DiscussionClassificationService.DiscussionClassificationInput(
+                    article.getTitle(),
+                    article.getContent(),
+                    discussions,
+                    inputHashes.keySet()
+            ), inputHashes);
+        });
+        if (work.inputHashes().isEmpty()) {
+            log.info("No new or changed discussions to classify for article {} ({} items up to date)",
+                    documentId, work.input().discussions().size());
+            completeJob(job, () -> {
+            });
             return;
         }
 
-        List<com.dreikraft.ai.embedding.postgres.model.DiscussionDocument> input = discussions.stream()
-                .map(this::toDiscussionDocument)
-                .toList();
-
-        Map<Long, DiscussionClassificationService.DiscussionClassification> classified = discussionClassificationService.classify(
-                new DiscussionClassificationService.DiscussionClassificationInput(
-                        article.getTitle(),
-                        article.getContent(),
-                        input
-                )
-        );
-
-        OffsetDateTime now = OffsetDateTime.now();
-        for (DiscussionEntity discussion : discussions) {
-            DiscussionClassificationService.DiscussionClassification result = classified.get(discussion.getId());
-            if (result != null) {
-                discussion.setSentiment(result.sentiment());
-                discussion.setResponseDepth(result.responseDepth());
+        Map<Long, DiscussionClassificationService.DiscussionClassification> classified = discussionClassificationService.classify(work.input());
+
+        Map<Long, String> inputHashes = work.inputHashes();
+        completeJob(job, () -> {
+            List<DiscussionEntity> discussions = discussionRepository.findAllById(inputHashes.keySet());
+            OffsetDateTime now = OffsetDateTime.now();
+            for (DiscussionEntity discussion : discussions) {
+                DiscussionClassificationService.DiscussionClassification result = classified.get(discussion.getId());
+                if (result != null) {
+                    discussion.setSentiment(result.sentiment());
+                    discussion.setResponseDepth(result.responseDepth());
+                }
+                boolean fallback = result == null || result.fallback();
+                discussion.setClassificationStatus(ClassificationStatus.SUCCEEDED);
+                discussion.setClassificationSource(fallback ? "worker:fallback" : "worker:llm");
+                // Leave fallback labels without an input hash so the next classification retries them.
+                discussion.setClassificationInputHash(fallback ? null : inputHashes.get(discussion.getId()));
+                discussion.setClassifiedAt(now);
             }
-            discussion.setClassificationStatus(ClassificationStatus.SUCCEEDED);
-            discussion.setClassificationSource("worker:llm");
-            discussion.setClassifiedAt(now);
-        }
-        discussionRepository.saveAll(discussions);
-        log.info("Completed classification for article {} with {} discussion items", documentId, discussions.size());
-    }
-
-    private void embedArticle(long articleId) {
-        log.info("Starting embedding upsert for article {}", articleId);
-        ArticleEntity article = articleRepository.findArticleById(articleId)
-                .orElseThrow(() -> new PermanentJobFailureException("Article not found: " + articleId));
-
-        String materialized = summarizeIfNeeded(article.getTitle(), article.getContent());
-        List<EmbeddingTransformationService.EmbeddingVariant> variants = embeddingTransformationService
-                .transformForArticle(article.getTitle(), materialized);
-
-        Map<String, Object> metadata = new LinkedHashMap<>();
-        metadata.put("sampleType", DocumentType.ARTICLE.value());
-        vectorStoreService.upsertVariants(article.getId(), DocumentType.ARTICLE.value(), article.getTitle(), variants, metadata);
-
-        article.setEmbeddingContentHash(hashContent(materialized));
-        article.setEmbeddingStatus(EmbeddingStatus.SUCCEEDED);
-        article.setEmbeddingSource("worker");
-        article.setEmbeddingModel(embeddingModel);
-        article.setEmbeddedAt(OffsetDateTime.now());
-        articleRepository.save(article);
-        log.info("Completed embedding upsert for article {} with {} variants", articleId, variants.size());
-    }
-
-    private void embedDiscussion(long discussionId) {
-        log.info("Starting embedding upsert for discussion {}", discussionId);
-        DiscussionEntity discussion = discussionRepository.findDiscussionById(discussionId)
-                .orElseThrow(() -> new PermanentJobFailureException("Discussion not found: " + discussionId));
-
-        String articleTitle = resolveArticleTitle(discussion);
-        String materialized = summarizeIfNeeded(discussion.getTitle(), discussion.getContent());
-        List<EmbeddingTransformationService.EmbeddingVariant> variants = embeddingTransformationService
-                .transformForDiscussion(articleTitle, discussion.getTitle(), materialized);
-
-        Map<String, Object> metadata = new LinkedHashMap<>();
-        metadata.put("sampleType", DocumentType.DISCUSSION.value());
-        metadata.put("relatedArticleDocumentId", resolveArticleId(discussion));
-        metadata.put("respondsToDocumentId", discussion.getParentDocumentId());
-        metadata.put("discussionSection", discussion.getDiscussionSection());
-
-        vectorStoreService.upsertVariants(discussion.getId(), DocumentType.DISCUSSION.value(), discussion.getTitle(), variants, metadata);
-
-        discussion.setEmbeddingContentHash(hashContent(materialized));
-        discussion.setEmbeddingStatus(EmbeddingStatus.SUCCEEDED);
-        discussion.setEmbeddingSource("worker");
-        discussion.setEmbeddingModel(embeddingModel);
-        discussion.setEmbeddedAt(OffsetDateTime.now());
-        discussionRepository.save(discussion);
-        log.info("Completed embedding upsert for discussion {} with {} variants", discussionId, variants.size());
+            discussionRepository.saveAll(discussions);
+        });
+        log.info("Completed classification for article {} with {} of {} discussion items",
+                documentId, inputHashes.size(), work.input().discussions().size());
     }
 
     private List<DiscussionEntity> flattenDiscussionTree(long articleDocumentId) {
@@ -244,29 +467,27 @@ public class DocumentIndexingWorkerService {
         );
     }
 
-    private String summarizeIfNeeded(String title, String content) {
-        if (content == null) {
-            return "";
-        }
-        if (content.length() < summarizeThresholdChars) {
-            return content;
-        }
-        log.debug("Summarizing content for embedding title={} length={} threshold={}", title, content.length(), summarizeThresholdChars);
-        return semanticSummaryService.summarizeDocumentForEmbedding(title, content);
-    }
-
     private void handleFailure(DocumentIndexingJobRecord job, Exception ex) {
         String message = trimError(ex);
+        if (shuttingDown) {
+            log.info("Job {} was interrupted by shutdown; leaving it to the lease reaper: {}", job.id(), message);
+            return;
+        }
         if (isTransient(ex) && job.attempt() < job.maxAttempts()) {
             OffsetDateTime next = OffsetDateTime.now().plus(calculateBackoff(job.attempt()));
-            if (jobRepository.markFailedWithRetry(job.id(), next, message)) {
+            if (jobRepository.markFailedWithRetry(job.id(), workerId, next, message)) {
                 log.warn("Retrying job {} at {} after transient failure: {}", job.id(), next, message);
                 return;
             }
+            // A newer pending job for the same document will redo the work anyway.
+            if (jobRepository.markSuperseded(job.id(), workerId, OffsetDateTime.now(), message)) {
+                log.info("Job {} superseded by a pending job for the same document after failure: {}", job.id(), message);
+                return;
+            }
         }
 
         log.error("Marking job {} as dead-letter after failure: {}", job.id(), message);
-        jobRepository.markDeadLetter(job.id(), OffsetDateTime.now(), message);
+        jobRepository.markDeadLetter(job.id(), workerId, OffsetDateTime.now(), message);
         log.error("Moved job {} to dead-letter after failure: {}", job.id(), message, ex);
     }
 
@@ -279,7 +500,8 @@ public class DocumentIndexingWorkerService {
         if (throwable instanceof PermanentJobFailureException) {
             return false;
         }
-        if (throwable instanceof DataAccessException || throwable instanceof TimeoutException) {
+        if (throwable instanceof DataAccessException || throwable instanceof TimeoutException
+                || throwable instanceof LlmUnavailableException || VectorUpsertBatcher.isBackendFailure(throwable)) {
             return true;
         }
         return throwable.getCause() != null && isTransient(throwable.getCause());
@@ -293,53 +515,23 @@ public class DocumentIndexingWorkerService {
         return text.length() <= 1000 ? text : text.substring(0, 1000);
     }
 
-    private long resolveArticleId(DiscussionEntity discussion) {
-        if (discussion.getArticle() != null) {
-            return discussion.getArticle().getId();
+    /**
+     * Records the outcome of jobs that ran through the embedding pipeline.
+     */
+    private final class PipelineOutcome implements DocumentEmbeddingPipeline.JobOutcome {
+        @Override
+        public void succeeded(List<DocumentIndexingJobRecord> jobs, Runnable writeBack) {
+            completeJobs(jobs, writeBack);
+            jobs.forEach(job -> log.info("Job {} completed successfully", job.id()));
         }
 
-        DiscussionEntity current = discussion.getParentDiscussion();
-        while (current != null) {
-            if (current.getArticle() != null) {
-                return current.getArticle().getId();
-            }
-            current = current.getParentDiscussion();
-        }
-        throw new PermanentJobFailureException("Unable to resolve related article for discussion " + discussion.getId());
-    }
-
-    private String resolveArticleTitle(DiscussionEntity discussion) {
-        if (discussion.getArticle() != null) {
-            return discussion.getArticle().getTitle();
-        }
-
-        DiscussionEntity current = discussion.getParentDiscussion();
-        while (current != null) {
-            if (current.getArticle() != null) {
-                return current.getArticle().getTitle();
-            }
-            current = current.getParentDiscussion();
-        }
-        return null;
-    }
-
-    private String hashContent(String content) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(content.getBytes(StandardCharsets.UTF_8));
-            StringBuilder builder = new StringBuilder();
-            for (byte b : hash) {
-                builder.append(String.format("%02x", b));
-            }
-            return builder.toString();
-        } catch (NoSuchAlgorithmException ex) {
-            throw new IllegalStateException("SHA-256 algorithm is not available", ex);
+        @Override
+        public void failed(DocumentIndexingJobRecord job, Exception ex) {
+            handleFailure(job, ex);
         }
     }
 
-    private static class PermanentJobFailureException extends RuntimeException {
-        PermanentJobFailureException(String message) {
-            super(message);
-        }
+    private record ClassificationWork(DiscussionClassificationService.DiscussionClassificationInput input,
+                                      Map<Long, String> inputHashes) {
     }
 }
@@ -1,14 +1,20 @@
 package com.dreikraft.ai.embedding.postgres.service;
 
+import com.pgvector.PGvector;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.FilterExpressionTextParser;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -25,13 +31,23 @@ public class DocumentVectorStoreService {
     private static final String ENTITY_TYPE_KEY = "entityType";
 
     private final VectorStore vectorStore;
+    private final QueryEmbeddingCache queryEmbeddingCache;
+    private final String vectorTableName;
     private final double similarityThreshold;
+    private final int vectorsPerEntity;
 
     public DocumentVectorStoreService(
             VectorStore vectorStore,
-            @Value("${app.semantic-search.similarity-threshold:0.75}") double similarityThreshold) {
+            QueryEmbeddingCache queryEmbeddingCache,
+            @Value("${spring.ai.vectorstore.pgvector.schema-name:" + PgVectorStore.DEFAULT_SCHEMA_NAME + "}") String vectorSchemaName,
+            @Value("${spring.ai.vectorstore.pgvector.table-name:" + PgVectorStore.DEFAULT_TABLE_NAME + "}") String vectorTableName,
+            @Value("${app.semantic-search.similarity-threshold:0.75}") double similarityThreshold,
+            @Value("${app.semantic-search.vectors-per-entity:4}") int vectorsPerEntity) {
         this.vectorStore = vectorStore;
+        this.queryEmbeddingCache = queryEmbeddingCache;
+        this.vectorTableName = vectorSchemaName + "." + vectorTableName;
         this.similarityThreshold = similarityThreshold;
+        this.vectorsPerEntity = Math.max(1, vectorsPerEntity);
     }
 
     public void upsertVariants(long id,
@@ -39,8 +55,16 @@ public class DocumentVectorStoreService {
                                String title,
                                List<EmbeddingTransformationService.EmbeddingVariant> variants,
                                Map<String, Object> additionalProperties) {
+        upsertDocuments(toVectorDocuments(id, entityType, title, variants, additionalProperties));
+    }
+
+    public List<Document> toVectorDocuments(long id,
+                                            String entityType,
+                                            String title,
+                                            List<EmbeddingTransformationService.EmbeddingVariant> variants,
+                                            Map<String, Object> additionalProperties) {
         if (variants == null || variants.isEmpty()) {
-            return;
+            return List.of();
         }
 
         List<Document> vectorDocuments = new ArrayList<>();
@@ -50,27 +74,164 @@ public class DocumentVectorStoreService {
             String vectorDocumentId = entityType + ":" + id + ":" + i;
             vectorDocuments.add(new Document(vectorDocumentId, variant.content(), metadata));
         }
+        return vectorDocuments;
+    }
+
+    /**
+     * One vector document per chunk, embedded as is. Besides the usual entity metadata each
+     * carries {@code chunkIndex}, {@code chunkStart} and {@code chunkEnd}, the character offsets of
+     * the passage in the entity's content.
+     */
+    public List<Document> toChunkDocuments(long id,
+                                           String entityType,
+                                           String title,
+                                           List<DocumentChunker.Chunk> chunks,
+                                           Map<String, Object> additionalProperties) {
+        List<Document> vectorDocuments = new ArrayList<>();
+        for (DocumentChunker.Chunk chunk : chunks) {
+            Map<String, Object> metadata = buildMetadata(id, entityType, title, additionalProperties, "chunk");
+            metadata.put("chunkIndex", chunk.index());
+            metadata.put("chunkStart", chunk.start());
+            metadata.put("chunkEnd", chunk.end());
+            String vectorDocumentId = entityType + ":" + id + ":" + chunk.index();
+            vectorDocuments.add(new Document(vectorDocumentId, chunk.content(), metadata));
+        }
+        return vectorDocuments;
+    }
+
+    /**
+     * Removes the entity's vector documents other than {@code keptIds}, e.g. chunks left over after
+     * the content got shorter. Only pgvector is cleaned up; other stores keep what they have.
+     */
+    public void deleteOtherDocuments(String entityType, long entityId, Collection<String> keptIds) {
+        if (!(vectorStore instanceof PgVectorStore pgVectorStore)) {
+            return;
+        }
+        JdbcTemplate jdbcTemplate = pgVectorStore.<JdbcTemplate>getNativeClient()
+                .orElseThrow(() -> new IllegalStateException("pgvector store has no JdbcTemplate"));
+
+        String sql = "DELETE FROM " + vectorTableName + " WHERE metadata ->> '" + ENTITY_TYPE_KEY + "' = ?"
+                + " AND metadata ->> '" + ENTITY_ID_KEY + "' = ? AND NOT (id::text = ANY(?))";
+        jdbcTemplate.update(sql, entityType, String.valueOf(entityId), keptIds.toArray(String[]::new));
+    }
+
+    /**
+     * Embeds and stores the documents with a single {@link VectorStore#add} call, which lets the
+     * store batch the embedding requests and the inserts.
+     */
+    public void upsertDocuments(List<Document> vectorDocuments) {
+        if (vectorDocuments.isEmpty()) {
+            return;
+        }
         vectorStore.add(vectorDocuments);
     }
 
+    /**
+     * On pgvector the query embedding comes from {@link QueryEmbeddingCache} and is searched with
+     * {@link #searchIds(float[], int, String)}; other stores embed the query themselves.
+     *
+     * <p>Entities are stored as several vectors (variants or chunks), so searches fetch up to
+     * {@code vectors-per-entity} times {@code limit} vectors and aggregate them to at most
+     * {@code limit} entities, each scored by its best-matching vector.
+     */
     public List<Long> searchIds(String query, int limit, String filterExpression) {
+        return toIds(searchScoredIds(query, limit, filterExpression));
+    }
+
+    /**
+     * Like {@link #searchIds(String, int, String)}, but keeps the similarity score of each entity's
+     * best-matching variant.
+     */
+    public List<ScoredId> searchScoredIds(String query, int limit, String filterExpression) {
+        if (vectorStore instanceof PgVectorStore) {
+            return searchScoredIds(queryEmbeddingCache.embed(query), limit, filterExpression);
+        }
+
         SearchRequest.Builder builder = SearchRequest.builder()
                 .query(query)
-                .topK(limit)
+                .topK(limit * vectorsPerEntity)
                 .similarityThreshold(similarityThreshold);
         if (filterExpression != null && !filterExpression.isBlank()) {
             builder.filterExpression(filterExpression);
         }
 
-        return vectorStore.similaritySearch(builder.build())
+        return distinctByEntity(vectorStore.similaritySearch(builder.build())
                 .stream()
-                .map(doc -> doc.getMetadata().get(ENTITY_ID_KEY))
-                .filter(java.util.Objects::nonNull)
-                .map(this::toLong)
-                .collect(java.util.stream.Collectors.collectingAndThen(
-                        java.util.stream.Collectors.toCollection(LinkedHashSet::new),
-                        List::copyOf
-                ));
+                .filter(doc -> doc.getMetadata().get(ENTITY_ID_KEY) != null)
+                .map(doc -> new ScoredId(toLong(doc.getMetadata().get(ENTITY_ID_KEY)), doc.getScore() == null ? 0 : doc.getScore()))
+                .toList(), limit);
+    }
+
+    public List<Long> searchIds(float[] queryEmbedding, int limit, String filterExpression) {
+        return toIds(searchScoredIds(queryEmbedding, limit, filterExpression));
+    }
+
+    /**
+     * Similarity search with a precomputed query embedding. Runs the same SQL, distance type and
+     * metadata filter translation as {@link PgVectorStore#similaritySearch}, but never calls the
+     * embedding model. Scores are {@code 1 - distance}, as in {@link Document#getScore()}.
+     */
+    public List<ScoredId> searchScoredIds(float[] queryEmbedding, int limit, String filterExpression) {
+        if (!(vectorStore instanceof PgVectorStore pgVectorStore)) {
+            throw new IllegalStateException("Searching by embedding requires a pgvector store");
+        }
+        JdbcTemplate jdbcTemplate = pgVectorStore.<JdbcTemplate>getNativeClient()
+                .orElseThrow(() -> new IllegalStateException("pgvector store has no JdbcTemplate"));
+
+        String jsonPathFilter = "";
+        if (filterExpression != null && !filterExpression.isBlank()) {
+            String nativeFilter = pgVectorStore.filterExpressionConverter.convertExpression(new FilterExpressionTextParser().parse(filterExpression));
+            jsonPathFilter = " AND metadata::jsonb @@ '" + nativeFilter + "'::jsonpath ";
+        }
+        String sql = "SELECT hits.metadata ->> '" + ENTITY_ID_KEY + "', hits.distance FROM ("
+                + String.format(pgVectorStore.getDistanceType().similaritySearchSqlTemplate, vectorTableName, jsonPathFilter)
+                + ") hits ORDER BY hits.distance";
+
+        PGvector embedding = new PGvector(queryEmbedding);
+        return distinctByEntity(jdbcTemplate.query(sql, (resultSet, rowNum) -> {
+            String entityId = resultSet.getString(1);
+            return entityId == null ? null : new ScoredId(toLong(entityId), 1 - resultSet.getDouble(2));
+        }, embedding, embedding, 1 - similarityThreshold, limit * vectorsPerEntity), limit);
+    }
+
+    /**
+     * Loads the stored variant vectors of the given entities, keyed by entity id. Returns an empty
+     * map for stores other than pgvector, which do not expose their vectors.
+     */
+    public Map<Long, List<float[]>> findVariantEmbeddings(String entityType, Collection<Long> entityIds) {
+        if (!(vectorStore instanceof PgVectorStore pgVectorStore) || entityIds.isEmpty()) {
+            return Map.of();
+        }
+        JdbcTemplate jdbcTemplate = pgVectorStore.<JdbcTemplate>getNativeClient()
+                .orElseThrow(() -> new IllegalStateException("pgvector store has no JdbcTemplate"));
+
+        String sql = "SELECT metadata ->> '" + ENTITY_ID_KEY + "', embedding::text FROM " + vectorTableName
+                + " WHERE metadata ->> '" + ENTITY_TYPE_KEY + "' = ? AND metadata ->> '" + ENTITY_ID_KEY + "' = ANY(?)";
+        String[] ids = entityIds.stream().map(String::valueOf).toArray(String[]::new);
+        Map<Long, List<float[]>> embeddings = new HashMap<>();
+        jdbcTemplate.query(sql, (RowCallbackHandler) resultSet -> {
+            embeddings.computeIfAbsent(toLong(resultSet.getString(1)), id -> new ArrayList<>())
+                    .add(new PGvector(resultSet.getString(2)).toArray());
+        }, entityType, ids);
+        return embeddings;
+    }
+
+    /**
+     * Keeps the first (best-ranked) hit of the first {@code limit} entities, since every entity has
+     * several variant or chunk vectors.
+     */
+    private static List<ScoredId> distinctByEntity(List<ScoredId> hits, int limit) {
+        Map<Long, ScoredId> byId = new LinkedHashMap<>();
+        for (ScoredId hit : hits) {
+            if (hit != null && (byId.size() < limit || byId.containsKey(hit.id()))) {
+                byId.putIfAbsent(hit.id(), hit);
+            }
+        }
+        return List.copyOf(byId.values());
+    }
+
+    private static List<Long> toIds(List<ScoredId> hits) {
+        return hits.stream().map(ScoredId::id).toList();
     }
 
     private Map<String, Object> buildMetadata(long id,
@@ -102,4 +263,7 @@ public class DocumentVectorStoreService {
         }
         return Long.parseLong(value.toString());
     }
+
+    public record ScoredId(long id, double score) {
+    }
 }
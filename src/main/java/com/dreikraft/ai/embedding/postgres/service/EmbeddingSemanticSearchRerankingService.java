@@ -0,0 +1,97 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import com.dreikraft.ai.embedding.postgres.model.ArticleDocument;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reranks candidates in-process from the stored variant vectors instead of asking the chat model.
+ * Each candidate scores the best cosine similarity of any of its variants to the query (max-sim),
+ * blended with its reciprocal rank in the baseline ranking so retrieval order still counts.
+ */
+@Service
+@ConditionalOnProperty(name = "app.semantic-search.rerank.enabled", havingValue = "true")
+@ConditionalOnProperty(name = "app.semantic-search.rerank.mode", havingValue = "embedding")
+@Slf4j
+public class EmbeddingSemanticSearchRerankingService implements SemanticSearchRerankingService {
+    private static final int RANK_CONSTANT = 60;
+
+    private final DocumentVectorStoreService vectorStoreService;
+    private final QueryEmbeddingCache queryEmbeddingCache;
+    private final double similarityWeight;
+
+    public EmbeddingSemanticSearchRerankingService(
+            DocumentVectorStoreService vectorStoreService,
+            QueryEmbeddingCache queryEmbeddingCache,
+            @Value("${app.semantic-search.rerank.embedding.similarity-weight:0.7}") double similarityWeight) {
+        this.vectorStoreService = vectorStoreService;
+        this.queryEmbeddingCache = queryEmbeddingCache;
+        this.similarityWeight = similarityWeight;
+    }
+
+    @Override
+    public List<Long> rerank(String query, List<Long> currentRanking, List<ArticleDocument> candidates) {
+        if (currentRanking == null || currentRanking.isEmpty()) {
+            return List.of();
+        }
+
+        try {
+            Map<Long, List<float[]>> variantEmbeddings = vectorStoreService.findVariantEmbeddings(
+                    DocumentType.ARTICLE.value(), currentRanking);
+            if (variantEmbeddings.isEmpty()) {
+                return currentRanking;
+            }
+            float[] queryEmbedding = queryEmbeddingCache.embed(query);
+
+            Map<Long, Double> scores = new LinkedHashMap<>();
+            for (int rank = 0; rank < currentRanking.size(); rank++) {
+                Long id = currentRanking.get(rank);
+                // Normalized so the top baseline hit scores 1, like a perfect cosine match.
+                double reciprocalRank = (RANK_CONSTANT + 1.0d) / (RANK_CONSTANT + rank + 1.0d);
+                double maxSimilarity = maxSimilarity(queryEmbedding, variantEmbeddings.getOrDefault(id, List.of()));
+                scores.putIfAbsent(id, similarityWeight * maxSimilarity + (1 - similarityWeight) * reciprocalRank);
+            }
+            // Stable sort: ties keep their baseline order.
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
+                    .map(Map.Entry::getKey)
+                    .toList();
+        } catch (RuntimeException ex) {
+            log.warn("Failed to rerank semantic-search candidates by embedding. Falling back to baseline ranking.", ex);
+            return currentRanking;
+        }
+    }
+
+    /**
+     * Candidates without stored vectors score 0 and keep only their reciprocal-rank share.
+     */
+    static double maxSimilarity(float[] query, List<float[]> variants) {
+        double best = 0;
+        for (float[] variant : variants) {
+            best = Math.max(best, cosineSimilarity(query, variant));
+        }
+        return best;
+    }
+
+    static double cosineSimilarity(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0;
+        }
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? 0 : dot / Math.sqrt(normA * normB);
+    }
+}
@@ -7,6 +7,14 @@ public interface EmbeddingTransformationService {
 
     List<EmbeddingVariant> transformForDiscussion(String articleTitle, String discussionTitle, String content);
 
-    record EmbeddingVariant(String label, String content) {
+    /**
+     * @param fallback {@code true} if the model produced no variants and this one only stands in
+     *                 for them
+     */
+    record EmbeddingVariant(String label, String content, boolean fallback) {
+
+        EmbeddingVariant(String label, String content) {
+            this(label, content, false);
+        }
     }
 }
@@ -0,0 +1,211 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process stand-in for the chat model, active with the {@code fake-llm} profile. It recognizes
+ * the application's prompts by their system message and answers each in the shape its caller
+ * parses, derived only from the prompt, so the same prompt always gets the same answer:
+ * <ul>
+ *     <li>document summaries: the lead sentences of the content,</li>
+ *     <li>embedding variants: a lead-sentence summary and a keyword list,</li>
+ *     <li>discussion classification: labels picked by item id,</li>
+ *     <li>reranking: the candidates ordered by how many query words they mention,</li>
+ *     <li>query rewrites: the query in lower case with collapsed whitespace,</li>
+ *     <li>RAG answers: the reference titles and the lead sentence of the first reference.</li>
+ * </ul>
+ */
+@Component
+@Profile("fake-llm")
+public class FakeChatModel implements ChatModel {
+    private static final Pattern ITEM_ID = Pattern.compile("\"id\"\\s*:\\s*(\\d+)");
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+");
+    private static final Pattern SENTENCE_BOUNDARY = Pattern.compile("(?<=[.!?])\\s+");
+    private static final Pattern CHUNK_BOUNDARY = Pattern.compile("(?<=\\s)");
+    private static final List<String> SENTIMENTS = List.of("positive", "negative", "neutral");
+    private static final List<String> RESPONSE_DEPTHS = List.of("trivial", "substantive", "in_depth", "off_topic");
+    private static final int KEYWORD_COUNT = 8;
+    private static final int MIN_KEYWORD_LENGTH = 4;
+
+    private final ObjectMapper objectMapper;
+    private final FakeLlmProperties.Chat properties;
+
+    public FakeChatModel(ObjectMapper objectMapper, FakeLlmProperties properties) {
+        this.objectMapper = objectMapper;
+        this.properties = properties.chat();
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        String answer = answer(prompt);
+        simulateLatency(properties.latencyMs());
+        return chatResponse(answer);
+    }
+
+    /**
+     * Streams the same answer as {@link #call(Prompt)} word by word: the first chunk after
+     * {@code latency-ms}, each further chunk {@code stream-chunk-delay-ms} later.
+     */
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        Flux<ChatResponse> chunks = Flux.defer(() -> Flux.fromArray(CHUNK_BOUNDARY.split(answer(prompt))))
+                .map(this::chatResponse);
+        if (properties.streamChunkDelayMs() > 0) {
+            chunks = chunks.delayElements(Duration.ofMillis(properties.streamChunkDelayMs()));
+        }
+        return properties.latencyMs() > 0 ? chunks.delaySubscription(Duration.ofMillis(properties.latencyMs())) : chunks;
+    }
+
+    private String answer(Prompt prompt) {
+        String system = prompt.getSystemMessage().getText();
+        String user = prompt.getUserMessage().getText();
+        try {
+            if (system.contains("search reranking model")) {
+                return rerank(between(user, "Query:", "Candidates:"), after(user, "Candidates:"));
+            }
+            if (system.contains("You classify")) {
+                return classify(user);
+            }
+            if (system.contains("text variants for vector embeddings")) {
+                return variants(after(user, "Content:"));
+            }
+            if (system.contains("semantic-search summary")) {
+                return leadSentences(after(user, "Content:"), 2);
+            }
+            if (system.contains("Rewrite this search query")) {
+                return String.join(" ", words(after(user, "Query:")));
+            }
+            if (system.contains("RAG assistant")) {
+                return ragAnswer(between(user, "Question:", "Context:"), after(user, "Context:"));
+            }
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Fake chat model could not read or write JSON", ex);
+        }
+        return "Fake answer " + Integer.toHexString(user.hashCode());
+    }
+
+    private String rerank(String query, String candidatesJson) throws JsonProcessingException {
+        Set<String> queryWords = new LinkedHashSet<>(words(query));
+        Map<Long, Integer> matches = new LinkedHashMap<>();
+        for (JsonNode candidate : objectMapper.readTree(candidatesJson)) {
+            String text = candidate.path("title").asText() + " " + candidate.path("content").asText();
+            matches.put(candidate.path("id").asLong(), (int) words(text).stream().distinct().filter(queryWords::contains).count());
+        }
+        // Stable sort: candidates mentioning equally many query words keep their order.
+        List<Long> ranking = new ArrayList<>(matches.keySet());
+        ranking.sort(Comparator.comparing((Long id) -> matches.get(id)).reversed());
+        return objectMapper.writeValueAsString(ranking);
+    }
+
+    private String classify(String user) throws JsonProcessingException {
+        Set<Long> ids = new LinkedHashSet<>();
+        Matcher matcher = ITEM_ID.matcher(user);
+        while (matcher.find()) {
+            ids.add(Long.parseLong(matcher.group(1)));
+        }
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (long id : ids) {
+            items.add(Map.of(
+                    "id", id,
+                    "sentiment", SENTIMENTS.get(Math.floorMod(id, SENTIMENTS.size())),
+                    "responseDepth", RESPONSE_DEPTHS.get(Math.floorMod(id, RESPONSE_DEPTHS.size()))));
+        }
+        return objectMapper.writeValueAsString(Map.of("items", items));
+    }
+
+    private String variants(String content) throws JsonProcessingException {
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        for (String word : words(content)) {
+            if (word.length() >= MIN_KEYWORD_LENGTH) {
+                frequencies.merge(word, 1, Integer::sum);
+            }
+        }
+        List<String> keywords = frequencies.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(KEYWORD_COUNT)
+                .map(Map.Entry::getKey)
+                .toList();
+        return objectMapper.writeValueAsString(Map.of("variants", List.of(
+                Map.of("label", "summary", "content", leadSentences(content, 2)),
+                Map.of("label", "keywords", "content", String.join(", ", keywords)))));
+    }
+
+    private static String ragAnswer(String question, String context) {
+        List<String> titles = new ArrayList<>();
+        String firstContent = null;
+        for (String line : context.split("\n")) {
+            if (line.startsWith("Title: ")) {
+                titles.add(line.substring("Title: ".length()).strip());
+            } else if (line.startsWith("Content: ") && firstContent == null) {
+                firstContent = line.substring("Content: ".length());
+            }
+        }
+        if (titles.isEmpty()) {
+            return "There is not enough context to answer \"" + question + "\".";
+        }
+        return "Based on " + String.join(", ", titles) + ": " + leadSentences(firstContent, 1);
+    }
+
+    private static String leadSentences(String text, int count) {
+        String[] sentences = SENTENCE_BOUNDARY.split(text == null ? "" : text.strip());
+        return String.join(" ", List.of(sentences).subList(0, Math.min(count, sentences.length)));
+    }
+
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        Matcher matcher = WORD.matcher(text.toLowerCase(Locale.ROOT));
+        while (matcher.find()) {
+            words.add(matcher.group());
+        }
+        return words;
+    }
+
+    private static String after(String text, String marker) {
+        int start = text.indexOf(marker);
+        return start < 0 ? "" : text.substring(start + marker.length()).strip();
+    }
+
+    private static String between(String text, String startMarker, String endMarker) {
+        String rest = after(text, startMarker);
+        int end = rest.indexOf(endMarker);
+        return (end < 0 ? rest : rest.substring(0, end)).strip();
+    }
+
+    private ChatResponse chatResponse(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    private static void simulateLatency(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating a chat response", ex);
+        }
+    }
+}
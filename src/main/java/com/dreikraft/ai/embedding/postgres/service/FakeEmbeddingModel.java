@@ -0,0 +1,94 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process stand-in for the embedding model, active with the {@code fake-llm} profile. Each word
+ * of a text adds a few signed components at positions seeded by the word's hash, and the sum is
+ * normalized, so the same text always gets the same vector and texts sharing words are similar.
+ */
+@Component
+@Profile("fake-llm")
+public class FakeEmbeddingModel implements EmbeddingModel {
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+");
+    private static final int COMPONENTS_PER_WORD = 8;
+
+    private final FakeLlmProperties.Embedding properties;
+
+    public FakeEmbeddingModel(FakeLlmProperties properties) {
+        this.properties = properties.embedding();
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        simulateLatency(properties.latencyMs() + properties.latencyPerInputMs() * texts.size());
+        List<Embedding> embeddings = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            embeddings.add(new Embedding(vector(texts.get(i)), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getFormattedContent(MetadataMode.EMBED));
+    }
+
+    @Override
+    public int dimensions() {
+        return properties.dimensions();
+    }
+
+    private float[] vector(String text) {
+        float[] vector = new float[properties.dimensions()];
+        Matcher words = WORD.matcher(text == null ? "" : text.toLowerCase(Locale.ROOT));
+        while (words.find()) {
+            SplittableRandom random = new SplittableRandom(words.group().hashCode());
+            for (int i = 0; i < COMPONENTS_PER_WORD; i++) {
+                vector[random.nextInt(vector.length)] += random.nextBoolean() ? 1 : -1;
+            }
+        }
+
+        double norm = 0;
+        for (float component : vector) {
+            norm += component * component;
+        }
+        if (norm == 0) {
+            // No words: a fixed unit vector, since a zero vector has no cosine distance.
+            vector[0] = 1;
+            return vector;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private static void simulateLatency(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while embedding", ex);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of the in-process model stand-ins of the {@code fake-llm} profile.
+ *
+ * @param chat      injected latency of {@link FakeChatModel}
+ * @param embedding vector size and injected latency of {@link FakeEmbeddingModel}
+ */
+@ConfigurationProperties(prefix = "app.fake-llm")
+public record FakeLlmProperties(@DefaultValue Chat chat, @DefaultValue Embedding embedding) {
+
+    /**
+     * @param latencyMs          time a call takes before it answers; for streamed calls, the time to the first chunk
+     * @param streamChunkDelayMs time between two streamed chunks
+     */
+    public record Chat(@DefaultValue("0") long latencyMs, @DefaultValue("0") long streamChunkDelayMs) {
+    }
+
+    /**
+     * @param dimensions        length of the returned vectors; must match the vector store table
+     * @param latencyMs         time a call takes regardless of how many texts it embeds
+     * @param latencyPerInputMs time added per embedded text
+     */
+    public record Embedding(@DefaultValue("1024") int dimensions,
+                            @DefaultValue("0") long latencyMs,
+                            @DefaultValue("0") long latencyPerInputMs) {
+    }
+}
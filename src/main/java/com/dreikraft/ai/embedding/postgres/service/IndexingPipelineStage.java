@@ -0,0 +1,209 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One stage of the indexing pipeline: a bounded queue drained by a fixed number of virtual threads.
+ * Items that pass the stage are put on the next stage's queue, which blocks while that queue is
+ * full, so a slow stage pushes back on the stages in front of it instead of buffering without
+ * limit. A handler may also finish an item early, in which case it is not forwarded.
+ *
+ * <p>A batching stage hands a worker everything that is queued, up to a maximum, in one call. It
+ * is meant for the last stage, where it turns per-item writes into one statement per batch.
+ *
+ * <p>Per stage ({@code stage} tag) it publishes the queue size, the number of busy workers, the
+ * time items wait in the queue, the processing time (whose count is the stage throughput) and
+ * failures. For a batching stage the processing time is recorded once per batch.
+ */
+@Slf4j
+final class IndexingPipelineStage<T> {
+
+    @FunctionalInterface
+    interface Handler<T> {
+        /**
+         * @return {@code true} to hand the item to the next stage, {@code false} if the handler
+         * already finished it
+         */
+        boolean process(T item) throws Exception;
+    }
+
+    @FunctionalInterface
+    interface BatchHandler<T> {
+        void process(List<T> items) throws Exception;
+    }
+
+    @FunctionalInterface
+    interface FailureHandler<T> {
+        void failed(T item, Exception ex);
+    }
+
+    private final String name;
+    private final BlockingQueue<Queued<T>> queue;
+    private final Handler<T> handler;
+    private final BatchHandler<T> batchHandler;
+    private final int maxBatchSize;
+    private final IndexingPipelineStage<T> next;
+    private final FailureHandler<T> failureHandler;
+    private final AtomicInteger busyWorkers = new AtomicInteger();
+    private final Timer queueWaitTimer;
+    private final Timer processTimer;
+    private final Counter failureCounter;
+    private final List<Thread> workers = new ArrayList<>();
+
+    IndexingPipelineStage(String name,
+                          int concurrency,
+                          int queueCapacity,
+                          Handler<T> handler,
+                          IndexingPipelineStage<T> next,
+                          FailureHandler<T> failureHandler,
+                          MeterRegistry meterRegistry) {
+        this(name, concurrency, queueCapacity, handler, null, 1, next, failureHandler, meterRegistry);
+    }
+
+    /**
+     * Creates a terminal stage that processes up to {@code maxBatchSize} queued items per call.
+     */
+    IndexingPipelineStage(String name,
+                          int concurrency,
+                          int queueCapacity,
+                          int maxBatchSize,
+                          BatchHandler<T> batchHandler,
+                          FailureHandler<T> failureHandler,
+                          MeterRegistry meterRegistry) {
+        this(name, concurrency, queueCapacity, null, batchHandler, maxBatchSize, null, failureHandler, meterRegistry);
+    }
+
+    private IndexingPipelineStage(String name,
+                                  int concurrency,
+                                  int queueCapacity,
+                                  Handler<T> handler,
+                                  BatchHandler<T> batchHandler,
+                                  int maxBatchSize,
+                                  IndexingPipelineStage<T> next,
+                                  FailureHandler<T> failureHandler,
+                                  MeterRegistry meterRegistry) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.handler = handler;
+        this.batchHandler = batchHandler;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.next = next;
+        this.failureHandler = failureHandler;
+
+        Gauge.builder("indexing.pipeline.queue.size", queue, BlockingQueue::size)
+                .description("Items waiting in the stage queue")
+                .tag("stage", name)
+                .register(meterRegistry);
+        Gauge.builder("indexing.pipeline.stage.busy", busyWorkers, AtomicInteger::get)
+                .description("Stage workers currently processing an item")
+                .tag("stage", name)
+                .register(meterRegistry);
+        this.queueWaitTimer = Timer.builder("indexing.pipeline.queue.wait")
+                .description("Time items spend in the stage queue")
+                .tag("stage", name)
+                .register(meterRegistry);
+        this.processTimer = Timer.builder("indexing.pipeline.stage.process")
+                .description("Time the stage spends processing an item")
+                .tag("stage", name)
+                .register(meterRegistry);
+        this.failureCounter = Counter.builder("indexing.pipeline.stage.failures")
+                .description("Items that failed in the stage")
+                .tag("stage", name)
+                .register(meterRegistry);
+
+        for (int i = 0; i < Math.max(1, concurrency); i++) {
+            workers.add(Thread.ofVirtual().name("indexing-" + name + "-", i).start(this::run));
+        }
+    }
+
+    void submit(T item) throws InterruptedException {
+        queue.put(new Queued<>(item, System.nanoTime()));
+    }
+
+    void shutdown() {
+        workers.forEach(Thread::interrupt);
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Queued<T> queued;
+            try {
+                queued = queue.take();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (batchHandler != null) {
+                List<Queued<T>> batch = new ArrayList<>(maxBatchSize);
+                batch.add(queued);
+                queue.drainTo(batch, maxBatchSize - 1);
+                long now = System.nanoTime();
+                batch.forEach(item -> queueWaitTimer.record(now - item.enqueuedAt(), TimeUnit.NANOSECONDS));
+                processBatch(batch.stream().map(Queued::item).toList());
+                continue;
+            }
+            queueWaitTimer.record(System.nanoTime() - queued.enqueuedAt(), TimeUnit.NANOSECONDS);
+            if (!process(queued.item())) {
+                continue;
+            }
+            if (next != null) {
+                try {
+                    next.submit(queued.item());
+                } catch (InterruptedException ex) {
+                    failureHandler.failed(queued.item(), ex);
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean process(T item) {
+        busyWorkers.incrementAndGet();
+        long started = System.nanoTime();
+        try {
+            return handler.process(item);
+        } catch (Exception ex) {
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            failureCounter.increment();
+            log.debug("Indexing pipeline stage {} failed", name, ex);
+            failureHandler.failed(item, ex);
+            return false;
+        } finally {
+            processTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            busyWorkers.decrementAndGet();
+        }
+    }
+
+    private void processBatch(List<T> items) {
+        busyWorkers.incrementAndGet();
+        long started = System.nanoTime();
+        try {
+            batchHandler.process(items);
+        } catch (Exception ex) {
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            failureCounter.increment(items.size());
+            log.debug("Indexing pipeline stage {} failed for a batch of {}", name, items.size(), ex);
+            items.forEach(item -> failureHandler.failed(item, ex));
+        } finally {
+            processTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            busyWorkers.decrementAndGet();
+        }
+    }
+
+    private record Queued<T>(T item, long enqueuedAt) {
+    }
+}
@@ -3,9 +3,13 @@ package com.dreikraft.ai.embedding.postgres.service;
 import com.dreikraft.ai.embedding.postgres.model.DiscussionDocument;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
@@ -13,19 +17,74 @@ import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Classifies root entries in one prompt against the article, and responses against their direct
+ * parent in batches of up to {@code responseBatchSize} items or {@code responseBatchMaxChars}
+ * characters of response and parent text. Responses missing from a batch result are retried in
+ * smaller batches down to single items before they fall back to the defaults. Up to
+ * {@code responseConcurrency} batches are classified at the same time on virtual threads; a batch
+ * that fails falls back on its own without affecting the other items of the article. Items that
+ * fall back because a call failed or the gateway rejected it are counted in
+ * {@code discussion.classification.fallback}, tagged by role and reason.
+ */
 @Service
 public class LlmDiscussionClassificationService implements DiscussionClassificationService {
     private static final Logger log = LoggerFactory.getLogger(LlmDiscussionClassificationService.class);
     private static final String SENTIMENT_NEUTRAL = "neutral";
 
     private final ChatClient chatClient;
+    private final LlmGateway llmGateway;
     private final ObjectMapper objectMapper;
-
-    public LlmDiscussionClassificationService(ChatClient.Builder chatClientBuilder, ObjectMapper objectMapper) {
+    private final int responseBatchSize;
+    private final int responseBatchMaxChars;
+    private final int responseConcurrency;
+    private final Semaphore responseConcurrencyLimit;
+    private final ExecutorService executor;
+    private final Counter rootFailureFallbacks;
+    private final Counter rootUnavailableFallbacks;
+    private final Counter responseFailureFallbacks;
+    private final Counter responseUnavailableFallbacks;
+
+    public LlmDiscussionClassificationService(
+            ChatClient.Builder chatClientBuilder,
+            ObjectMapper objectMapper,
+            LlmGateway llmGateway,
+            MeterRegistry meterRegistry,
+            @Value("${app.document-indexing.classification.response-batch-size:20}") int responseBatchSize,
+            @Value("${app.document-indexing.classification.response-batch-max-chars:12000}") int responseBatchMaxChars,
+            @Value("${app.document-indexing.classification.response-concurrency:4}") int responseConcurrency) {
         this.chatClient = chatClientBuilder.build();
+        this.llmGateway = llmGateway;
         this.objectMapper = objectMapper;
+        this.responseBatchSize = Math.max(1, responseBatchSize);
+        this.responseBatchMaxChars = Math.max(1, responseBatchMaxChars);
+        this.responseConcurrency = Math.max(1, responseConcurrency);
+        this.responseConcurrencyLimit = new Semaphore(this.responseConcurrency);
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("discussion-classify-", 0).factory());
+        this.rootFailureFallbacks = fallbackCounter(meterRegistry, "root", "failure");
+        this.rootUnavailableFallbacks = fallbackCounter(meterRegistry, "root", "unavailable");
+        this.responseFailureFallbacks = fallbackCounter(meterRegistry, "response", "failure");
+        this.responseUnavailableFallbacks = fallbackCounter(meterRegistry, "response", "unavailable");
+    }
+
+    private static Counter fallbackCounter(MeterRegistry meterRegistry, String role, String reason) {
+        return Counter.builder("discussion.classification.fallback")
+                .description("Discussion items labelled with the defaults because their LLM call failed or was rejected")
+                .tag("role", role)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
     }
 
     @Override
@@ -39,34 +98,70 @@ public class LlmDiscussionClassificationService implements DiscussionClassificat
                 .filter(discussion -> discussion.id() != null)
                 .collect(LinkedHashMap::new, (map, discussion) -> map.put(discussion.id(), discussion), LinkedHashMap::putAll);
 
+        Set<Long> targetIds = input.targetIds();
         List<DiscussionDocument> roots = discussions.stream()
                 .filter(discussion -> discussion.parentDocumentId() == null)
                 .toList();
-        List<DiscussionDocument> responses = collectResponsesRecursively(discussions, roots);
+        List<DiscussionDocument> responses = collectResponsesRecursively(discussions, roots).stream()
+                .filter(response -> targetIds.contains(response.id()))
+                .toList();
+        List<DiscussionDocument> targetRoots = roots.stream()
+                .filter(root -> targetIds.contains(root.id()))
+                .toList();
+        List<DiscussionDocument> targets = discussions.stream()
+                .filter(discussion -> targetIds.contains(discussion.id()))
+                .toList();
 
         Map<Long, DiscussionClassification> classifications = new LinkedHashMap<>();
         try {
-            if (!roots.isEmpty()) {
-                classifications.putAll(classifyRoots(input, roots));
+            if (!targetRoots.isEmpty()) {
+                classifications.putAll(classifyRootsWithFallback(input, targetRoots));
             }
             if (!responses.isEmpty()) {
                 classifications.putAll(classifyResponses(responses, byId));
             }
 
-            for (DiscussionDocument discussion : discussions) {
+            for (DiscussionDocument discussion : targets) {
                 classifications.computeIfAbsent(discussion.id(), ignored -> fallback());
             }
             return classifications;
         } catch (Exception ex) {
             log.warn("Failed to classify discussion entries with LLM. Falling back to neutral defaults.", ex);
             Map<Long, DiscussionClassification> fallback = new LinkedHashMap<>();
-            for (DiscussionDocument discussion : discussions) {
+            for (DiscussionDocument discussion : targets) {
                 fallback.put(discussion.id(), fallback());
             }
             return fallback;
         }
     }
 
+    /**
+     * Classifies the roots with the LLM; if the call fails or the gateway rejects it they are left
+     * out of the result so that the responses classified alongside them keep their labels.
+     */
+    private Map<Long, DiscussionClassification> classifyRootsWithFallback(DiscussionClassificationInput input,
+                                                                          List<DiscussionDocument> roots) {
+        try {
+            return classifyRoots(input, roots);
+        } catch (JsonProcessingException | RuntimeException ex) {
+            recordFallback("root", roots.size(), ex, rootFailureFallbacks, rootUnavailableFallbacks);
+            return Map.of();
+        }
+    }
+
+    private static void recordFallback(String role, int items, Exception ex,
+                                       Counter failureFallbacks, Counter unavailableFallbacks) {
+        if (ex instanceof LlmUnavailableException) {
+            unavailableFallbacks.increment(items);
+            log.warn("LLM gateway rejected classification of {} {} discussion items ({}). Falling back to defaults for them.",
+                    items, role, ex.getMessage());
+        } else {
+            failureFallbacks.increment(items);
+            log.warn("Failed to classify {} {} discussion items with LLM. Falling back to defaults for them.",
+                    items, role, ex);
+        }
+    }
+
     private Map<Long, DiscussionClassification> classifyRoots(DiscussionClassificationInput input,
                                                               List<DiscussionDocument> roots) throws JsonProcessingException {
         String inputJson = objectMapper.writeValueAsString(
@@ -75,7 +170,7 @@ public class LlmDiscussionClassificationService implements DiscussionClassificat
                         .toList()
         );
 
-        String response = chatClient.prompt()
+        String response = llmGateway.call(LlmTask.CLASSIFY, () -> chatClient.prompt()
                 .system("""
                         You classify root online discussion entries for both sentiment and response depth.
 
@@ -105,53 +200,147 @@ public class LlmDiscussionClassificationService implements DiscussionClassificat
                         .param("articleContent", safeValue(input.articleContent()))
                         .param("items", inputJson))
                 .call()
-                .content();
+                .content());
 
         return parseClassifications(response);
     }
 
     private Map<Long, DiscussionClassification> classifyResponses(List<DiscussionDocument> responses,
                                                                   Map<Long, DiscussionDocument> discussionsById) throws JsonProcessingException {
+        List<ResponsePromptItem> promptItems = responses.stream()
+                .map(response -> toResponsePromptItem(response, discussionsById.get(response.parentDocumentId())))
+                .filter(Objects::nonNull)
+                .toList();
+        List<List<ResponsePromptItem>> batches = partitionResponses(promptItems);
         Map<Long, DiscussionClassification> classifications = new LinkedHashMap<>();
-        for (DiscussionDocument responseDiscussion : responses) {
-            ResponsePromptItem promptItem = toResponsePromptItem(
-                    responseDiscussion,
-                    discussionsById.get(responseDiscussion.parentDocumentId())
-            );
-            if (promptItem == null) {
-                continue;
+        if (responseConcurrency == 1 || batches.size() == 1) {
+            for (List<ResponsePromptItem> batch : batches) {
+                classifications.putAll(classifyResponseBatchWithFallback(batch));
             }
-            classifications.putAll(classifySingleResponse(promptItem));
+            return classifications;
+        }
+
+        List<CompletableFuture<Map<Long, DiscussionClassification>>> results = batches.stream()
+                .map(batch -> CompletableFuture.supplyAsync(() -> classifyResponseBatchWithPermit(batch), executor))
+                .toList();
+        // Merge in batch order so the result does not depend on which batch finished first.
+        for (CompletableFuture<Map<Long, DiscussionClassification>> result : results) {
+            classifications.putAll(result.join());
+        }
+        return classifications;
+    }
+
+    private Map<Long, DiscussionClassification> classifyResponseBatchWithPermit(List<ResponsePromptItem> batch) {
+        try {
+            responseConcurrencyLimit.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to classify response discussion items", ex);
+        }
+        try {
+            return classifyResponseBatchWithFallback(batch);
+        } finally {
+            responseConcurrencyLimit.release();
+        }
+    }
+
+    /**
+     * Classifies one batch with the LLM; if the call fails or the gateway rejects it the batch is
+     * left out of the result so that only its own items fall back to the defaults.
+     */
+    private Map<Long, DiscussionClassification> classifyResponseBatchWithFallback(List<ResponsePromptItem> batch) {
+        Map<Long, DiscussionClassification> classifications = new LinkedHashMap<>();
+        try {
+            classifyResponseBatch(batch, classifications);
+        } catch (JsonProcessingException | RuntimeException ex) {
+            recordFallback("response", batch.size() - classifications.size(), ex, responseFailureFallbacks, responseUnavailableFallbacks);
         }
         return classifications;
     }
 
-    private Map<Long, DiscussionClassification> classifySingleResponse(ResponsePromptItem promptItem) throws JsonProcessingException {
-        String inputJson = objectMapper.writeValueAsString(List.of(promptItem));
+    private List<List<ResponsePromptItem>> partitionResponses(List<ResponsePromptItem> promptItems) {
+        List<List<ResponsePromptItem>> batches = new ArrayList<>();
+        List<ResponsePromptItem> batch = new ArrayList<>();
+        int batchChars = 0;
+        for (ResponsePromptItem item : promptItems) {
+            int itemChars = safeValue(item.content()).length() + safeValue(item.parentContent()).length();
+            if (!batch.isEmpty() && (batch.size() >= responseBatchSize || batchChars + itemChars > responseBatchMaxChars)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchChars = 0;
+            }
+            batch.add(item);
+            batchChars += itemChars;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private void classifyResponseBatch(List<ResponsePromptItem> batch,
+                                       Map<Long, DiscussionClassification> target) throws JsonProcessingException {
+        Map<Long, DiscussionClassification> classified;
+        try {
+            classified = requestResponseClassifications(batch);
+        } catch (JsonProcessingException ex) {
+            log.debug("Unparseable classification response for {} response items", batch.size(), ex);
+            classified = Map.of();
+        }
+
+        List<ResponsePromptItem> missing = new ArrayList<>();
+        for (ResponsePromptItem item : batch) {
+            DiscussionClassification classification = classified.get(item.id());
+            if (classification == null) {
+                missing.add(item);
+            } else {
+                target.put(item.id(), classification);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        if (batch.size() == 1) {
+            log.warn("No classification returned for response discussion item {}. Falling back to defaults.", batch.get(0).id());
+            return;
+        }
+        int half = (missing.size() + 1) / 2;
+        log.debug("{} of {} response items missing from classification result; retrying in smaller batches",
+                missing.size(), batch.size());
+        classifyResponseBatch(missing.subList(0, half), target);
+        if (half < missing.size()) {
+            classifyResponseBatch(missing.subList(half, missing.size()), target);
+        }
+    }
+
+    private Map<Long, DiscussionClassification> requestResponseClassifications(List<ResponsePromptItem> promptItems) throws JsonProcessingException {
+        String inputJson = objectMapper.writeValueAsString(promptItems);
 
-        String response = chatClient.prompt()
+        String response = llmGateway.call(LlmTask.CLASSIFY, () -> chatClient.prompt()
                 .system("""
-                        You classify a single response discussion entry for both sentiment and response depth.
+                        You classify response discussion entries for both sentiment and response depth.
 
                         Classification labels:
                         - sentiment: one of positive, negative, neutral
                         - responseDepth: one of trivial, substantive, in_depth, off_topic
 
                         Rules:
-                        - Compare the response item only to its direct parent discussion item.
-                        - Ignore article-level context.
+                        - Every item carries its own direct parent discussion item (parentDocumentId, parentContent).
+                        - Compare each response item only to its own direct parent discussion item.
+                        - Ignore article-level context and the other items.
+                        - Return exactly one result per item id.
                         - responseDepth must be non-null.
 
                         Return only compact JSON with shape:
                         {"items":[{"id":123,"sentiment":"neutral","responseDepth":"substantive"}]}
                         """)
                 .user(user -> user.text("""
-                        Response item and direct parent context:
+                        Response items with their direct parent context:
                         {items}
                         """)
                         .param("items", inputJson))
                 .call()
-                .content();
+                .content());
 
         return parseClassifications(response);
     }
@@ -225,7 +414,7 @@ public class LlmDiscussionClassificationService implements DiscussionClassificat
     }
 
     private DiscussionClassification fallback() {
-        return new DiscussionClassification(SENTIMENT_NEUTRAL, "substantive");
+        return new DiscussionClassification(SENTIMENT_NEUTRAL, "substantive", true);
     }
 
     private String normalizeSentiment(String value) {
@@ -15,10 +15,12 @@ public class LlmEmbeddingTransformationService implements EmbeddingTransformatio
     private static final Logger log = LoggerFactory.getLogger(LlmEmbeddingTransformationService.class);
 
     private final ChatClient chatClient;
+    private final LlmGateway llmGateway;
     private final ObjectMapper objectMapper;
 
-    public LlmEmbeddingTransformationService(ChatClient.Builder chatClientBuilder, ObjectMapper objectMapper) {
+    public LlmEmbeddingTransformationService(ChatClient.Builder chatClientBuilder, ObjectMapper objectMapper, LlmGateway llmGateway) {
         this.chatClient = chatClientBuilder.build();
+        this.llmGateway = llmGateway;
         this.objectMapper = objectMapper;
     }
 
@@ -42,7 +44,7 @@ public class LlmEmbeddingTransformationService implements EmbeddingTransformatio
         variants.add(new EmbeddingVariant("original", safe(content)));
 
         try {
-            String response = chatClient.prompt()
+            String response = llmGateway.call(LlmTask.TRANSFORM, () -> chatClient.prompt()
                     .system("""
                             You create text variants for vector embeddings.
                             Return compact JSON only with shape:
@@ -59,7 +61,7 @@ public class LlmEmbeddingTransformationService implements EmbeddingTransformatio
                             .param("title", safe(title))
                             .param("content", safe(content)))
                     .call()
-                    .content();
+                    .content());
 
             TransformationResponse parsed = objectMapper.readValue(stripCodeFences(response), TransformationResponse.class);
             if (parsed.variants() != null) {
@@ -71,8 +73,12 @@ public class LlmEmbeddingTransformationService implements EmbeddingTransformatio
                     variants.add(new EmbeddingVariant(label, item.content().trim()));
                 }
             }
+        } catch (LlmUnavailableException ex) {
+            // Rejected by the gateway: fail the job so it is retried instead of embedding the original only.
+            throw ex;
         } catch (Exception ex) {
             log.warn("Embedding transformation failed for {}. Falling back to original content only.", kind, ex);
+            return deduplicate(List.of(new EmbeddingVariant("original", safe(content), true)));
         }
 
         return deduplicate(variants);
@@ -86,7 +92,7 @@ public class LlmEmbeddingTransformationService implements EmbeddingTransformatio
             if (normalized.isBlank() || !seen.add(normalized)) {
                 continue;
             }
-            unique.add(new EmbeddingVariant(variant.label(), normalized));
+            unique.add(new EmbeddingVariant(variant.label(), normalized, variant.fallback()));
         }
         return unique;
     }
@@ -0,0 +1,361 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Single entry point for chat-model calls. Every call
+ * <ol>
+ *     <li>waits for a permit of its task and a shared permit, where interactive tasks are served
+ *     before background tasks and background tasks never take the reserved permits,</li>
+ *     <li>waits for a rate-limit token if a rate is configured,</li>
+ *     <li>is rejected while the circuit breaker of its priority is open,</li>
+ *     <li>and must finish before its deadline, which starts when the call is requested.</li>
+ * </ol>
+ * A permit is held until the underlying request really ends, even after its caller gave up, so the
+ * configured concurrency is what the model server sees.
+ *
+ * <p>Publishes {@code llm.gateway.queue.wait} (tagged {@code task}, {@code priority}),
+ * {@code llm.gateway.call} (tagged {@code task}, {@code outcome}), {@code llm.gateway.collapsed}
+ * (tagged {@code task}), {@code llm.gateway.permits.available} and {@code llm.gateway.circuit.open}
+ * (tagged {@code priority}).
+ */
+@Service
+@Slf4j
+public class LlmGateway {
+    private final LlmGatewayProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final PriorityPermits permits;
+    private final Map<LlmTask, Semaphore> taskPermits = new EnumMap<>(LlmTask.class);
+    private final Map<LlmTask, Timer> queueWaitTimers = new EnumMap<>(LlmTask.class);
+    private final Map<LlmTask, SingleFlight<SharedCall, Object>> sharedCalls = new EnumMap<>(LlmTask.class);
+    private final TokenBucket tokenBucket;
+    private final CircuitBreaker interactiveBreaker;
+    private final CircuitBreaker backgroundBreaker;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("llm-call-", 0).factory());
+
+    public LlmGateway(LlmGatewayProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.permits = new PriorityPermits(properties.maxConcurrency(), properties.interactiveReserved());
+        for (LlmTask task : LlmTask.values()) {
+            taskPermits.put(task, new Semaphore(Math.max(1, properties.concurrency(task))));
+            queueWaitTimers.put(task, Timer.builder("llm.gateway.queue.wait")
+                    .description("Time LLM calls wait for a permit and a rate-limit token")
+                    .tag("task", task.value())
+                    .tag("priority", task.interactive() ? "interactive" : "background")
+                    .register(meterRegistry));
+            Counter collapsed = Counter.builder("llm.gateway.collapsed")
+                    .description("LLM calls that shared the result of an identical call already in flight")
+                    .tag("task", task.value())
+                    .register(meterRegistry);
+            sharedCalls.put(task, new SingleFlight<>(collapsed::increment));
+        }
+        LlmGatewayProperties.RateLimit rateLimit = properties.rateLimit();
+        this.tokenBucket = rateLimit.requestsPerSecond() > 0
+                ? new TokenBucket(rateLimit.requestsPerSecond(), Math.max(1, rateLimit.burst()))
+                : null;
+        LlmGatewayProperties.Breaker breaker = properties.breaker();
+        this.interactiveBreaker = new CircuitBreaker("interactive", Math.max(1, breaker.failureThreshold()), Duration.ofMillis(breaker.openMs()));
+        this.backgroundBreaker = new CircuitBreaker("background", Math.max(1, breaker.failureThreshold()), Duration.ofMillis(breaker.openMs()));
+
+        Gauge.builder("llm.gateway.permits.available", permits, PriorityPermits::available)
+                .description("Shared LLM call permits currently free")
+                .register(meterRegistry);
+        for (CircuitBreaker circuitBreaker : List.of(interactiveBreaker, backgroundBreaker)) {
+            Gauge.builder("llm.gateway.circuit.open", circuitBreaker, breakerState -> breakerState.isOpen() ? 1 : 0)
+                    .description("1 while the LLM circuit breaker rejects calls")
+                    .tag("priority", circuitBreaker.priority)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Runs {@code request} under the limits of {@code task}.
+     *
+     * @throws LlmUnavailableException if the call is rejected or misses its deadline
+     */
+    public <T> T call(LlmTask task, Supplier<T> request) {
+        return call(task, properties.timeout(task), firstChunk -> request.get());
+    }
+
+    /**
+     * Runs a streaming {@code request} under the limits of {@code task}. The task deadline only
+     * covers waiting for capacity and for the first chunk, which {@code request} reports by running
+     * the callback it is handed; after that the stream may go on until {@code streamTimeout}, counted
+     * from when the call was requested, has passed. The permits are held until the stream ends.
+     *
+     * @throws LlmUnavailableException if the call is rejected or misses either deadline
+     */
+    public <T> T callStreaming(LlmTask task, Duration streamTimeout, Function<Runnable, T> request) {
+        return call(task, streamTimeout, request);
+    }
+
+    private <T> T call(LlmTask task, Duration streamTimeout, Function<Runnable, T> request) {
+        long started = System.nanoTime();
+        long deadline = started + properties.timeout(task).toNanos();
+        Semaphore taskPermit = taskPermits.get(task);
+        boolean holdsTaskPermit = false;
+        boolean holdsPermit = false;
+        try {
+            CircuitBreaker circuitBreaker = breaker(task);
+            if (circuitBreaker.isRejecting()) {
+                throw reject(task, "circuit breaker is open", started);
+            }
+            holdsTaskPermit = taskPermit.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            holdsPermit = holdsTaskPermit && permits.acquire(task.interactive(), deadline);
+            boolean hasToken = holdsPermit && (tokenBucket == null || tokenBucket.acquire(deadline));
+            queueWaitTimers.get(task).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            if (!hasToken) {
+                throw reject(task, "no capacity within " + properties.timeout(task).toMillis() + " ms", started);
+            }
+            if (!circuitBreaker.tryAcquire()) {
+                throw reject(task, "circuit breaker is open", started);
+            }
+            CountDownLatch firstChunk = new CountDownLatch(1);
+            Future<T> future = submit(() -> request.apply(firstChunk::countDown), firstChunk, taskPermit, circuitBreaker);
+            // From here on the permits are released when the request ends.
+            holdsTaskPermit = false;
+            holdsPermit = false;
+            return await(task, circuitBreaker, future, started, firstChunk, deadline, Math.max(deadline, started + streamTimeout.toNanos()));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new LlmUnavailableException("Interrupted while waiting for LLM task " + task.value(), ex);
+        } finally {
+            if (holdsPermit) {
+                permits.release();
+            }
+            if (holdsTaskPermit) {
+                taskPermit.release();
+            }
+        }
+    }
+
+    /**
+     * Like {@link #call(LlmTask, Supplier)}, but calls of the same task, model and prompt that
+     * arrive while one of them is in flight do not make a request of their own: they wait for the
+     * first one and get its result or exception. The result is handed to every caller, so it must
+     * not be mutable. {@code prompt} should hold everything the request sends that varies between
+     * calls; only its hash is kept.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T callShared(LlmTask task, String model, String prompt, Supplier<T> request) {
+        SharedCall key = new SharedCall(model, ContentHashes.sha256(prompt));
+        return (T) sharedCalls.get(task).execute(key, () -> call(task, request));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> Future<T> submit(Supplier<T> request, CountDownLatch firstChunk, Semaphore taskPermit,
+                                 CircuitBreaker circuitBreaker) {
+        try {
+            return executor.submit(() -> {
+                try {
+                    return request.get();
+                } finally {
+                    firstChunk.countDown();
+                    permits.release();
+                    taskPermit.release();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            permits.release();
+            taskPermit.release();
+            circuitBreaker.abandon();
+            throw new LlmUnavailableException("LLM gateway is shut down", ex);
+        }
+    }
+
+    /**
+     * Waits until {@code firstChunkDeadline} for the request to start answering, then until
+     * {@code deadline} for it to end. A request that is not streamed reports its first chunk only
+     * when it ends, so both deadlines are the same for it.
+     */
+    private <T> T await(LlmTask task, CircuitBreaker circuitBreaker, Future<T> future, long started, CountDownLatch firstChunk,
+                        long firstChunkDeadline, long deadline) throws InterruptedException {
+        try {
+            if (!firstChunk.await(Math.max(0, firstChunkDeadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                throw new TimeoutException();
+            }
+            T result = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            circuitBreaker.onSuccess();
+            recordCall(task, "success", started);
+            return result;
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            circuitBreaker.onFailure();
+            recordCall(task, "timeout", started);
+            throw new LlmUnavailableException("LLM task " + task.value() + " missed its deadline of "
+                    + TimeUnit.NANOSECONDS.toMillis((firstChunk.getCount() > 0 ? firstChunkDeadline : deadline) - started)
+                    + " ms", ex);
+        } catch (ExecutionException ex) {
+            circuitBreaker.onFailure();
+            recordCall(task, "failure", started);
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new LlmUnavailableException("LLM task " + task.value() + " failed", ex.getCause());
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            circuitBreaker.abandon();
+            throw ex;
+        }
+    }
+
+    /**
+     * Interactive and background tasks trip separate breakers, so a backlog of failing indexing
+     * calls cannot lock search and RAG out of a model server that still answers them.
+     */
+    private CircuitBreaker breaker(LlmTask task) {
+        return task.interactive() ? interactiveBreaker : backgroundBreaker;
+    }
+
+    private LlmUnavailableException reject(LlmTask task, String reason, long started) {
+        recordCall(task, "rejected", started);
+        log.debug("Rejected LLM task {}: {}", task.value(), reason);
+        return new LlmUnavailableException("LLM task " + task.value() + " rejected: " + reason);
+    }
+
+    private void recordCall(LlmTask task, String outcome, long started) {
+        Timer.builder("llm.gateway.call")
+                .description("LLM calls by task and outcome")
+                .tag("task", task.value())
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    private record SharedCall(String model, String promptHash) {
+    }
+
+    /**
+     * Refills {@code ratePerSecond} tokens per second up to {@code capacity}.
+     */
+    private static final class TokenBucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        private TokenBucket(double ratePerSecond, int capacity) {
+            this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.tokens = capacity;
+        }
+
+        private boolean acquire(long deadline) throws InterruptedException {
+            while (true) {
+                long waitNanos;
+                synchronized (this) {
+                    long now = System.nanoTime();
+                    tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+                    refilledAt = now;
+                    if (tokens >= 1) {
+                        tokens -= 1;
+                        return true;
+                    }
+                    waitNanos = (long) Math.ceil((1 - tokens) / tokensPerNano);
+                    if (now + waitNanos > deadline) {
+                        return false;
+                    }
+                }
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+    }
+
+    /**
+     * Opens after {@code failureThreshold} consecutive failures, rejects calls for
+     * {@code openDuration}, then lets a single trial call decide whether it closes again.
+     */
+    private static final class CircuitBreaker {
+        private final String priority;
+        private final int failureThreshold;
+        private final long openNanos;
+        private int consecutiveFailures;
+        private long openedAt;
+        private boolean open;
+        private boolean trialInFlight;
+
+        private CircuitBreaker(String priority, int failureThreshold, Duration openDuration) {
+            this.priority = priority;
+            this.failureThreshold = failureThreshold;
+            this.openNanos = openDuration.toNanos();
+        }
+
+        /**
+         * Cheap check before queueing: {@code true} while no call, not even a trial, would be let
+         * through.
+         */
+        private synchronized boolean isRejecting() {
+            return open && (trialInFlight || System.nanoTime() - openedAt < openNanos);
+        }
+
+        private synchronized boolean tryAcquire() {
+            if (!open) {
+                return true;
+            }
+            if (trialInFlight || System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            trialInFlight = true;
+            return true;
+        }
+
+        private synchronized void onSuccess() {
+            if (open) {
+                log.info("LLM circuit breaker for {} tasks closed after a successful trial call", priority);
+            }
+            open = false;
+            trialInFlight = false;
+            consecutiveFailures = 0;
+        }
+
+        private synchronized void onFailure() {
+            consecutiveFailures++;
+            if (trialInFlight || (!open && consecutiveFailures >= failureThreshold)) {
+                if (!open) {
+                    log.warn("LLM circuit breaker for {} tasks opened after {} consecutive failures", priority, consecutiveFailures);
+                }
+                open = true;
+                openedAt = System.nanoTime();
+                trialInFlight = false;
+            }
+        }
+
+        /**
+         * The call ended without telling anything about the model server.
+         */
+        private synchronized void abandon() {
+            trialInFlight = false;
+        }
+
+        private synchronized boolean isOpen() {
+            return open;
+        }
+    }
+}
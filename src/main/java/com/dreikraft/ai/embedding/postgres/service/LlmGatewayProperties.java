@@ -0,0 +1,63 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Limits applied by the {@link LlmGateway} to every chat-model call.
+ *
+ * @param maxConcurrency       calls in flight against the model server across all tasks
+ * @param interactiveReserved  permits of {@code maxConcurrency} that background tasks may never take
+ * @param interactiveTimeoutMs deadline (queueing included) for interactive tasks without an own timeout
+ * @param backgroundTimeoutMs  deadline (queueing included) for background tasks without an own timeout
+ * @param tasks                per-task overrides, keyed by task ({@code summarize}, {@code query-rewrite}, ...)
+ */
+@ConfigurationProperties(prefix = "app.llm")
+public record LlmGatewayProperties(
+        @DefaultValue("8") int maxConcurrency,
+        @DefaultValue("2") int interactiveReserved,
+        @DefaultValue("15000") long interactiveTimeoutMs,
+        @DefaultValue("120000") long backgroundTimeoutMs,
+        @DefaultValue RateLimit rateLimit,
+        @DefaultValue Breaker breaker,
+        Map<LlmTask, TaskLimits> tasks) {
+
+    public LlmGatewayProperties {
+        tasks = tasks == null ? Map.of() : Map.copyOf(tasks);
+    }
+
+    /**
+     * @param requestsPerSecond token refill rate; {@code 0} disables rate limiting
+     * @param burst             tokens that may be spent at once after an idle period
+     */
+    public record RateLimit(@DefaultValue("0") double requestsPerSecond, @DefaultValue("4") int burst) {
+    }
+
+    /**
+     * Applies to the interactive and the background breaker separately.
+     *
+     * @param failureThreshold consecutive failed or timed-out calls that open the breaker
+     * @param openMs           how long the breaker rejects calls before letting a trial call through
+     */
+    public record Breaker(@DefaultValue("5") int failureThreshold, @DefaultValue("30000") long openMs) {
+    }
+
+    public record TaskLimits(Integer concurrency, Long timeoutMs) {
+    }
+
+    int concurrency(LlmTask task) {
+        TaskLimits limits = tasks.get(task);
+        return limits == null || limits.concurrency() == null ? maxConcurrency : limits.concurrency();
+    }
+
+    Duration timeout(LlmTask task) {
+        TaskLimits limits = tasks.get(task);
+        if (limits != null && limits.timeoutMs() != null) {
+            return Duration.ofMillis(limits.timeoutMs());
+        }
+        return Duration.ofMillis(task.interactive() ? interactiveTimeoutMs : backgroundTimeoutMs);
+    }
+}
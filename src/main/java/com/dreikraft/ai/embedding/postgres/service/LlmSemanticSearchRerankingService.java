@@ -6,6 +6,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
@@ -17,15 +18,23 @@ import java.util.stream.Collectors;
 
 @Service
 @ConditionalOnProperty(name = "app.semantic-search.rerank.enabled", havingValue = "true")
+@ConditionalOnProperty(name = "app.semantic-search.rerank.mode", havingValue = "llm", matchIfMissing = true)
 public class LlmSemanticSearchRerankingService implements SemanticSearchRerankingService {
     private static final Logger log = LoggerFactory.getLogger(LlmSemanticSearchRerankingService.class);
 
     private final ChatClient chatClient;
+    private final LlmGateway llmGateway;
     private final ObjectMapper objectMapper;
+    private final String chatModel;
 
-    public LlmSemanticSearchRerankingService(ChatClient.Builder chatClientBuilder, ObjectMapper objectMapper) {
+    public LlmSemanticSearchRerankingService(ChatClient.Builder chatClientBuilder,
+                                             ObjectMapper objectMapper,
+                                             LlmGateway llmGateway,
+                                             @Value("${spring.ai.openai.chat.options.model:unknown}") String chatModel) {
         this.chatClient = chatClientBuilder.build();
+        this.llmGateway = llmGateway;
         this.objectMapper = objectMapper;
+        this.chatModel = chatModel;
     }
 
     @Override
@@ -55,7 +64,8 @@ public class LlmSemanticSearchRerankingService implements SemanticSearchRerankin
 
         try {
             String candidatesJson = objectMapper.writeValueAsString(compactCandidates);
-            String response = chatClient.prompt()
+            // Identical concurrent searches (same query and candidates) share one rerank call.
+            String response = llmGateway.callShared(LlmTask.RERANK, chatModel, query + "\u0000" + candidatesJson, () -> chatClient.prompt()
                     .system("""
                             You are a search reranking model.
                             Re-rank candidates by relevance to the user query.
@@ -73,7 +83,7 @@ public class LlmSemanticSearchRerankingService implements SemanticSearchRerankin
                             .param("query", safe(query))
                             .param("candidates", candidatesJson))
                     .call()
-                    .content();
+                    .content());
 
             List<Long> llmOrder = objectMapper.readValue(cleanJson(response), new TypeReference<>() {});
             LinkedHashSet<Long> merged = new LinkedHashSet<>();
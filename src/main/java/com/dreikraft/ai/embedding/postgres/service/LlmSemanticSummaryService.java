@@ -3,22 +3,51 @@ package com.dreikraft.ai.embedding.postgres.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.Optional;
+
 @Service
 public class LlmSemanticSummaryService implements SemanticSummaryService {
     private static final Logger log = LoggerFactory.getLogger(LlmSemanticSummaryService.class);
+    /**
+     * Part of the summary cache key; bump it whenever the document summary prompt changes.
+     */
+    static final String DOCUMENT_SUMMARY_PROMPT_VERSION = "1";
+    /**
+     * Part of the query rewrite cache key; bump it whenever the query rewrite prompt changes.
+     */
+    static final String QUERY_REWRITE_PROMPT_VERSION = "1";
 
     private final ChatClient chatClient;
+    private final LlmGateway llmGateway;
+    private final SummaryCache summaryCache;
+    private final QueryRewriteCache queryRewriteCache;
+    private final String chatModel;
 
-    public LlmSemanticSummaryService(ChatClient.Builder chatClientBuilder) {
+    public LlmSemanticSummaryService(
+            ChatClient.Builder chatClientBuilder,
+            SummaryCache summaryCache,
+            QueryRewriteCache queryRewriteCache,
+            @Value("${spring.ai.openai.chat.options.model:unknown}") String chatModel,
+            LlmGateway llmGateway) {
         this.chatClient = chatClientBuilder.build();
+        this.llmGateway = llmGateway;
+        this.summaryCache = summaryCache;
+        this.queryRewriteCache = queryRewriteCache;
+        this.chatModel = chatModel;
     }
 
     @Override
-    public String summarizeDocumentForEmbedding(String title, String content) {
+    public DocumentSummary summarizeDocumentForEmbedding(String title, String content) {
+        String sourceHash = ContentHashes.summarySource(title, content);
+        Optional<String> cached = summaryCache.get(sourceHash, chatModel, DOCUMENT_SUMMARY_PROMPT_VERSION);
+        if (cached.isPresent()) {
+            return new DocumentSummary(cached.get());
+        }
         try {
-            String response = chatClient.prompt()
+            String response = llmGateway.call(LlmTask.SUMMARIZE, () -> chatClient.prompt()
                     .system("""
                             Create a short semantic-search summary in clean, plain language.
                             Keep key entities and intent.
@@ -35,18 +64,31 @@ public class LlmSemanticSummaryService implements SemanticSummaryService {
                             .param("title", safeValue(title))
                             .param("content", safeValue(content)))
                     .call()
-                    .content();
-            return normalizeOrFallback(response, content);
+                    .content());
+            if (response == null || response.isBlank()) {
+                return new DocumentSummary(content, true);
+            }
+            String summary = response.trim();
+            summaryCache.put(sourceHash, chatModel, DOCUMENT_SUMMARY_PROMPT_VERSION, summary);
+            return new DocumentSummary(summary);
+        } catch (LlmUnavailableException ex) {
+            // Rejected by the gateway: fail the job so it is retried instead of embedding the unsummarized content.
+            throw ex;
         } catch (Exception ex) {
             log.warn("Failed to summarize article for embedding. Falling back to original content.", ex);
-            return content;
+            return new DocumentSummary(content, true);
         }
     }
 
     @Override
     public String summarizeQueryForSemanticSearch(String query) {
+        String rewrite = queryRewriteCache.rewrite(query, chatModel, QUERY_REWRITE_PROMPT_VERSION, () -> rewriteQuery(query));
+        return rewrite == null ? query : rewrite;
+    }
+
+    private String rewriteQuery(String query) {
         try {
-            String response = chatClient.prompt()
+            String response = llmGateway.call(LlmTask.QUERY_REWRITE, () -> chatClient.prompt()
                     .system("""
                             Rewrite this search query into a short, clean, plain-language semantic-search query.
                             Preserve user intent and important terms.
@@ -58,19 +100,12 @@ public class LlmSemanticSummaryService implements SemanticSummaryService {
                             """)
                             .param("query", safeValue(query)))
                     .call()
-                    .content();
-            return normalizeOrFallback(response, query);
+                    .content());
+            return response == null || response.isBlank() ? null : response.trim();
         } catch (Exception ex) {
             log.warn("Failed to summarize semantic query. Falling back to original query.", ex);
-            return query;
-        }
-    }
-
-    private String normalizeOrFallback(String value, String fallback) {
-        if (value == null || value.isBlank()) {
-            return fallback;
+            return null;
         }
-        return value.trim();
     }
 
     private String safeValue(String value) {
@@ -0,0 +1,30 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import java.util.Locale;
+
+/**
+ * The kinds of chat-model calls the application makes. Interactive tasks serve a waiting user and
+ * take precedence over background indexing work in the {@link LlmGateway}.
+ */
+public enum LlmTask {
+    SUMMARIZE(false),
+    TRANSFORM(false),
+    CLASSIFY(false),
+    QUERY_REWRITE(true),
+    RERANK(true),
+    RAG_ANSWER(true);
+
+    private final boolean interactive;
+
+    LlmTask(boolean interactive) {
+        this.interactive = interactive;
+    }
+
+    public boolean interactive() {
+        return interactive;
+    }
+
+    public String value() {
+        return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+}
@@ -0,0 +1,15 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+/**
+ * Thrown by the {@link LlmGateway} when a call is not made (open circuit, no capacity before the
+ * deadline) or does not finish before its deadline.
+ */
+public class LlmUnavailableException extends RuntimeException {
+    public LlmUnavailableException(String message) {
+        super(message);
+    }
+
+    public LlmUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
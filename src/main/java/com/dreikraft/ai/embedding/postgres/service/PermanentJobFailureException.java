@@ -0,0 +1,10 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+/**
+ * Signals an indexing job failure that retrying cannot fix; the job is dead-lettered right away.
+ */
+class PermanentJobFailureException extends RuntimeException {
+    PermanentJobFailureException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,77 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A counting semaphore with two priorities. Background callers only get a permit while no
+ * interactive caller is waiting, and never take the last {@code reservedForInteractive} permits.
+ */
+final class PriorityPermits {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final int reservedForInteractive;
+    private int available;
+    private int interactiveWaiting;
+
+    PriorityPermits(int permits, int reservedForInteractive) {
+        this.available = Math.max(1, permits);
+        this.reservedForInteractive = Math.clamp(reservedForInteractive, 0, this.available - 1);
+    }
+
+    /**
+     * @return {@code false} if no permit became available before {@code deadlineNanos}
+     * ({@link System#nanoTime()} based)
+     */
+    boolean acquire(boolean interactive, long deadlineNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            if (interactive) {
+                interactiveWaiting++;
+            }
+            try {
+                while (!canAcquire(interactive)) {
+                    long remaining = deadlineNanos - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    released.awaitNanos(remaining);
+                }
+                available--;
+                return true;
+            } finally {
+                if (interactive && --interactiveWaiting == 0) {
+                    released.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release() {
+        lock.lock();
+        try {
+            available++;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int available() {
+        lock.lock();
+        try {
+            return available;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean canAcquire(boolean interactive) {
+        if (interactive) {
+            return available > 0;
+        }
+        return interactiveWaiting == 0 && available > reservedForInteractive;
+    }
+}
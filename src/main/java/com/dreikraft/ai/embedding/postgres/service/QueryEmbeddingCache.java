@@ -0,0 +1,87 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded LRU of search query embeddings keyed by the whitespace-normalized query text, so repeated
+ * and popular queries (and the two legs of a dual-query search) skip the embedding round trip.
+ * Vectors are kept as plain {@code float[]}; callers must not modify the returned array.
+ */
+@Service
+public class QueryEmbeddingCache {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final EmbeddingModel embeddingModel;
+    private final Map<String, float[]> embeddings;
+    private final SingleFlight<String, float[]> singleFlight;
+    private final Counter hits;
+    private final Counter misses;
+
+    public QueryEmbeddingCache(
+            EmbeddingModel embeddingModel,
+            MeterRegistry meterRegistry,
+            @Value("${app.query-embedding-cache.max-entries:2000}") int maxEntries) {
+        this.embeddingModel = embeddingModel;
+        this.embeddings = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        Counter shared = Counter.builder("query.embedding.cache.shared")
+                .description("Query embeddings that waited for an identical in-flight embedding call")
+                .register(meterRegistry);
+        this.singleFlight = new SingleFlight<>(shared::increment);
+        this.hits = Counter.builder("query.embedding.cache.hits")
+                .description("Query embeddings served from the cache")
+                .register(meterRegistry);
+        this.misses = Counter.builder("query.embedding.cache.misses")
+                .description("Query embeddings that had to call the embedding model")
+                .register(meterRegistry);
+        Gauge.builder("query.embedding.cache.size", this, QueryEmbeddingCache::size)
+                .register(meterRegistry);
+    }
+
+    public float[] embed(String query) {
+        String text = normalize(query);
+        float[] cached;
+        synchronized (embeddings) {
+            cached = embeddings.get(text);
+        }
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        misses.increment();
+        return singleFlight.execute(text, () -> {
+            float[] embedding = embeddingModel.embed(text);
+            synchronized (embeddings) {
+                embeddings.put(text, embedding);
+            }
+            return embedding;
+        });
+    }
+
+    /**
+     * Only collapses whitespace; case is kept because it carries meaning for the embedding model.
+     */
+    static String normalize(String query) {
+        return query == null ? "" : WHITESPACE.matcher(query.strip()).replaceAll(" ");
+    }
+
+    private int size() {
+        synchronized (embeddings) {
+            return embeddings.size();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded in-memory cache of search query rewrites keyed by the normalized query, chat model and
+ * prompt version. Entries expire {@code ttl} after they were written and the least recently used
+ * entry is evicted once {@code maxEntries} is exceeded. Concurrent misses for the same key share a
+ * single rewrite call.
+ */
+@Service
+public class QueryRewriteCache {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final long ttlNanos;
+    private final Map<Key, Entry> entries;
+    private final SingleFlight<Key, Entry> singleFlight;
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer savedLatency;
+
+    public QueryRewriteCache(
+            MeterRegistry meterRegistry,
+            @Value("${app.query-rewrite-cache.max-entries:1000}") int maxEntries,
+            @Value("${app.query-rewrite-cache.ttl-ms:1800000}") long ttlMillis) {
+        this.ttlNanos = Duration.ofMillis(ttlMillis).toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        Counter shared = Counter.builder("query.rewrite.cache.shared")
+                .description("Query rewrites that waited for an identical in-flight rewrite instead of calling the model")
+                .register(meterRegistry);
+        this.singleFlight = new SingleFlight<>(shared::increment);
+        this.hits = Counter.builder("query.rewrite.cache.hits")
+                .description("Query rewrites served from the cache")
+                .register(meterRegistry);
+        this.misses = Counter.builder("query.rewrite.cache.misses")
+                .description("Query rewrites that had to call the chat model")
+                .register(meterRegistry);
+        this.savedLatency = Timer.builder("query.rewrite.cache.saved")
+                .description("Model latency of the cached rewrite, recorded on every hit")
+                .register(meterRegistry);
+        Gauge.builder("query.rewrite.cache.size", this, QueryRewriteCache::size)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached rewrite of {@code query}, or calls {@code rewriter} and caches its result.
+     * A {@code null} result means the rewrite failed; it is returned as is and not cached.
+     */
+    public String rewrite(String query, String chatModel, String promptVersion, Supplier<String> rewriter) {
+        Key key = new Key(normalize(query), chatModel, promptVersion);
+        long now = System.nanoTime();
+        Entry cached = lookup(key, now);
+        if (cached != null) {
+            hits.increment();
+            savedLatency.record(cached.loadNanos(), TimeUnit.NANOSECONDS);
+            return cached.rewrite();
+        }
+
+        misses.increment();
+        Entry loaded = singleFlight.execute(key, () -> {
+            long started = System.nanoTime();
+            String rewrite = rewriter.get();
+            long finished = System.nanoTime();
+            Entry entry = new Entry(rewrite, finished - started, finished + ttlNanos);
+            if (rewrite != null) {
+                synchronized (entries) {
+                    entries.put(key, entry);
+                }
+            }
+            return entry;
+        });
+        return loaded.rewrite();
+    }
+
+    static String normalize(String query) {
+        return query == null ? "" : WHITESPACE.matcher(query.strip()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    private Entry lookup(Key key, long now) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAtNanos() - now <= 0) {
+                entries.remove(key);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    private int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private record Key(String normalizedQuery, String chatModel, String promptVersion) {
+    }
+
+    private record Entry(String rewrite, long loadNanos, long expiresAtNanos) {
+    }
+}
@@ -0,0 +1,165 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import com.dreikraft.ai.embedding.postgres.model.ArticleDocument;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Assembles the RAG prompt context within a token budget. References are taken in ranked order and
+ * each gets an equal share of what is left of the budget, so space a short article does not use
+ * goes to the ones after it. An article that does not fit its share is cut down to its lead sentence
+ * and the sentences that mention the most query terms, kept in their original order; sentences that
+ * mention none are dropped. Sentences already in the context (and articles with identical content)
+ * are skipped.
+ */
+@Component
+public class RagContextBuilder {
+    private static final Pattern SENTENCE_BOUNDARY = Pattern.compile("(?<=[.!?])\\s+|\\n+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final int MIN_QUERY_TERM_LENGTH = 3;
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private final int maxTokens;
+
+    public RagContextBuilder(@Value("${app.rag.context.max-tokens:3000}") int maxTokens) {
+        this.maxTokens = maxTokens;
+    }
+
+    public String build(String question, List<ArticleDocument> references) {
+        Set<String> queryTerms = queryTerms(question);
+        Set<String> seenSentences = new HashSet<>();
+        Set<String> seenContents = new HashSet<>();
+        StringBuilder context = new StringBuilder();
+        int remainingTokens = maxTokens;
+
+        for (int i = 0; i < references.size() && remainingTokens > 0; i++) {
+            ArticleDocument reference = references.get(i);
+            String content = reference.content() == null ? "" : reference.content();
+            if (!seenContents.add(normalize(content))) {
+                continue;
+            }
+            String header = "Title: " + reference.title() + "\nContent: ";
+            int share = remainingTokens / (references.size() - i) - estimateTokens(header);
+            if (share <= 0) {
+                continue;
+            }
+            String passage = selectSentences(content, queryTerms, share, seenSentences);
+            if (passage.isEmpty()) {
+                continue;
+            }
+            String entry = header + passage + "\n\n";
+            context.append(entry);
+            remainingTokens -= estimateTokens(entry);
+        }
+        return context.toString();
+    }
+
+    /**
+     * Local estimate of the tokens a text costs the model: about four characters per token, which
+     * is close enough to budget prompts without calling a tokenizer.
+     */
+    public static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    private String selectSentences(String content, Set<String> queryTerms, int budgetTokens, Set<String> seenSentences) {
+        List<String> sentences = new ArrayList<>();
+        for (String sentence : SENTENCE_BOUNDARY.split(content.strip())) {
+            String trimmed = sentence.strip();
+            if (!trimmed.isEmpty() && !seenSentences.contains(normalize(trimmed))) {
+                sentences.add(trimmed);
+            }
+        }
+
+        double[] relevance = new double[sentences.size()];
+        List<Integer> byRelevance = new ArrayList<>();
+        for (int i = 0; i < sentences.size(); i++) {
+            relevance[i] = relevance(sentences.get(i), queryTerms, i);
+            byRelevance.add(i);
+        }
+        // Stable sort: equally relevant sentences keep their order.
+        byRelevance.sort(Comparator.comparingDouble((Integer i) -> relevance[i]).reversed());
+
+        int totalTokens = sentences.stream().mapToInt(sentence -> estimateTokens(sentence) + 1).sum();
+        Set<Integer> selected = new LinkedHashSet<>();
+        int usedTokens = 0;
+        for (int index : byRelevance) {
+            String sentence = sentences.get(index);
+            if (totalTokens > budgetTokens && relevance[index] == 0) {
+                // Trimming: only the lead and sentences that mention the query are worth their tokens.
+                break;
+            }
+            int tokens = estimateTokens(sentence) + 1;
+            if (usedTokens + tokens > budgetTokens) {
+                if (selected.isEmpty()) {
+                    // Not even the best sentence fits: keep as much of it as the budget allows.
+                    seenSentences.add(normalize(sentence));
+                    return truncate(sentence, budgetTokens * CHARS_PER_TOKEN);
+                }
+                continue;
+            }
+            selected.add(index);
+            usedTokens += tokens;
+        }
+
+        StringBuilder passage = new StringBuilder();
+        for (int i = 0; i < sentences.size(); i++) {
+            if (selected.contains(i)) {
+                if (!passage.isEmpty()) {
+                    passage.append(' ');
+                }
+                passage.append(sentences.get(i));
+                seenSentences.add(normalize(sentences.get(i)));
+            }
+        }
+        return passage.toString();
+    }
+
+    /**
+     * Number of query terms the sentence mentions; the lead sentence gets a half point on top, so it
+     * is kept when nothing mentions the query and loses to any sentence that does.
+     */
+    private static double relevance(String sentence, Set<String> queryTerms, int position) {
+        String lower = sentence.toLowerCase(Locale.ROOT);
+        double score = 0;
+        for (String term : queryTerms) {
+            // Substring match so German compounds containing the term count as well.
+            if (lower.contains(term)) {
+                score++;
+            }
+        }
+        return position == 0 ? score + 0.5d : score;
+    }
+
+    private static Set<String> queryTerms(String question) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String word : NON_WORD.split(question == null ? "" : question.toLowerCase(Locale.ROOT))) {
+            if (word.length() >= MIN_QUERY_TERM_LENGTH) {
+                terms.add(word);
+            }
+        }
+        return terms;
+    }
+
+    private static String normalize(String text) {
+        return WHITESPACE.matcher(text.strip().toLowerCase(Locale.ROOT)).replaceAll(" ");
+    }
+
+    private static String truncate(String text, int maxChars) {
+        if (text.length() <= maxChars) {
+            return text;
+        }
+        int end = text.lastIndexOf(' ', maxChars);
+        return text.substring(0, end > 0 ? end : maxChars);
+    }
+}
@@ -1,41 +1,126 @@
 package com.dreikraft.ai.embedding.postgres.service;
 
 import com.dreikraft.ai.embedding.postgres.model.ArticleDocument;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
+/**
+ * Publishes {@code rag.prompt.tokens} (estimated prompt size) and {@code rag.answer.prefill} (time
+ * from sending a streamed prompt to its first answer chunk, which is dominated by prompt processing
+ * on the model server).
+ */
 @Service
 public class RagService {
+    private static final String SYSTEM_PROMPT = "You are a RAG assistant. Answer only with information grounded in the provided context. If not enough context exists, say so clearly.";
+    private static final String USER_PROMPT = """
+            Question:
+            {question}
+
+            Context:
+            {context}
+            """;
+
     private final ArticleService articleService;
     private final ChatClient chatClient;
+    private final LlmGateway llmGateway;
+    private final RagContextBuilder contextBuilder;
+    private final String chatModel;
+    private final Duration streamTimeout;
+    private final DistributionSummary promptTokens;
+    private final Timer prefillTimer;
 
-    public RagService(ArticleService articleService, ChatClient.Builder chatClientBuilder) {
+    public RagService(ArticleService articleService,
+                      ChatClient.Builder chatClientBuilder,
+                      LlmGateway llmGateway,
+                      RagContextBuilder contextBuilder,
+                      MeterRegistry meterRegistry,
+                      @Value("${spring.ai.openai.chat.options.model:unknown}") String chatModel,
+                      @Value("${app.rag.stream-timeout-ms:60000}") long streamTimeoutMillis) {
         this.articleService = articleService;
         this.chatClient = chatClientBuilder.build();
+        this.llmGateway = llmGateway;
+        this.contextBuilder = contextBuilder;
+        this.chatModel = chatModel;
+        this.streamTimeout = Duration.ofMillis(streamTimeoutMillis);
+        this.promptTokens = DistributionSummary.builder("rag.prompt.tokens")
+                .description("Estimated tokens of RAG answer prompts")
+                .baseUnit("tokens")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.prefillTimer = Timer.builder("rag.answer.prefill")
+                .description("Time from sending a streamed RAG prompt to its first answer chunk")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
     }
 
     public String answer(String question) {
-        List<ArticleDocument> references = articleService.semanticSearch(question, ArticleService.ARTICLE_FILTER_EXPRESSION);
-        StringBuilder context = new StringBuilder();
-        for (ArticleDocument reference : references) {
-            context.append("Title: ").append(reference.title()).append('\n')
-                    .append("Content: ").append(reference.content()).append("\n\n");
-        }
+        return answer(question, retrieve(question));
+    }
+
+    /**
+     * Answers from references the caller already retrieved, e.g. to render them as results too,
+     * so the retrieval does not run a second time. The same question asked concurrently over the
+     * same context shares one model call.
+     */
+    public String answer(String question, List<ArticleDocument> references) {
+        String context = contextBuilder.build(question, references);
+        ChatClient.ChatClientRequestSpec prompt = prompt(question, context);
+        return llmGateway.callShared(LlmTask.RAG_ANSWER, chatModel, question + "\u0000" + context, () -> prompt.call().content());
+    }
+
+    public List<ArticleDocument> retrieve(String question) {
+        return articleService.semanticSearch(question, ArticleService.ARTICLE_FILTER_EXPRESSION);
+    }
+
+    /**
+     * Streams the answer for already retrieved references, handing each chunk to {@code onToken} as
+     * the model produces it. The call holds its gateway permit until the stream ends, so streaming
+     * answers count against the same limits as blocking ones; the gateway deadline only applies
+     * until the first chunk, and the stream as a whole is bounded by {@code app.rag.stream-timeout-ms}
+     * like the SSE response it feeds. Generation stops early once {@code onToken} returns
+     * {@code false}, e.g. because the client went away.
+     *
+     * @return the full answer as far as it was streamed
+     */
+    public String streamAnswer(String question, List<ArticleDocument> references, Predicate<String> onToken) {
+        StringBuilder answer = new StringBuilder();
+        ChatClient.ChatClientRequestSpec prompt = prompt(question, contextBuilder.build(question, references));
+        llmGateway.callStreaming(LlmTask.RAG_ANSWER, streamTimeout, firstChunk -> {
+            long started = System.nanoTime();
+            return prompt.stream()
+                    .content()
+                    .takeWhile(token -> {
+                        if (answer.isEmpty()) {
+                            prefillTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                            firstChunk.run();
+                        }
+                        answer.append(token);
+                        return onToken.test(token);
+                    })
+                    .blockLast();
+        });
+        return answer.toString();
+    }
+
+    private ChatClient.ChatClientRequestSpec prompt(String question, String context) {
+        promptTokens.record(RagContextBuilder.estimateTokens(SYSTEM_PROMPT)
+                + RagContextBuilder.estimateTokens(USER_PROMPT)
+                + RagContextBuilder.estimateTokens(question)
+                + RagContextBuilder.estimateTokens(context));
 
         return chatClient.prompt()
-                .system("You are a RAG assistant. Answer only with information grounded in the provided context. If not enough context exists, say so clearly.")
-                .user(user -> user.text("""
-                        Question:
-                        {question}
-
-                        Context:
-                        {context}
-                        """)
+                .system(SYSTEM_PROMPT)
+                .user(user -> user.text(USER_PROMPT)
                         .param("question", question)
-                        .param("context", context.toString()))
-                .call()
-                .content();
+                        .param("context", context));
     }
 }
@@ -0,0 +1,133 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides per query whether the configured reranker runs. Reranking is skipped when there are too
+ * few candidates to reorder, when the best vector hit already leads the runner-up by a clear score
+ * gap, or when the expected rerank latency would push the search past its latency budget.
+ * Every decision is counted in {@code semantic.search.rerank.decisions}.
+ */
+@Service
+public class SemanticSearchRerankGate {
+    /**
+     * Weight of the newest observation in the moving average of rerank latency.
+     */
+    private static final double LATENCY_SMOOTHING = 0.2d;
+
+    public enum Decision {
+        GATE_DISABLED(true),
+        TOO_FEW_CANDIDATES(false),
+        CLEAR_WINNER(false),
+        OVER_BUDGET(false),
+        AMBIGUOUS(true);
+
+        private final boolean rerank;
+
+        Decision(boolean rerank) {
+            this.rerank = rerank;
+        }
+
+        public boolean rerank() {
+            return rerank;
+        }
+    }
+
+    private final boolean enabled;
+    private final int minCandidates;
+    private final double minScoreGap;
+    private final long latencyBudgetNanos;
+    private final Map<Decision, Counter> decisions = new EnumMap<>(Decision.class);
+    private final Timer rerankTimer;
+    private double expectedRerankNanos;
+
+    public SemanticSearchRerankGate(
+            MeterRegistry meterRegistry,
+            @Value("${app.semantic-search.rerank.gate.enabled:true}") boolean enabled,
+            @Value("${app.semantic-search.rerank.gate.min-candidates:3}") int minCandidates,
+            @Value("${app.semantic-search.rerank.gate.min-score-gap:0.04}") double minScoreGap,
+            @Value("${app.semantic-search.rerank.gate.latency-budget-ms:2500}") long latencyBudgetMs) {
+        this.enabled = enabled;
+        this.minCandidates = minCandidates;
+        this.minScoreGap = minScoreGap;
+        this.latencyBudgetNanos = Duration.ofMillis(latencyBudgetMs).toNanos();
+        for (Decision decision : Decision.values()) {
+            decisions.put(decision, Counter.builder("semantic.search.rerank.decisions")
+                    .description("Per-query decisions whether semantic-search results are reranked")
+                    .tag("decision", decision.rerank() ? "rerank" : "skip")
+                    .tag("reason", decision.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        this.rerankTimer = Timer.builder("semantic.search.rerank")
+                .description("Latency of semantic-search reranking when the gate lets it run")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param hits         retrieval hits in ranking order
+     * @param elapsedNanos time the search has already spent before reranking
+     */
+    public Decision decide(List<DocumentVectorStoreService.ScoredId> hits, long elapsedNanos) {
+        Decision decision = evaluate(hits, elapsedNanos);
+        decisions.get(decision).increment();
+        return decision;
+    }
+
+    /**
+     * Feeds the duration of a rerank the gate let through into the latency estimate.
+     */
+    public void recordRerankLatency(long nanos) {
+        rerankTimer.record(nanos, TimeUnit.NANOSECONDS);
+        synchronized (this) {
+            expectedRerankNanos = expectedRerankNanos == 0
+                    ? nanos
+                    : LATENCY_SMOOTHING * nanos + (1 - LATENCY_SMOOTHING) * expectedRerankNanos;
+        }
+    }
+
+    private Decision evaluate(List<DocumentVectorStoreService.ScoredId> hits, long elapsedNanos) {
+        if (!enabled) {
+            return Decision.GATE_DISABLED;
+        }
+        if (hits.size() < minCandidates) {
+            return Decision.TOO_FEW_CANDIDATES;
+        }
+        if (scoreGap(hits) >= minScoreGap) {
+            return Decision.CLEAR_WINNER;
+        }
+        synchronized (this) {
+            if (elapsedNanos + expectedRerankNanos > latencyBudgetNanos) {
+                return Decision.OVER_BUDGET;
+            }
+        }
+        return Decision.AMBIGUOUS;
+    }
+
+    /**
+     * Lead of the best-scoring hit over the second best, independent of the ranking order (which
+     * may come from rank fusion rather than raw similarity).
+     */
+    private static double scoreGap(List<DocumentVectorStoreService.ScoredId> hits) {
+        double best = Double.NEGATIVE_INFINITY;
+        double second = Double.NEGATIVE_INFINITY;
+        for (DocumentVectorStoreService.ScoredId hit : hits) {
+            if (hit.score() > best) {
+                second = best;
+                best = hit.score();
+            } else if (hit.score() > second) {
+                second = hit.score();
+            }
+        }
+        return best - second;
+    }
+}
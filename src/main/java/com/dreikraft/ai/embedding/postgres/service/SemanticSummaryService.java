@@ -1,7 +1,18 @@
 package com.dreikraft.ai.embedding.postgres.service;
 
 public interface SemanticSummaryService {
-    String summarizeDocumentForEmbedding(String title, String content);
+    DocumentSummary summarizeDocumentForEmbedding(String title, String content);
 
     String summarizeQueryForSemanticSearch(String query);
+
+    /**
+     * @param fallback {@code true} if the model produced no summary and {@code content} is the
+     *                 document content itself
+     */
+    record DocumentSummary(String content, boolean fallback) {
+
+        DocumentSummary(String content) {
+            this(content, false);
+        }
+    }
 }
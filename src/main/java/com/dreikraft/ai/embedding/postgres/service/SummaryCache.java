@@ -0,0 +1,97 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import com.dreikraft.ai.embedding.postgres.repository.SummaryCacheRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Document summaries keyed by source hash, chat model and prompt version. Lookups go to a bounded
+ * in-memory LRU first and to the {@code summary_cache} table second, so identical content is only
+ * summarized once across re-indexing, backfills, retries and restarts.
+ */
+@Service
+@Slf4j
+public class SummaryCache {
+    private final SummaryCacheRepository repository;
+    private final Map<Key, String> recent;
+    private final Counter memoryHits;
+    private final Counter databaseHits;
+    private final Counter misses;
+
+    public SummaryCache(
+            SummaryCacheRepository repository,
+            MeterRegistry meterRegistry,
+            @Value("${app.summary-cache.max-entries:1000}") int maxEntries) {
+        this.repository = repository;
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.memoryHits = Counter.builder("summary.cache.hits")
+                .description("Summaries served from the cache instead of the chat model")
+                .tag("tier", "memory")
+                .register(meterRegistry);
+        this.databaseHits = Counter.builder("summary.cache.hits")
+                .description("Summaries served from the cache instead of the chat model")
+                .tag("tier", "database")
+                .register(meterRegistry);
+        this.misses = Counter.builder("summary.cache.misses")
+                .description("Summaries that had to be generated by the chat model")
+                .register(meterRegistry);
+    }
+
+    public Optional<String> get(String sourceHash, String chatModel, String promptVersion) {
+        Key key = new Key(sourceHash, chatModel, promptVersion);
+        String summary;
+        synchronized (recent) {
+            summary = recent.get(key);
+        }
+        if (summary != null) {
+            memoryHits.increment();
+            return Optional.of(summary);
+        }
+
+        Optional<String> stored;
+        try {
+            stored = repository.find(sourceHash, chatModel, promptVersion);
+        } catch (DataAccessException ex) {
+            log.warn("Failed to read summary cache; summarizing without it", ex);
+            stored = Optional.empty();
+        }
+        if (stored.isEmpty()) {
+            misses.increment();
+            return stored;
+        }
+        databaseHits.increment();
+        remember(key, stored.get());
+        return stored;
+    }
+
+    public void put(String sourceHash, String chatModel, String promptVersion, String summary) {
+        remember(new Key(sourceHash, chatModel, promptVersion), summary);
+        try {
+            repository.save(sourceHash, chatModel, promptVersion, summary);
+        } catch (DataAccessException ex) {
+            log.warn("Failed to store summary in cache", ex);
+        }
+    }
+
+    private void remember(Key key, String summary) {
+        synchronized (recent) {
+            recent.put(key, summary);
+        }
+    }
+
+    private record Key(String sourceHash, String chatModel, String promptVersion) {
+    }
+}
@@ -0,0 +1,157 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Accumulates vector documents from concurrently processed indexing jobs and upserts them in
+ * batches, so the embedding model sees a few large requests instead of one small request per job.
+ * A batch is flushed once it holds {@code batch-size} documents or the oldest submission has
+ * waited {@code linger-ms}. Submissions that arrive during a flush simply join the next batch.
+ * If a batch fails because a document was rejected, its submissions are retried one by one so
+ * only the job with the bad document fails; if the embedding server or the database failed, the
+ * whole batch fails at once and the jobs back off.
+ */
+@Service
+@Slf4j
+public class VectorUpsertBatcher {
+
+    private final DocumentVectorStoreService vectorStoreService;
+    private final int batchSize;
+    private final Duration linger;
+    private final BlockingQueue<PendingUpsert> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+
+    public VectorUpsertBatcher(
+            DocumentVectorStoreService vectorStoreService,
+            @Value("${app.document-indexing.embedding.batch-size:64}") int batchSize,
+            @Value("${app.document-indexing.embedding.linger-ms:25}") long lingerMillis) {
+        this.vectorStoreService = vectorStoreService;
+        this.batchSize = Math.max(1, batchSize);
+        this.linger = Duration.ofMillis(Math.max(0, lingerMillis));
+        this.flusher = Thread.ofVirtual().name("vector-upsert-batcher").start(this::run);
+    }
+
+    /**
+     * Queues the documents for the next batch. The returned future completes once they are stored,
+     * or exceptionally with the failure of their own upsert.
+     */
+    public CompletableFuture<Void> submit(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        PendingUpsert upsert = new PendingUpsert(List.copyOf(documents), new CompletableFuture<>());
+        queue.add(upsert);
+        return upsert.completion();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flusher.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                flush(nextBatch());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        List<PendingUpsert> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        abandoned.forEach(upsert -> upsert.completion().completeExceptionally(
+                new IllegalStateException("Vector upsert batcher was shut down")));
+    }
+
+    private List<PendingUpsert> nextBatch() throws InterruptedException {
+        List<PendingUpsert> batch = new ArrayList<>();
+        PendingUpsert first = queue.take();
+        batch.add(first);
+        int documentCount = first.documents().size();
+
+        long deadline = System.nanoTime() + linger.toNanos();
+        while (documentCount < batchSize) {
+            PendingUpsert next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            documentCount += next.documents().size();
+        }
+        return batch;
+    }
+
+    private void flush(List<PendingUpsert> batch) {
+        List<Document> documents = batch.stream()
+                .flatMap(upsert -> upsert.documents().stream())
+                .toList();
+        try {
+            vectorStoreService.upsertDocuments(documents);
+            log.debug("Upserted {} vector documents for {} jobs in one batch", documents.size(), batch.size());
+            batch.forEach(upsert -> upsert.completion().complete(null));
+        } catch (RuntimeException ex) {
+            if (batch.size() == 1) {
+                batch.getFirst().completion().completeExceptionally(ex);
+                return;
+            }
+            if (isBackendFailure(ex)) {
+                // Retrying each submission would only wait out the same failure again; the jobs back off instead.
+                log.warn("Batched upsert of {} vector documents failed; failing all {} submissions",
+                        documents.size(), batch.size(), ex);
+                batch.forEach(upsert -> upsert.completion().completeExceptionally(ex));
+                return;
+            }
+            // Retry one submission at a time so a single bad document only fails its own job.
+            log.warn("Batched upsert of {} vector documents failed; retrying {} submissions individually",
+                    documents.size(), batch.size(), ex);
+            batch.forEach(this::flushIndividually);
+        }
+    }
+
+    private void flushIndividually(PendingUpsert upsert) {
+        try {
+            vectorStoreService.upsertDocuments(upsert.documents());
+            upsert.completion().complete(null);
+        } catch (RuntimeException ex) {
+            upsert.completion().completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * Whether the embedding server or the database as a whole failed (unreachable, overloaded or
+     * timed out), rather than a single document being rejected.
+     */
+    static boolean isBackendFailure(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientAiException || cause instanceof ResourceAccessException
+                    || cause instanceof TransientDataAccessException || cause instanceof DataAccessResourceFailureException
+                    || cause instanceof RecoverableDataAccessException || cause instanceof IOException
+                    || cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record PendingUpsert(List<Document> documents, CompletableFuture<Void> completion) {
+    }
+}
@@ -0,0 +1,12 @@
+DELETE FROM document_indexing_job duplicate
+USING document_indexing_job kept
+WHERE duplicate.status = 'pending'
+  AND kept.status = 'pending'
+  AND duplicate.job_type = kept.job_type
+  AND duplicate.document_type = kept.document_type
+  AND duplicate.document_id = kept.document_id
+  AND duplicate.id > kept.id;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_document_indexing_job_pending_document
+    ON document_indexing_job (job_type, document_type, document_id)
+    WHERE status = 'pending';
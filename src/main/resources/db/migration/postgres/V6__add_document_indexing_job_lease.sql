@@ -0,0 +1,7 @@
+ALTER TABLE document_indexing_job
+    ADD COLUMN IF NOT EXISTS lease_until TIMESTAMPTZ,
+    ADD COLUMN IF NOT EXISTS worker_id VARCHAR(128);
+
+CREATE INDEX IF NOT EXISTS idx_document_indexing_job_running_lease_until
+    ON document_indexing_job (lease_until)
+    WHERE status = 'running';
@@ -0,0 +1,6 @@
+ALTER TABLE article_documents
+    ADD COLUMN IF NOT EXISTS embedding_source_hash TEXT;
+
+ALTER TABLE discussion_documents
+    ADD COLUMN IF NOT EXISTS content_hash TEXT,
+    ADD COLUMN IF NOT EXISTS embedding_source_hash TEXT;
@@ -0,0 +1,2 @@
+ALTER TABLE discussion_documents
+    ADD COLUMN IF NOT EXISTS classification_input_hash TEXT;
@@ -0,0 +1,8 @@
+CREATE TABLE IF NOT EXISTS summary_cache (
+    source_hash TEXT NOT NULL,
+    chat_model VARCHAR(128) NOT NULL,
+    prompt_version VARCHAR(32) NOT NULL,
+    summary TEXT NOT NULL,
+    created_at TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    PRIMARY KEY (source_hash, chat_model, prompt_version)
+);
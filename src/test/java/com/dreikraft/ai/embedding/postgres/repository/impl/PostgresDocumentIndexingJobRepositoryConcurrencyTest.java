@@ -0,0 +1,114 @@
+package com.dreikraft.ai.embedding.postgres.repository.impl;
+
+import com.dreikraft.ai.embedding.postgres.persistence.repository.DocumentIndexingJobJpaRepository;
+import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobCreateRequest;
+import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobRecord;
+import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobRepository;
+import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.postgresql.PostgreSQLContainer;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(PostgresDocumentIndexingJobRepository.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers(disabledWithoutDocker = true)
+class PostgresDocumentIndexingJobRepositoryConcurrencyTest {
+    private static final int JOB_COUNT = 2000;
+    private static final int WORKER_COUNT = 4;
+    private static final int BATCH_SIZE = 10;
+    private static final String WORKER_ID = "concurrency-test";
+
+    @Container
+    static PostgreSQLContainer postgres = new PostgreSQLContainer("pgvector/pgvector:pg16")
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> WORKER_COUNT + 2);
+    }
+
+    @Autowired
+    DocumentIndexingJobRepository repository;
+
+    @Autowired
+    DocumentIndexingJobJpaRepository jpaRepository;
+
+    @BeforeEach
+    void resetQueue() {
+        jpaRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void claimBatchDrainsQueueExactlyOnceAcrossConcurrentWorkers() throws Exception {
+        seedJobs();
+        Set<Long> claimedIds = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicateClaims = new AtomicInteger();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(WORKER_COUNT)) {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < WORKER_COUNT; i++) {
+                workers.add(executor.submit(() -> {
+                    while (claimBatch(claimedIds, duplicateClaims) > 0) {
+                        Thread.onSpinWait();
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        }
+
+        assertEquals(JOB_COUNT, claimedIds.size());
+        assertEquals(0, duplicateClaims.get());
+        assertEquals(0, repository.pollDue(DocumentIndexingJobStatus.PENDING, OffsetDateTime.now(), 1).size());
+    }
+
+    private void seedJobs() {
+        List<DocumentIndexingJobCreateRequest> jobs = new ArrayList<>(JOB_COUNT);
+        OffsetDateTime availableAt = OffsetDateTime.now().minusSeconds(1);
+        for (int i = 0; i < JOB_COUNT; i++) {
+            jobs.add(new DocumentIndexingJobCreateRequest("EMBED_UPSERT", "article", i, availableAt, 5));
+        }
+        repository.enqueueBatch(jobs);
+    }
+
+    private int claimBatch(Set<Long> claimedIds, AtomicInteger duplicateClaims) {
+        OffsetDateTime now = OffsetDateTime.now();
+        List<DocumentIndexingJobRecord> claimed = repository.claimBatch(WORKER_ID, BATCH_SIZE, now, now.plusMinutes(1));
+        for (DocumentIndexingJobRecord job : claimed) {
+            if (!claimedIds.add(job.id())) {
+                duplicateClaims.incrementAndGet();
+            }
+        }
+        return claimed.size();
+    }
+}
@@ -0,0 +1,250 @@
+package com.dreikraft.ai.embedding.postgres.repository.impl;
+
+import com.dreikraft.ai.embedding.postgres.persistence.entity.DocumentIndexingJobEntity;
+import com.dreikraft.ai.embedding.postgres.persistence.repository.DocumentIndexingJobJpaRepository;
+import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobRecord;
+import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobRepository;
+import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.postgresql.PostgreSQLContainer;
+
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(PostgresDocumentIndexingJobRepository.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers(disabledWithoutDocker = true)
+class PostgresDocumentIndexingJobRepositoryTest {
+    private static final String WORKER_ID = "worker-a";
+
+    @Container
+    static PostgreSQLContainer postgres = new PostgreSQLContainer("pgvector/pgvector:pg16")
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("app.document-indexing.debounce.max-wait-ms", () -> "60000");
+    }
+
+    @Autowired
+    DocumentIndexingJobRepository repository;
+
+    @Autowired
+    DocumentIndexingJobJpaRepository jpaRepository;
+
+    @BeforeEach
+    void resetQueue() {
+        jpaRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void enqueueCoalescesPendingJobsForSameDocumentAndPushesThemBack() {
+        OffsetDateTime first = OffsetDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        OffsetDateTime later = first.plusSeconds(5);
+
+        long firstId = repository.enqueue("DISCUSSION_CLASSIFY", "article", 1L, first, 5);
+        long secondId = repository.enqueue("DISCUSSION_CLASSIFY", "article", 1L, later, 5);
+        long otherDocumentId = repository.enqueue("DISCUSSION_CLASSIFY", "article", 2L, first, 5);
+
+        assertEquals(firstId, secondId);
+        assertTrue(otherDocumentId != firstId);
+        assertEquals(2, jpaRepository.count());
+        DocumentIndexingJobEntity coalesced = jpaRepository.findById(firstId).orElseThrow();
+        assertEquals(later.toInstant(), coalesced.getAvailableAt().toInstant());
+    }
+
+    @Test
+    void upsertPendingReportsWhetherTheJobIsNewOrDue() {
+        OffsetDateTime now = OffsetDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+
+        DocumentIndexingJobJpaRepository.PendingUpsert inserted =
+                jpaRepository.upsertPending("DISCUSSION_CLASSIFY", "article", 1L, now.plusSeconds(5), 5, 60000, now);
+        DocumentIndexingJobJpaRepository.PendingUpsert debounced =
+                jpaRepository.upsertPending("DISCUSSION_CLASSIFY", "article", 1L, now.plusSeconds(10), 5, 60000, now);
+        DocumentIndexingJobJpaRepository.PendingUpsert due =
+                jpaRepository.upsertPending("DISCUSSION_CLASSIFY", "article", 1L, now, 5, 60000, now);
+
+        assertEquals(inserted.getId(), debounced.getId());
+        assertEquals(List.of(true, false), List.of(inserted.getInserted(), inserted.getDue()));
+        assertEquals(List.of(false, false), List.of(debounced.getInserted(), debounced.getDue()));
+        assertEquals(List.of(false, true), List.of(due.getInserted(), due.getDue()));
+    }
+
+    @Test
+    void enqueueCapsDebounceAtMaxWaitAfterPendingJobWasCreated() {
+        OffsetDateTime now = OffsetDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+
+        long id = repository.enqueue("DISCUSSION_CLASSIFY", "article", 1L, now.plusSeconds(5), 5);
+        repository.enqueue("DISCUSSION_CLASSIFY", "article", 1L, now.plusMinutes(10), 5);
+
+        DocumentIndexingJobEntity coalesced = jpaRepository.findById(id).orElseThrow();
+        assertEquals(coalesced.getCreatedAt().plusSeconds(60).toInstant(), coalesced.getAvailableAt().toInstant());
+    }
+
+    @Test
+    void enqueueResetsAttemptsOfPendingRetryAndTakesNewAvailableAt() {
+        OffsetDateTime now = OffsetDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        long id = repository.enqueue("EMBED_UPSERT", "article", 1L, now.minusSeconds(1), 5);
+        repository.claimBatch(WORKER_ID, 10, now, now.plusMinutes(1));
+        assertTrue(repository.markFailedWithRetry(id, WORKER_ID, now.plusSeconds(30), "db busy"));
+
+        long pendingId = repository.enqueue("EMBED_UPSERT", "article", 1L, now, 5);
+
+        DocumentIndexingJobEntity pending = jpaRepository.findById(pendingId).orElseThrow();
+        assertEquals(id, pendingId);
+        assertEquals(0, pending.getAttempt());
+        assertEquals(now.toInstant(), pending.getAvailableAt().toInstant());
+    }
+
+    @Test
+    void enqueueStartsNewPendingJobWhileSameDocumentIsRunning() {
+        OffsetDateTime now = OffsetDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        long runningId = repository.enqueue("EMBED_UPSERT", "article", 1L, now.minusSeconds(1), 5);
+        List<DocumentIndexingJobRecord> claimed = repository.claimBatch(WORKER_ID, 10, now, now.plusMinutes(1));
+
+        long pendingId = repository.enqueue("EMBED_UPSERT", "article", 1L, now, 5);
+
+        assertEquals(List.of(runningId), claimed.stream().map(DocumentIndexingJobRecord::id).toList());
+        assertTrue(pendingId != runningId);
+    }
+
+    @Test
+    void failedJobIsSupersededInsteadOfRetriedWhenNewerJobIsPending() {
+        OffsetDateTime now = OffsetDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        long runningId = repository.enqueue("EMBED_UPSERT", "article", 1L, now.minusSeconds(1), 5);
+        repository.claimBatch(WORKER_ID, 10, now, now.plusMinutes(1));
+        repository.enqueue("EMBED_UPSERT", "article", 1L, now, 5);
+
+        assertFalse(repository.markFailedWithRetry(runningId, WORKER_ID, now.plusSeconds(2), "db busy"));
+        assertTrue(repository.markSuperseded(runningId, WORKER_ID, now, "db busy"));
+
+        DocumentIndexingJobEntity superseded = jpaRepository.findById(runningId).orElseThrow();
+        assertEquals(DocumentIndexingJobStatus.SUPERSEDED.value(), superseded.getStatus());
+    }
+
+    @Test
+    void failedJobIsRetriedWhenNoNewerJobIsPending() {
+        OffsetDateTime now = OffsetDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        long runningId = repository.enqueue("EMBED_UPSERT", "article", 1L, now.minusSeconds(1), 5);
+        repository.claimBatch(WORKER_ID, 10, now, now.plusMinutes(1));
+
+        assertFalse(repository.markSuperseded(runningId, WORKER_ID, now, "db busy"));
+        assertTrue(repository.markFailedWithRetry(runningId, WORKER_ID, now.plusSeconds(2), "db busy"));
+        assertEquals(now.plusSeconds(2).toInstant(), repository.findNextAvailableAt().orElseThrow().toInstant());
+    }
+
+    @Test
+    void claimBatchLeasesJobsToWorker() {
+        OffsetDateTime now = OffsetDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        repository.enqueue("EMBED_UPSERT", "article", 1L, now.minusSeconds(1), 5);
+
+        DocumentIndexingJobRecord claimed = repository.claimBatch(WORKER_ID, 10, now, now.plusMinutes(1)).getFirst();
+
+        assertEquals(WORKER_ID, claimed.workerId());
+        assertEquals(now.plusMinutes(1).toInstant(), claimed.leaseUntil().toInstant());
+        assertFalse(repository.markSucceeded(claimed.id(), "worker-b", now));
+        assertEquals(1, repository.extendLeases(WORKER_ID, List.of(claimed.id()), now.plusMinutes(2)));
+        assertEquals(0, repository.extendLeases("worker-b", List.of(claimed.id()), now.plusMinutes(3)));
+        assertTrue(repository.markSucceeded(claimed.id(), WORKER_ID, now));
+    }
+
+    @Test
+    void reapExpiredLeasesReturnsJobsToPendingWithCountedAttempt() {
+        OffsetDateTime now = OffsetDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        long expiredId = repository.enqueue("EMBED_UPSERT", "article", 1L, now.minusMinutes(5), 5);
+        long liveId = repository.enqueue("EMBED_UPSERT", "article", 2L, now.minusMinutes(5), 5);
+        repository.claimBatch(WORKER_ID, 1, now.minusMinutes(2), now.minusMinutes(1));
+        repository.claimBatch("worker-b", 1, now, now.plusMinutes(1));
+
+        List<DocumentIndexingJobRecord> reaped = repository.reapExpiredLeases(now, now.minusMinutes(1), 100);
+
+        assertEquals(List.of(expiredId), reaped.stream().map(DocumentIndexingJobRecord::id).toList());
+        DocumentIndexingJobRecord job = reaped.getFirst();
+        assertEquals(DocumentIndexingJobStatus.PENDING, job.status());
+        assertEquals(1, job.attempt());
+        assertEquals(null, job.workerId());
+        assertFalse(repository.markSucceeded(expiredId, WORKER_ID, now));
+        assertEquals(DocumentIndexingJobStatus.RUNNING.value(), jpaRepository.findById(liveId).orElseThrow().getStatus());
+    }
+
+    @Test
+    void reapExpiredLeasesDeadLettersExhaustedJobsAndSupersedesJobsWithPendingSuccessor() {
+        OffsetDateTime now = OffsetDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        long exhaustedId = repository.enqueue("EMBED_UPSERT", "article", 1L, now.minusMinutes(5), 0);
+        long supersededId = repository.enqueue("EMBED_UPSERT", "article", 2L, now.minusMinutes(5), 5);
+        repository.claimBatch(WORKER_ID, 10, now.minusMinutes(2), now.minusMinutes(1));
+        long successorId = repository.enqueue("EMBED_UPSERT", "article", 2L, now, 5);
+
+        repository.reapExpiredLeases(now, now.minusMinutes(1), 100);
+
+        assertEquals(DocumentIndexingJobStatus.DEAD_LETTER.value(), jpaRepository.findById(exhaustedId).orElseThrow().getStatus());
+        assertEquals(DocumentIndexingJobStatus.SUPERSEDED.value(), jpaRepository.findById(supersededId).orElseThrow().getStatus());
+        assertEquals(DocumentIndexingJobStatus.PENDING.value(), jpaRepository.findById(successorId).orElseThrow().getStatus());
+    }
+
+    @Test
+    void reapExpiredLeasesKeepsOnePendingJobPerDocument() {
+        OffsetDateTime now = OffsetDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        long olderRunId = repository.enqueue("EMBED_UPSERT", "article", 1L, now.minusMinutes(5), 5);
+        repository.claimBatch(WORKER_ID, 10, now.minusMinutes(3), now.minusMinutes(1));
+        long newerRunId = repository.enqueue("EMBED_UPSERT", "article", 1L, now.minusMinutes(5), 5);
+        repository.claimBatch("worker-b", 10, now.minusMinutes(3), now.minusMinutes(1));
+
+        List<DocumentIndexingJobRecord> firstPass = repository.reapExpiredLeases(now, now.minusMinutes(1), 100);
+        List<DocumentIndexingJobRecord> secondPass = repository.reapExpiredLeases(now, now.minusMinutes(1), 100);
+
+        assertEquals(List.of(newerRunId), firstPass.stream().map(DocumentIndexingJobRecord::id).toList());
+        assertEquals(DocumentIndexingJobStatus.PENDING, firstPass.getFirst().status());
+        assertEquals(List.of(olderRunId), secondPass.stream().map(DocumentIndexingJobRecord::id).toList());
+        assertEquals(DocumentIndexingJobStatus.SUPERSEDED, secondPass.getFirst().status());
+    }
+
+    @Test
+    void markAllSucceededCompletesOnlyJobsStillLeasedToWorker() {
+        OffsetDateTime now = OffsetDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        long first = repository.enqueue("EMBED_UPSERT", "article", 1L, now.minusSeconds(1), 5);
+        long second = repository.enqueue("EMBED_UPSERT", "article", 2L, now.minusSeconds(1), 5);
+        long third = repository.enqueue("EMBED_UPSERT", "article", 3L, now.minusSeconds(1), 5);
+        repository.claimBatch(WORKER_ID, 10, now, now.plusMinutes(1));
+        repository.markDeadLetter(third, WORKER_ID, now, "failed");
+
+        assertEquals(2, repository.markAllSucceeded(List.of(first, second, third), WORKER_ID, now));
+        assertEquals(DocumentIndexingJobStatus.SUCCEEDED.value(), jpaRepository.findById(first).orElseThrow().getStatus());
+        assertEquals(DocumentIndexingJobStatus.DEAD_LETTER.value(), jpaRepository.findById(third).orElseThrow().getStatus());
+    }
+
+    @Test
+    void expireLeasesHandsWorkerJobsToReaper() {
+        OffsetDateTime now = OffsetDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        long jobId = repository.enqueue("EMBED_UPSERT", "article", 1L, now.minusSeconds(1), 5);
+        repository.claimBatch(WORKER_ID, 10, now, now.plusMinutes(1));
+
+        assertEquals(1, repository.expireLeases(WORKER_ID, now));
+        List<DocumentIndexingJobRecord> reaped = repository.reapExpiredLeases(now.plusSeconds(1), now.minusMinutes(1), 100);
+
+        assertEquals(List.of(jobId), reaped.stream().map(DocumentIndexingJobRecord::id).toList());
+    }
+}
@@ -0,0 +1,71 @@
+package com.dreikraft.ai.embedding.postgres.repository.impl;
+
+import com.dreikraft.ai.embedding.postgres.persistence.repository.SummaryCacheJpaRepository;
+import com.dreikraft.ai.embedding.postgres.repository.SummaryCacheRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.postgresql.PostgreSQLContainer;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(PostgresSummaryCacheRepository.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers(disabledWithoutDocker = true)
+class PostgresSummaryCacheRepositoryTest {
+
+    @Container
+    static PostgreSQLContainer postgres = new PostgreSQLContainer("pgvector/pgvector:pg16")
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    SummaryCacheRepository repository;
+
+    @Autowired
+    SummaryCacheJpaRepository jpaRepository;
+
+    @BeforeEach
+    void resetCache() {
+        jpaRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void findReturnsSummaryOnlyForSameModelAndPromptVersion() {
+        repository.save("hash", "model-a", "1", "summary");
+
+        assertEquals(Optional.of("summary"), repository.find("hash", "model-a", "1"));
+        assertEquals(Optional.empty(), repository.find("hash", "model-b", "1"));
+        assertEquals(Optional.empty(), repository.find("hash", "model-a", "2"));
+    }
+
+    @Test
+    void saveKeepsFirstSummaryForExistingKey() {
+        repository.save("hash", "model-a", "1", "first");
+        repository.save("hash", "model-a", "1", "second");
+
+        assertEquals(Optional.of("first"), repository.find("hash", "model-a", "1"));
+        assertEquals(1, jpaRepository.count());
+    }
+}
@@ -5,13 +5,25 @@ import com.dreikraft.ai.embedding.postgres.model.ArticleCreateRequest;
 import com.dreikraft.ai.embedding.postgres.model.ArticleDocument;
 import com.dreikraft.ai.embedding.postgres.persistence.entity.ArticleEntity;
 import com.dreikraft.ai.embedding.postgres.persistence.repository.ArticleJpaRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -33,19 +45,96 @@ class ArticleServiceTest {
                 vectorStoreService,
                 documentIndexingJobService,
                 rerankingService,
+                ungatedRerank(),
+                new SimpleMeterRegistry(),
                 true,
-                false
+                false,
+                1500
         );
 
         ArticleEntity saved = new ArticleEntity();
         saved.setId(5L);
-        when(articleRepository.save(org.mockito.ArgumentMatchers.any(ArticleEntity.class))).thenReturn(saved);
+        when(articleRepository.save(any(ArticleEntity.class))).thenReturn(saved);
 
         service.create(new ArticleCreateRequest("Article", "Raw body"));
 
         verify(documentIndexingJobService).enqueue(DocumentIndexingJobType.EMBED_UPSERT, DocumentType.ARTICLE, 5L);
     }
 
+    @Test
+    void updateSkipsIndexingWhenEmbeddedContentIsUnchanged() {
+        ArticleJpaRepository articleRepository = mock(ArticleJpaRepository.class);
+        DocumentIndexingJobService documentIndexingJobService = mock(DocumentIndexingJobService.class);
+        ArticleService service = new ArticleService(
+                articleRepository,
+                mock(ArticleEntityMapper.class),
+                mock(SemanticSummaryService.class),
+                mock(DocumentVectorStoreService.class),
+                documentIndexingJobService,
+                mock(SemanticSearchRerankingService.class),
+                ungatedRerank(),
+                new SimpleMeterRegistry(),
+                true,
+                false,
+                1500
+        );
+
+        ArticleEntity stored = new ArticleEntity();
+        stored.setId(5L);
+        stored.setContent("Raw body");
+        stored.setContentHash(ContentHashes.sha256("Raw body"));
+        stored.setEmbeddingStatus(EmbeddingStatus.SUCCEEDED);
+        when(articleRepository.findArticleById(5L)).thenReturn(Optional.of(stored));
+
+        service.update(5L, "Raw body");
+        verify(documentIndexingJobService, never()).enqueue(DocumentIndexingJobType.EMBED_UPSERT, DocumentType.ARTICLE, 5L);
+
+        service.update(5L, "Edited body");
+        verify(documentIndexingJobService).enqueue(DocumentIndexingJobType.EMBED_UPSERT, DocumentType.ARTICLE, 5L);
+        assertEquals(ContentHashes.sha256("Edited body"), stored.getContentHash());
+    }
+
+    @Test
+    void updateReclassifiesDiscussionsOnlyWhenContentChanged() {
+        ArticleJpaRepository articleRepository = mock(ArticleJpaRepository.class);
+        DocumentIndexingJobService documentIndexingJobService = mock(DocumentIndexingJobService.class);
+        ArticleService service = new ArticleService(articleRepository, mock(ArticleEntityMapper.class), mock(SemanticSummaryService.class),
+                mock(DocumentVectorStoreService.class), documentIndexingJobService, mock(SemanticSearchRerankingService.class),
+                ungatedRerank(), new SimpleMeterRegistry(), true, false, 1500);
+
+        ArticleEntity stored = new ArticleEntity();
+        stored.setId(5L);
+        stored.setContent("Raw body");
+        stored.setContentHash(ContentHashes.sha256("Raw body"));
+        when(articleRepository.findArticleById(5L)).thenReturn(Optional.of(stored));
+
+        service.update(5L, "Raw body");
+        verify(documentIndexingJobService).enqueue(DocumentIndexingJobType.EMBED_UPSERT, DocumentType.ARTICLE, 5L);
+        verify(documentIndexingJobService, never()).enqueue(DocumentIndexingJobType.DISCUSSION_CLASSIFY, DocumentType.ARTICLE, 5L);
+
+        service.update(5L, "Edited body");
+        verify(documentIndexingJobService).enqueue(DocumentIndexingJobType.DISCUSSION_CLASSIFY, DocumentType.ARTICLE, 5L);
+    }
+
+    @Test
+    void findByIdsKeepsRequestedOrderAndSkipsMissingArticles() {
+        ArticleJpaRepository articleRepository = mock(ArticleJpaRepository.class);
+        ArticleEntityMapper articleMapper = mock(ArticleEntityMapper.class);
+        ArticleService service = new ArticleService(articleRepository, articleMapper, mock(SemanticSummaryService.class),
+                mock(DocumentVectorStoreService.class), mock(DocumentIndexingJobService.class), mock(SemanticSearchRerankingService.class),
+                ungatedRerank(), new SimpleMeterRegistry(), true, false, 1500);
+        ArticleEntity first = new ArticleEntity();
+        first.setId(4L);
+        ArticleEntity second = new ArticleEntity();
+        second.setId(9L);
+        when(articleRepository.findArticlesByIdIn(List.of(9L, 5L, 4L))).thenReturn(List.of(first, second));
+        when(articleMapper.toArticleDocument(first)).thenReturn(new ArticleDocument(4L, "a", "a", null));
+        when(articleMapper.toArticleDocument(second)).thenReturn(new ArticleDocument(9L, "b", "b", null));
+
+        assertEquals(List.of(9L, 4L), service.findByIds(List.of(9L, 5L, 4L)).stream().map(ArticleDocument::id).toList());
+        assertEquals(List.of(), service.findByIds(List.of()));
+    }
+
     @Test
     void semanticSearchUsesOriginalQueryWhenQueryRewriteDisabled() {
         ArticleJpaRepository articleRepository = mock(ArticleJpaRepository.class);
@@ -62,26 +151,29 @@ class ArticleServiceTest {
                 vectorStoreService,
                 documentIndexingJobService,
                 rerankingService,
+                ungatedRerank(),
+                new SimpleMeterRegistry(),
+                false,
                 false,
-                false
+                1500
         );
 
-        when(vectorStoreService.searchIds("raw query", 20, "sampleType == 'article'"))
-                .thenReturn(List.of(3L));
+        when(vectorStoreService.searchScoredIds("raw query", 20, "sampleType == 'article'"))
+                .thenReturn(hits(3L));
 
         ArticleEntity articleEntity = new ArticleEntity();
         articleEntity.setId(3L);
         when(articleRepository.findArticlesByIdIn(List.of(3L))).thenReturn(List.of(articleEntity));
         when(articleMapper.toArticleDocument(articleEntity)).thenReturn(new ArticleDocument(3L, "t", "c", null));
-        when(rerankingService.rerank(org.mockito.ArgumentMatchers.eq("raw query"), org.mockito.ArgumentMatchers.eq(List.of(3L)), org.mockito.ArgumentMatchers.anyList()))
+        when(rerankingService.rerank(eq("raw query"), eq(List.of(3L)), anyList()))
                 .thenReturn(List.of(3L));
 
         List<ArticleDocument> results = service.semanticSearch("raw query", "sampleType == 'article'");
 
         assertEquals(1, results.size());
         verify(summaryService, never()).summarizeQueryForSemanticSearch("raw query");
-        verify(vectorStoreService).searchIds("raw query", 20, "sampleType == 'article'");
-        verify(rerankingService).rerank(org.mockito.ArgumentMatchers.eq("raw query"), org.mockito.ArgumentMatchers.eq(List.of(3L)), org.mockito.ArgumentMatchers.anyList());
+        verify(vectorStoreService).searchScoredIds("raw query", 20, "sampleType == 'article'");
+        verify(rerankingService).rerank(eq("raw query"), eq(List.of(3L)), anyList());
     }
 
     @Test
@@ -100,15 +192,18 @@ class ArticleServiceTest {
                 vectorStoreService,
                 documentIndexingJobService,
                 rerankingService,
+                ungatedRerank(),
+                new SimpleMeterRegistry(),
+                true,
                 true,
-                true
+                1500
         );
 
         when(summaryService.summarizeQueryForSemanticSearch("climate impact")).thenReturn("climate change impact");
-        when(vectorStoreService.searchIds("climate impact", 20, "sampleType == 'article'"))
-                .thenReturn(List.of(10L, 11L));
-        when(vectorStoreService.searchIds("climate change impact", 20, "sampleType == 'article'"))
-                .thenReturn(List.of(11L, 12L));
+        when(vectorStoreService.searchScoredIds("climate impact", 20, "sampleType == 'article'"))
+                .thenReturn(hits(10L, 11L));
+        when(vectorStoreService.searchScoredIds("climate change impact", 20, "sampleType == 'article'"))
+                .thenReturn(hits(11L, 12L));
 
         ArticleEntity entity10 = new ArticleEntity();
         entity10.setId(10L);
@@ -117,19 +212,130 @@ class ArticleServiceTest {
         ArticleEntity entity12 = new ArticleEntity();
         entity12.setId(12L);
 
-        when(articleRepository.findArticlesByIdIn(org.mockito.ArgumentMatchers.anyList()))
+        when(articleRepository.findArticlesByIdIn(anyList()))
                 .thenReturn(List.of(entity10, entity11, entity12));
         when(articleMapper.toArticleDocument(entity10)).thenReturn(new ArticleDocument(10L, "a", "a", null));
         when(articleMapper.toArticleDocument(entity11)).thenReturn(new ArticleDocument(11L, "b", "b", null));
         when(articleMapper.toArticleDocument(entity12)).thenReturn(new ArticleDocument(12L, "c", "c", null));
-        when(rerankingService.rerank(org.mockito.ArgumentMatchers.eq("climate impact"), org.mockito.ArgumentMatchers.eq(List.of(11L, 10L, 12L)), org.mockito.ArgumentMatchers.anyList()))
+        when(rerankingService.rerank(eq("climate impact"), eq(List.of(11L, 10L, 12L)), anyList()))
                 .thenReturn(List.of(12L, 11L, 10L));
 
         List<ArticleDocument> results = service.semanticSearch("climate impact", "sampleType == 'article'");
 
         assertEquals(List.of(12L, 11L, 10L), results.stream().map(ArticleDocument::id).toList());
-        verify(vectorStoreService).searchIds("climate impact", 20, "sampleType == 'article'");
-        verify(vectorStoreService).searchIds("climate change impact", 20, "sampleType == 'article'");
-        verify(rerankingService).rerank(org.mockito.ArgumentMatchers.eq("climate impact"), org.mockito.ArgumentMatchers.eq(List.of(11L, 10L, 12L)), org.mockito.ArgumentMatchers.anyList());
+        verify(vectorStoreService).searchScoredIds("climate impact", 20, "sampleType == 'article'");
+        verify(vectorStoreService).searchScoredIds("climate change impact", 20, "sampleType == 'article'");
+        verify(rerankingService).rerank(eq("climate impact"), eq(List.of(11L, 10L, 12L)), anyList());
+    }
+
+    @Test
+    void dualQuerySearchStartsOriginalQuerySearchWhileRewriteIsInFlight() {
+        SemanticSummaryService summaryService = mock(SemanticSummaryService.class);
+        DocumentVectorStoreService vectorStoreService = mock(DocumentVectorStoreService.class);
+        ArticleService service = dualQueryService(summaryService, vectorStoreService, new SimpleMeterRegistry(), 5000);
+        CountDownLatch originalSearchStarted = new CountDownLatch(1);
+
+        when(vectorStoreService.searchScoredIds("climate impact", 20, ArticleService.ARTICLE_FILTER_EXPRESSION)).thenAnswer(invocation -> {
+            originalSearchStarted.countDown();
+            return List.of();
+        });
+        when(summaryService.summarizeQueryForSemanticSearch("climate impact")).thenAnswer(invocation -> {
+            assertTrue(originalSearchStarted.await(5, TimeUnit.SECONDS), "original-query search waited for the rewrite");
+            return "climate change impact";
+        });
+        when(vectorStoreService.searchScoredIds("climate change impact", 20, ArticleService.ARTICLE_FILTER_EXPRESSION)).thenReturn(List.of());
+
+        assertEquals(List.of(), service.semanticSearch("climate impact"));
+        verify(vectorStoreService).searchScoredIds("climate change impact", 20, ArticleService.ARTICLE_FILTER_EXPRESSION);
+    }
+
+    @Test
+    void dualQuerySearchReturnsOriginalResultsWhenRewriteMissesDeadline() {
+        SemanticSummaryService summaryService = mock(SemanticSummaryService.class);
+        DocumentVectorStoreService vectorStoreService = mock(DocumentVectorStoreService.class);
+        SemanticSearchRerankingService rerankingService = mock(SemanticSearchRerankingService.class);
+        ArticleJpaRepository articleRepository = mock(ArticleJpaRepository.class);
+        ArticleEntityMapper articleMapper = mock(ArticleEntityMapper.class);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ArticleService service = new ArticleService(articleRepository, articleMapper, summaryService, vectorStoreService,
+                mock(DocumentIndexingJobService.class), rerankingService, ungatedRerank(), meterRegistry, true, true, 50);
+
+        CountDownLatch releaseRewrite = new CountDownLatch(1);
+        when(vectorStoreService.searchScoredIds("climate impact", 20, ArticleService.ARTICLE_FILTER_EXPRESSION)).thenReturn(hits(10L));
+        when(vectorStoreService.searchScoredIds("climate change impact", 20, ArticleService.ARTICLE_FILTER_EXPRESSION)).thenReturn(hits(11L));
+        when(summaryService.summarizeQueryForSemanticSearch("climate impact")).thenAnswer(invocation -> {
+            releaseRewrite.await(5, TimeUnit.SECONDS);
+            return "climate change impact";
+        });
+        ArticleEntity entity = new ArticleEntity();
+        entity.setId(10L);
+        when(articleRepository.findArticlesByIdIn(List.of(10L))).thenReturn(List.of(entity));
+        when(articleMapper.toArticleDocument(entity)).thenReturn(new ArticleDocument(10L, "a", "a", null));
+        when(rerankingService.rerank(eq("climate impact"), eq(List.of(10L)), anyList()))
+                .thenReturn(List.of(10L));
+
+        // The rewrite is only released after the search returned, so the search cannot have waited for it.
+        List<ArticleDocument> results = service.semanticSearch("climate impact");
+        releaseRewrite.countDown();
+
+        assertEquals(List.of(10L), results.stream().map(ArticleDocument::id).toList());
+        assertEquals(1, meterRegistry.get("semantic.search.rewrite.deadline.missed").counter().count());
+        verify(summaryService, timeout(5000)).summarizeQueryForSemanticSearch("climate impact");
+        verify(vectorStoreService, after(200).never())
+                .searchScoredIds("climate change impact", 20, ArticleService.ARTICLE_FILTER_EXPRESSION);
+    }
+
+    @Test
+    void semanticSearchSkipsRerankingWhenGateSeesAClearWinner() {
+        ArticleJpaRepository articleRepository = mock(ArticleJpaRepository.class);
+        ArticleEntityMapper articleMapper = mock(ArticleEntityMapper.class);
+        DocumentVectorStoreService vectorStoreService = mock(DocumentVectorStoreService.class);
+        SemanticSearchRerankingService rerankingService = mock(SemanticSearchRerankingService.class);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ArticleService service = new ArticleService(articleRepository, articleMapper, mock(SemanticSummaryService.class),
+                vectorStoreService, mock(DocumentIndexingJobService.class), rerankingService,
+                new SemanticSearchRerankGate(meterRegistry, true, 3, 0.04, 2500), meterRegistry, false, false, 1500);
+
+        when(vectorStoreService.searchScoredIds("raw query", 20, ArticleService.ARTICLE_FILTER_EXPRESSION)).thenReturn(List.of(
+                new DocumentVectorStoreService.ScoredId(3L, 0.92),
+                new DocumentVectorStoreService.ScoredId(4L, 0.81),
+                new DocumentVectorStoreService.ScoredId(5L, 0.80)
+        ));
+        List<ArticleEntity> entities = List.of(new ArticleEntity(), new ArticleEntity(), new ArticleEntity());
+        for (int i = 0; i < entities.size(); i++) {
+            entities.get(i).setId(3L + i);
+            when(articleMapper.toArticleDocument(entities.get(i))).thenReturn(new ArticleDocument(3L + i, "t", "c", null));
+        }
+        when(articleRepository.findArticlesByIdIn(List.of(3L, 4L, 5L))).thenReturn(entities);
+
+        List<ArticleDocument> results = service.semanticSearch("raw query");
+
+        assertEquals(List.of(3L, 4L, 5L), results.stream().map(ArticleDocument::id).toList());
+        verify(rerankingService, never()).rerank(anyString(), anyList(), anyList());
+        assertEquals(1, meterRegistry.get("semantic.search.rerank.decisions").tag("reason", "clear_winner").counter().count());
+    }
+
+    private ArticleService dualQueryService(SemanticSummaryService summaryService,
+                                            DocumentVectorStoreService vectorStoreService,
+                                            SimpleMeterRegistry meterRegistry,
+                                            long rewriteDeadlineMs) {
+        return new ArticleService(mock(ArticleJpaRepository.class), mock(ArticleEntityMapper.class), summaryService,
+                vectorStoreService, mock(DocumentIndexingJobService.class), mock(SemanticSearchRerankingService.class),
+                ungatedRerank(), meterRegistry, true, true, rewriteDeadlineMs);
+    }
+
+    /**
+     * Hits in the given order with scores too close together for the rerank gate to skip.
+     */
+    private static List<DocumentVectorStoreService.ScoredId> hits(long... ids) {
+        List<DocumentVectorStoreService.ScoredId> hits = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            hits.add(new DocumentVectorStoreService.ScoredId(ids[i], 0.9 - i * 0.01));
+        }
+        return hits;
+    }
+
+    private static SemanticSearchRerankGate ungatedRerank() {
+        return new SemanticSearchRerankGate(new SimpleMeterRegistry(), false, 3, 0.04, 2500);
     }
 }
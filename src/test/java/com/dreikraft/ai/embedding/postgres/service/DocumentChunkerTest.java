@@ -0,0 +1,74 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DocumentChunkerTest {
+
+    @Test
+    void chunkKeepsShortContentWhole() {
+        DocumentChunker chunker = newChunker(100, 20, Map.of());
+
+        List<DocumentChunker.Chunk> chunks = chunker.chunk(DocumentType.ARTICLE, "  One short sentence.  ");
+
+        assertEquals(List.of(new DocumentChunker.Chunk(0, 2, 21, "One short sentence.")), chunks);
+    }
+
+    @Test
+    void chunkEndsAtSentenceBoundariesAndRecordsOffsets() {
+        String content = "Alpha beta gamma delta. Epsilon zeta eta theta. Iota kappa lambda mu. Nu xi omicron pi.";
+        DocumentChunker chunker = newChunker(50, 0, Map.of());
+
+        List<DocumentChunker.Chunk> chunks = chunker.chunk(DocumentType.ARTICLE, content);
+
+        assertEquals(List.of(
+                "Alpha beta gamma delta. Epsilon zeta eta theta.",
+                "Iota kappa lambda mu. Nu xi omicron pi."
+        ), chunks.stream().map(DocumentChunker.Chunk::content).toList());
+        for (DocumentChunker.Chunk chunk : chunks) {
+            assertEquals(chunk.content(), content.substring(chunk.start(), chunk.end()));
+        }
+    }
+
+    @Test
+    void chunkRepeatsOverlapFromPreviousChunkAtWordBoundary() {
+        String content = "word ".repeat(100).strip();
+        DocumentChunker chunker = newChunker(100, 30, Map.of());
+
+        List<DocumentChunker.Chunk> chunks = chunker.chunk(DocumentType.ARTICLE, content);
+
+        assertTrue(chunks.size() > 5, "chunks: " + chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            DocumentChunker.Chunk chunk = chunks.get(i);
+            assertTrue(chunk.content().length() <= 100, chunk.content());
+            assertTrue(chunk.content().startsWith("word"), chunk.content());
+            assertTrue(chunk.content().endsWith("word"), chunk.content());
+            if (i > 0) {
+                int overlap = chunks.get(i - 1).end() - chunk.start();
+                assertTrue(overlap > 20 && overlap <= 30, "overlap " + overlap);
+            }
+        }
+        assertEquals(content.length(), chunks.getLast().end());
+    }
+
+    @Test
+    void chunkUsesPerTypeSettings() {
+        String content = "x".repeat(300);
+        DocumentChunker chunker = newChunker(200, 0,
+                Map.of(DocumentType.DISCUSSION, new DocumentChunkingProperties.TypeChunking(100, null)));
+
+        assertEquals(2, chunker.chunk(DocumentType.ARTICLE, content).size());
+        assertEquals(3, chunker.chunk(DocumentType.DISCUSSION, content).size());
+        assertNotEquals(chunker.strategy(DocumentType.ARTICLE), chunker.strategy(DocumentType.DISCUSSION));
+    }
+
+    private static DocumentChunker newChunker(int chunkSize, int overlap, Map<DocumentType, DocumentChunkingProperties.TypeChunking> types) {
+        return new DocumentChunker(new DocumentChunkingProperties(true, chunkSize, overlap, types));
+    }
+}
@@ -0,0 +1,35 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class DocumentIndexingJobServiceTest {
+
+    @Test
+    void enqueueDelaysJobByDebounceWindowOfItsType() {
+        DocumentIndexingJobRepository repository = mock(DocumentIndexingJobRepository.class);
+        DocumentIndexingJobService service = new DocumentIndexingJobService(repository, 0, 5000);
+
+        OffsetDateTime before = OffsetDateTime.now();
+        service.enqueue(DocumentIndexingJobType.EMBED_UPSERT, DocumentType.ARTICLE, 1L);
+        service.enqueue(DocumentIndexingJobType.DISCUSSION_CLASSIFY, DocumentType.ARTICLE, 1L);
+
+        ArgumentCaptor<OffsetDateTime> embedAvailableAt = ArgumentCaptor.forClass(OffsetDateTime.class);
+        verify(repository).enqueue(eq("EMBED_UPSERT"), eq("article"), eq(1L), embedAvailableAt.capture(), anyInt());
+        ArgumentCaptor<OffsetDateTime> classifyAvailableAt = ArgumentCaptor.forClass(OffsetDateTime.class);
+        verify(repository).enqueue(eq("DISCUSSION_CLASSIFY"), eq("article"), eq(1L), classifyAvailableAt.capture(), anyInt());
+
+        assertFalse(embedAvailableAt.getValue().isAfter(before.plusSeconds(1)));
+        assertFalse(classifyAvailableAt.getValue().isBefore(before.plus(Duration.ofMillis(5000))));
+    }
+}
@@ -1,130 +1,690 @@
 package com.dreikraft.ai.embedding.postgres.service;
 
 import com.dreikraft.ai.embedding.postgres.persistence.entity.ArticleEntity;
+import com.dreikraft.ai.embedding.postgres.persistence.entity.DiscussionEntity;
 import com.dreikraft.ai.embedding.postgres.persistence.repository.ArticleJpaRepository;
 import com.dreikraft.ai.embedding.postgres.persistence.repository.DiscussionJpaRepository;
 import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobRecord;
 import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobRepository;
 import com.dreikraft.ai.embedding.postgres.repository.DocumentIndexingJobStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.web.client.ResourceAccessException;
 
+import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class DocumentIndexingWorkerServiceTest {
+    private static final String WORKER_ID = "test-worker";
+
+    private DocumentIndexingJobRepository jobRepository;
+    private ArticleJpaRepository articleRepository;
+    private DiscussionJpaRepository discussionRepository;
+    private EmbeddingTransformationService embeddingTransformationService;
+    private SemanticSummaryService semanticSummaryService;
+    private DocumentVectorStoreService vectorStoreService;
+    private VectorUpsertBatcher vectorUpsertBatcher;
+    private DiscussionClassificationService discussionClassificationService;
+    private SimpleMeterRegistry meterRegistry;
+    private final List<DocumentEmbeddingPipeline> pipelines = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        jobRepository = mock(DocumentIndexingJobRepository.class);
+        articleRepository = mock(ArticleJpaRepository.class);
+        discussionRepository = mock(DiscussionJpaRepository.class);
+        embeddingTransformationService = mock(EmbeddingTransformationService.class);
+        semanticSummaryService = mock(SemanticSummaryService.class);
+        vectorStoreService = mock(DocumentVectorStoreService.class);
+        vectorUpsertBatcher = mock(VectorUpsertBatcher.class);
+        when(vectorUpsertBatcher.submit(any())).thenReturn(CompletableFuture.completedFuture(null));
+        discussionClassificationService = mock(DiscussionClassificationService.class);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipelines.forEach(DocumentEmbeddingPipeline::shutdown);
+    }
 
     @Test
     void runQueueProcessesEmbedUpsertJobsAndMarksSucceeded() {
-        DocumentIndexingJobRepository jobRepository = mock(DocumentIndexingJobRepository.class);
-        ArticleJpaRepository articleRepository = mock(ArticleJpaRepository.class);
-        DiscussionJpaRepository discussionRepository = mock(DiscussionJpaRepository.class);
-        EmbeddingTransformationService embeddingTransformationService = mock(EmbeddingTransformationService.class);
-        SemanticSummaryService semanticSummaryService = mock(SemanticSummaryService.class);
-        DocumentVectorStoreService vectorStoreService = mock(DocumentVectorStoreService.class);
-        DiscussionClassificationService discussionClassificationService = mock(DiscussionClassificationService.class);
-
-        DocumentIndexingWorkerService worker = new DocumentIndexingWorkerService(
-                jobRepository,
-                articleRepository,
-                discussionRepository,
-                embeddingTransformationService,
-                semanticSummaryService,
-                vectorStoreService,
-                discussionClassificationService,
-                10,
-                1000,
-                1200,
-                "test-model"
-        );
+        DocumentIndexingWorkerService worker = newWorker(4);
 
-        DocumentIndexingJobRecord job = new DocumentIndexingJobRecord(
-                1L,
-                DocumentIndexingJobType.EMBED_UPSERT.name(),
-                DocumentType.ARTICLE.value(),
-                42L,
-                DocumentIndexingJobStatus.PENDING,
-                0,
-                5,
-                OffsetDateTime.now(),
-                null,
-                null,
-                null,
-                OffsetDateTime.now(),
-                OffsetDateTime.now()
-        );
+        DocumentIndexingJobRecord job = articleJob(1L, 42L, 0);
 
         ArticleEntity article = new ArticleEntity();
         article.setId(42L);
         article.setTitle("Title");
         article.setContent("short content");
 
-        when(jobRepository.pollDue(eq(DocumentIndexingJobStatus.PENDING), any(), eq(10))).thenReturn(List.of(job));
-        when(jobRepository.claimPending(eq(1L), any())).thenReturn(true);
-        when(articleRepository.findArticleById(42L)).thenReturn(Optional.of(article));
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any())).thenReturn(List.of(job));
+        when(articleRepository.findArticlesByIdIn(List.of(42L))).thenReturn(List.of(article));
         when(embeddingTransformationService.transformForArticle("Title", "short content"))
                 .thenReturn(List.of(new EmbeddingTransformationService.EmbeddingVariant("original", "short content")));
 
-        worker.runQueue();
+        drain(worker);
+
+        verify(vectorStoreService).toVectorDocuments(eq(42L), eq(DocumentType.ARTICLE.value()), eq("Title"), any(), any());
+        verify(vectorUpsertBatcher).submit(any());
+        assertEquals(List.of(1L), succeededJobIds());
+        // The write stage completes the job before its own timer is recorded, so it is not asserted here.
+        for (String stage : List.of("summarize", "transform", "embed")) {
+            assertEquals(1, meterRegistry.get("indexing.pipeline.stage.process").tag("stage", stage).timer().count(), stage);
+        }
+    }
+
+    @Test
+    void runQueueSkipsModelCallsWhenSourceIsUnchanged() {
+        DocumentIndexingWorkerService worker = newWorker(4);
+
+        ArticleEntity article = new ArticleEntity();
+        article.setId(42L);
+        article.setTitle("Title");
+        article.setContent("short content");
+        article.setEmbeddingStatus(EmbeddingStatus.SUCCEEDED);
+        article.setEmbeddingSourceHash(ContentHashes.embeddingSource("test-model", "Title", "short content", null));
 
-        verify(vectorStoreService).upsertVariants(eq(42L), eq(DocumentType.ARTICLE.value()), eq("Title"), any(), any());
-        verify(jobRepository).markSucceeded(eq(1L), any());
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any())).thenReturn(List.of(articleJob(1L, 42L, 0)));
+        when(articleRepository.findArticlesByIdIn(List.of(42L))).thenReturn(List.of(article));
+
+        drain(worker);
+
+        assertEquals(List.of(1L), succeededJobIds());
+        verify(semanticSummaryService, never()).summarizeDocumentForEmbedding(anyString(), anyString());
+        verify(embeddingTransformationService, never()).transformForArticle(anyString(), anyString());
+        verify(vectorUpsertBatcher, never()).submit(any());
+        assertEquals(1, meterRegistry.get("indexing.pipeline.unchanged").counter().count());
+    }
+
+    @Test
+    void runQueueReembedsWhenEmbeddingModelChanged() {
+        DocumentIndexingWorkerService worker = newWorker(4);
+
+        ArticleEntity article = new ArticleEntity();
+        article.setId(42L);
+        article.setTitle("Title");
+        article.setContent("short content");
+        article.setEmbeddingStatus(EmbeddingStatus.SUCCEEDED);
+        article.setEmbeddingSourceHash(ContentHashes.embeddingSource("previous-model", "Title", "short content", null));
+
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any())).thenReturn(List.of(articleJob(1L, 42L, 0)));
+        when(articleRepository.findArticlesByIdIn(List.of(42L))).thenReturn(List.of(article));
+        // A short document may get the original variant only without the model having failed.
+        when(embeddingTransformationService.transformForArticle("Title", "short content"))
+                .thenReturn(List.of(new EmbeddingTransformationService.EmbeddingVariant("original", "short content")));
+
+        drain(worker);
+
+        verify(vectorUpsertBatcher).submit(any());
+        assertEquals(List.of(1L), succeededJobIds());
+        verify(articleRepository).updateEmbeddingLineage(aryEq(new Long[]{42L}), aryEq(new String[]{ContentHashes.sha256("short content")}),
+                aryEq(new String[]{ContentHashes.embeddingSource("test-model", "Title", "short content", null)}),
+                eq("SUCCEEDED"), eq("worker"), eq("test-model"), any());
+    }
+
+    @Test
+    void runQueueLeavesSourceHashUnsetWhenEmbeddingFellBack() {
+        DocumentIndexingWorkerService worker = newWorker(4);
+
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any())).thenReturn(List.of(articleJob(1L, 42L, 0)));
+        when(articleRepository.findArticlesByIdIn(List.of(42L))).thenReturn(List.of(classifiedArticle(42L, "short content")));
+        when(embeddingTransformationService.transformForArticle("Title", "short content"))
+                .thenReturn(List.of(new EmbeddingTransformationService.EmbeddingVariant("original", "short content", true)));
+
+        drain(worker);
+
+        assertEquals(List.of(1L), succeededJobIds());
+        verify(articleRepository).updateEmbeddingLineage(aryEq(new Long[]{42L}), aryEq(new String[]{ContentHashes.sha256("short content")}),
+                aryEq(new String[]{null}), eq("SUCCEEDED"), eq("worker"), eq("test-model"), any());
+    }
+
+    @Test
+    void runQueueRetriesJobsTheLlmGatewayRejected() {
+        DocumentIndexingWorkerService worker = newWorker(4);
+
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any())).thenReturn(List.of(articleJob(1L, 42L, 0)));
+        when(articleRepository.findArticlesByIdIn(List.of(42L))).thenReturn(List.of(classifiedArticle(42L, "short content")));
+        when(embeddingTransformationService.transformForArticle("Title", "short content"))
+                .thenThrow(new LlmUnavailableException("LLM task transform rejected: circuit open"));
+        when(jobRepository.markFailedWithRetry(eq(1L), eq(WORKER_ID), any(), any())).thenReturn(true);
+
+        drain(worker);
+
+        verify(jobRepository).markFailedWithRetry(eq(1L), eq(WORKER_ID), any(), any());
+        verify(vectorUpsertBatcher, never()).submit(any());
+        verify(articleRepository, never()).updateEmbeddingLineage(any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void runQueueRetriesJobsWhenTheEmbeddingServerIsUnreachable() {
+        DocumentIndexingWorkerService worker = newWorker(4);
+
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any())).thenReturn(List.of(articleJob(1L, 42L, 0)));
+        when(articleRepository.findArticlesByIdIn(List.of(42L))).thenReturn(List.of(classifiedArticle(42L, "short content")));
+        when(embeddingTransformationService.transformForArticle("Title", "short content"))
+                .thenReturn(List.of(new EmbeddingTransformationService.EmbeddingVariant("original", "short content")));
+        when(vectorUpsertBatcher.submit(any())).thenReturn(CompletableFuture.failedFuture(new ResourceAccessException("Connection refused")));
+        when(jobRepository.markFailedWithRetry(eq(1L), eq(WORKER_ID), any(), any())).thenReturn(true);
+
+        drain(worker);
+
+        verify(jobRepository).markFailedWithRetry(eq(1L), eq(WORKER_ID), any(), any());
+        verify(jobRepository, never()).markDeadLetter(anyLong(), any(), any(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void runQueueEmbedsLongContentInChunksWithoutChatModelCalls() {
+        DocumentIndexingWorkerService worker = newWorker(4);
+        String content = "A sentence of about forty characters. ".repeat(60);
+        ArticleEntity article = classifiedArticle(42L, content);
+
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any())).thenReturn(List.of(articleJob(1L, 42L, 0)));
+        when(articleRepository.findArticlesByIdIn(List.of(42L))).thenReturn(List.of(article));
+
+        drain(worker);
+
+        ArgumentCaptor<List<DocumentChunker.Chunk>> chunks = ArgumentCaptor.forClass(List.class);
+        verify(vectorStoreService).toChunkDocuments(eq(42L), eq(DocumentType.ARTICLE.value()), eq("Title"), chunks.capture(), any());
+        assertEquals(3, chunks.getValue().size());
+        verify(semanticSummaryService, never()).summarizeDocumentForEmbedding(anyString(), anyString());
+        verify(embeddingTransformationService, never()).transformForArticle(anyString(), anyString());
+        verify(vectorStoreService).deleteOtherDocuments(eq(DocumentType.ARTICLE.value()), eq(42L), any());
+        assertEquals(List.of(1L), succeededJobIds());
+        verify(articleRepository).updateEmbeddingLineage(aryEq(new Long[]{42L}), any(),
+                aryEq(new String[]{ContentHashes.embeddingSource("test-model", "Title", content, null, "chunks:1000/150")}),
+                eq("SUCCEEDED"), eq("worker"), eq("test-model"), any());
+    }
+
+    @Test
+    void runQueueLoadsClaimedDocumentsWithOneQueryPerTable() {
+        DocumentIndexingWorkerService worker = newWorker(4);
+
+        DocumentIndexingJobRecord discussionJob = new DocumentIndexingJobRecord(
+                3L, DocumentIndexingJobType.EMBED_UPSERT.name(), DocumentType.DISCUSSION.value(), 30L,
+                DocumentIndexingJobStatus.RUNNING, 0, 5, OffsetDateTime.now(), null, null, null, null, null,
+                OffsetDateTime.now(), OffsetDateTime.now());
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any()))
+                .thenReturn(List.of(articleJob(1L, 10L, 0), articleJob(2L, 20L, 0), discussionJob));
+        stubArticles();
+
+        DiscussionEntity discussion = new DiscussionEntity();
+        discussion.setId(30L);
+        discussion.setTitle("Reply");
+        discussion.setContent("reply content");
+        DiscussionJpaRepository.RootArticle rootArticle = mock(DiscussionJpaRepository.RootArticle.class);
+        when(rootArticle.getDiscussionId()).thenReturn(30L);
+        when(rootArticle.getArticleId()).thenReturn(10L);
+        when(rootArticle.getArticleTitle()).thenReturn("Root title");
+        when(discussionRepository.findDiscussionsByIdIn(List.of(30L))).thenReturn(List.of(discussion));
+        when(discussionRepository.findRootArticles(List.of(30L))).thenReturn(List.of(rootArticle));
+        when(embeddingTransformationService.transformForArticle(anyString(), anyString()))
+                .thenReturn(List.of(new EmbeddingTransformationService.EmbeddingVariant("original", "short content")));
+        when(embeddingTransformationService.transformForDiscussion("Root title", "Reply", "reply content"))
+                .thenReturn(List.of(new EmbeddingTransformationService.EmbeddingVariant("original", "reply content")));
+
+        drain(worker);
+
+        verify(articleRepository).findArticlesByIdIn(List.of(10L, 20L));
+        verify(articleRepository, never()).findArticleById(anyLong());
+        verify(discussionRepository, never()).findDiscussionById(anyLong());
+        verify(embeddingTransformationService).transformForDiscussion("Root title", "Reply", "reply content");
+        assertEquals(List.of(1L, 2L, 3L), succeededJobIds());
+    }
+
+    @Test
+    void runQueueClassifiesOnlyNewOrChangedDiscussions() {
+        DocumentIndexingWorkerService worker = newWorker(4);
+        ArticleEntity article = classifiedArticle(42L, "article content");
+        DiscussionEntity root = discussion(100L, null, "root");
+        DiscussionEntity unchanged = discussion(101L, root, "unchanged reply");
+        DiscussionEntity edited = discussion(102L, root, "edited reply");
+        DiscussionEntity added = discussion(103L, root, "new reply");
+        markClassified(root, ContentHashes.classificationInput("Title", "article content", "root"));
+        markClassified(unchanged, ContentHashes.classificationInput(null, "root", "unchanged reply"));
+        markClassified(edited, ContentHashes.classificationInput(null, "root", "original reply"));
+
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any())).thenReturn(List.of(classifyJob(1L, 42L)));
+        when(jobRepository.markSucceeded(eq(1L), eq(WORKER_ID), any())).thenReturn(true);
+        when(articleRepository.findArticleById(42L)).thenReturn(Optional.of(article));
+        when(discussionRepository.findRootDiscussionsByArticleDocumentIdOrderByIdAsc(42L)).thenReturn(List.of(root));
+        when(discussionRepository.findAllById(any())).thenReturn(List.of(edited, added));
+        when(discussionClassificationService.classify(any())).thenReturn(Map.of(
+                102L, new DiscussionClassificationService.DiscussionClassification("negative", "in_depth"),
+                103L, new DiscussionClassificationService.DiscussionClassification("positive", "trivial")));
+
+        drain(worker);
+
+        ArgumentCaptor<DiscussionClassificationService.DiscussionClassificationInput> input =
+                ArgumentCaptor.forClass(DiscussionClassificationService.DiscussionClassificationInput.class);
+        verify(discussionClassificationService).classify(input.capture());
+        assertEquals(4, input.getValue().discussions().size());
+        assertEquals(Set.of(102L, 103L), input.getValue().targetIds());
+        verify(discussionRepository).findAllById(Set.of(102L, 103L));
+        assertEquals("negative", edited.getSentiment());
+        assertEquals(ContentHashes.classificationInput(null, "root", "edited reply"), edited.getClassificationInputHash());
+        assertEquals(ContentHashes.classificationInput(null, "root", "new reply"), added.getClassificationInputHash());
+        assertEquals(ClassificationStatus.SUCCEEDED, added.getClassificationStatus());
+        assertEquals(null, unchanged.getSentiment());
+    }
+
+    @Test
+    void runQueueLeavesFallbackClassificationsToBeRetried() {
+        DocumentIndexingWorkerService worker = newWorker(4);
+        DiscussionEntity root = discussion(100L, null, "root");
+
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any())).thenReturn(List.of(classifyJob(1L, 42L)));
+        when(articleRepository.findArticleById(42L)).thenReturn(Optional.of(classifiedArticle(42L, "article content")));
+        when(discussionRepository.findRootDiscussionsByArticleDocumentIdOrderByIdAsc(42L)).thenReturn(List.of(root));
+        when(discussionRepository.findAllById(any())).thenReturn(List.of(root));
+        when(discussionClassificationService.classify(any())).thenReturn(Map.of(
+                100L, new DiscussionClassificationService.DiscussionClassification("neutral", "substantive", true)));
+
+        drain(worker);
+
+        assertEquals("worker:fallback", root.getClassificationSource());
+        assertEquals(null, root.getClassificationInputHash());
+    }
+
+    @Test
+    void runQueueReclassifiesRootsOnlyWhenArticleContentChanged() {
+        DocumentIndexingWorkerService worker = newWorker(4);
+        ArticleEntity article = classifiedArticle(42L, "revised article content");
+        DiscussionEntity root = discussion(100L, null, "root");
+        DiscussionEntity reply = discussion(101L, root, "reply");
+        markClassified(root, ContentHashes.classificationInput("Title", "article content", "root"));
+        markClassified(reply, ContentHashes.classificationInput(null, "root", "reply"));
+
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any())).thenReturn(List.of(classifyJob(1L, 42L)));
+        when(articleRepository.findArticleById(42L)).thenReturn(Optional.of(article));
+        when(discussionRepository.findRootDiscussionsByArticleDocumentIdOrderByIdAsc(42L)).thenReturn(List.of(root));
+        when(discussionRepository.findAllById(any())).thenReturn(List.of(root));
+        when(discussionClassificationService.classify(any())).thenReturn(Map.of(
+                100L, new DiscussionClassificationService.DiscussionClassification("positive", "substantive")));
+
+        drain(worker);
+
+        ArgumentCaptor<DiscussionClassificationService.DiscussionClassificationInput> input =
+                ArgumentCaptor.forClass(DiscussionClassificationService.DiscussionClassificationInput.class);
+        verify(discussionClassificationService).classify(input.capture());
+        assertEquals(Set.of(100L), input.getValue().targetIds());
+        assertEquals(ContentHashes.classificationInput("Title", "revised article content", "root"), root.getClassificationInputHash());
+    }
+
+    @Test
+    void runQueueSkipsClassificationWhenNoDiscussionChanged() {
+        DocumentIndexingWorkerService worker = newWorker(4);
+        DiscussionEntity root = discussion(100L, null, "root");
+        markClassified(root, ContentHashes.classificationInput("Title", "article content", "root"));
+
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any())).thenReturn(List.of(classifyJob(1L, 42L)));
+        when(articleRepository.findArticleById(42L)).thenReturn(Optional.of(classifiedArticle(42L, "article content")));
+        when(discussionRepository.findRootDiscussionsByArticleDocumentIdOrderByIdAsc(42L)).thenReturn(List.of(root));
+
+        drain(worker);
+
+        verify(discussionClassificationService, never()).classify(any());
+        verify(discussionRepository, never()).saveAll(any());
+        verify(jobRepository).markSucceeded(eq(1L), eq(WORKER_ID), any());
     }
 
     @Test
     void runQueueRetriesTransientFailuresWithBackoff() {
-        DocumentIndexingJobRepository jobRepository = mock(DocumentIndexingJobRepository.class);
-        ArticleJpaRepository articleRepository = mock(ArticleJpaRepository.class);
-        DiscussionJpaRepository discussionRepository = mock(DiscussionJpaRepository.class);
-        EmbeddingTransformationService embeddingTransformationService = mock(EmbeddingTransformationService.class);
-        SemanticSummaryService semanticSummaryService = mock(SemanticSummaryService.class);
-        DocumentVectorStoreService vectorStoreService = mock(DocumentVectorStoreService.class);
-        DiscussionClassificationService discussionClassificationService = mock(DiscussionClassificationService.class);
-
-        DocumentIndexingWorkerService worker = new DocumentIndexingWorkerService(
-                jobRepository,
+        DocumentIndexingWorkerService worker = newWorker(4);
+
+        DocumentIndexingJobRecord job = articleJob(2L, 7L, 1);
+
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any())).thenReturn(List.of(job));
+        when(articleRepository.findArticlesByIdIn(List.of(7L))).thenThrow(new TransientDataAccessResourceException("db busy"));
+        when(jobRepository.markFailedWithRetry(eq(2L), eq(WORKER_ID), any(), any())).thenReturn(true);
+
+        drain(worker);
+
+        verify(jobRepository).markFailedWithRetry(eq(2L), eq(WORKER_ID), any(), any());
+    }
+
+    @Test
+    void runQueueSupersedesFailedJobWhenNewerJobIsPending() {
+        DocumentIndexingWorkerService worker = newWorker(4);
+
+        DocumentIndexingJobRecord job = articleJob(3L, 7L, 1);
+
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any())).thenReturn(List.of(job));
+        when(articleRepository.findArticlesByIdIn(List.of(7L))).thenThrow(new TransientDataAccessResourceException("db busy"));
+        when(jobRepository.markFailedWithRetry(eq(3L), eq(WORKER_ID), any(), any())).thenReturn(false);
+        when(jobRepository.markSuperseded(eq(3L), eq(WORKER_ID), any(), any())).thenReturn(true);
+
+        drain(worker);
+
+        verify(jobRepository).markSuperseded(eq(3L), eq(WORKER_ID), any(), any());
+        verify(jobRepository, never()).markDeadLetter(anyLong(), any(), any(), any());
+    }
+
+    @Test
+    void runQueueProcessesClaimedJobsConcurrentlyUpToConfiguredLimit() {
+        DocumentIndexingWorkerService worker = newWorker(3);
+
+        List<DocumentIndexingJobRecord> jobs = List.of(
+                articleJob(1L, 1L, 0),
+                articleJob(2L, 2L, 0),
+                articleJob(3L, 3L, 0)
+        );
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any())).thenReturn(jobs);
+        stubArticles();
+
+        CountDownLatch allInFlight = new CountDownLatch(jobs.size());
+        AtomicInteger concurrentCalls = new AtomicInteger();
+        AtomicInteger maxConcurrentCalls = new AtomicInteger();
+        when(embeddingTransformationService.transformForArticle(anyString(), anyString())).thenAnswer(invocation -> {
+            maxConcurrentCalls.accumulateAndGet(concurrentCalls.incrementAndGet(), Math::max);
+            allInFlight.countDown();
+            boolean overlapped = allInFlight.await(5, TimeUnit.SECONDS);
+            concurrentCalls.decrementAndGet();
+            assertTrue(overlapped, "jobs were not processed concurrently");
+            return List.of(new EmbeddingTransformationService.EmbeddingVariant("original", "short content"));
+        });
+
+        drain(worker);
+
+        assertEquals(3, maxConcurrentCalls.get());
+        assertEquals(List.of(1L, 2L, 3L), succeededJobIds());
+    }
+
+    @Test
+    void runQueueKeepsClaimingWhileBatchesAreFull() {
+        DocumentIndexingWorkerService worker = newWorker(4);
+
+        List<DocumentIndexingJobRecord> fullBatch = LongStream.rangeClosed(1, 10)
+                .mapToObj(id -> articleJob(id, id, 0))
+                .toList();
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any())).thenReturn(fullBatch, List.of());
+        stubArticles();
+        when(embeddingTransformationService.transformForArticle(anyString(), anyString()))
+                .thenReturn(List.of(new EmbeddingTransformationService.EmbeddingVariant("original", "short content")));
+
+        drain(worker);
+
+        verify(jobRepository, times(2)).claimBatch(eq(WORKER_ID), eq(10), any(), any());
+        assertEquals(LongStream.rangeClosed(1, 10).boxed().toList(), succeededJobIds());
+    }
+
+    @Test
+    void runQueueClaimsNextBatchWhileEarlierJobsAreStillInFlight() throws Exception {
+        DocumentIndexingWorkerService worker = newWorker(4);
+
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any())).thenReturn(
+                LongStream.rangeClosed(1, 10).mapToObj(id -> articleJob(id, id, 0)).toList(),
+                LongStream.rangeClosed(11, 20).mapToObj(id -> articleJob(id, id, 0)).toList(),
+                List.of());
+        stubArticles();
+        CountDownLatch release = new CountDownLatch(1);
+        when(embeddingTransformationService.transformForArticle(anyString(), anyString())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return List.of(new EmbeddingTransformationService.EmbeddingVariant("original", "short content"));
+        });
+
+        worker.runQueue();
+
+        verify(jobRepository, times(3)).claimBatch(eq(WORKER_ID), eq(10), any(), any());
+        verify(jobRepository, never()).markAllSucceeded(any(), any(), any());
+        release.countDown();
+        assertTrue(worker.awaitIdle(Duration.ofSeconds(5)));
+        assertEquals(LongStream.rangeClosed(1, 20).boxed().toList(), succeededJobIds());
+    }
+
+    @Test
+    void runQueueWaitsForInFlightJobsOnceMaxInFlightIsReached() throws Exception {
+        DocumentIndexingWorkerService worker = newWorker(4, 10);
+
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any())).thenReturn(
+                LongStream.rangeClosed(1, 10).mapToObj(id -> articleJob(id, id, 0)).toList(),
+                List.of());
+        stubArticles();
+        CountDownLatch transforming = new CountDownLatch(4);
+        CountDownLatch release = new CountDownLatch(1);
+        when(embeddingTransformationService.transformForArticle(anyString(), anyString())).thenAnswer(invocation -> {
+            transforming.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of(new EmbeddingTransformationService.EmbeddingVariant("original", "short content"));
+        });
+
+        Thread drain = Thread.ofVirtual().start(worker::runQueue);
+        assertTrue(transforming.await(5, TimeUnit.SECONDS));
+        verify(jobRepository, times(1)).claimBatch(eq(WORKER_ID), eq(10), any(), any());
+        release.countDown();
+        drain.join(5000);
+        assertTrue(worker.awaitIdle(Duration.ofSeconds(5)));
+
+        verify(jobRepository, times(2)).claimBatch(eq(WORKER_ID), eq(10), any(), any());
+        assertEquals(LongStream.rangeClosed(1, 10).boxed().toList(), succeededJobIds());
+    }
+
+    @Test
+    void heartbeatExtendsLeasesOfInFlightJobs() throws Exception {
+        DocumentIndexingWorkerService worker = newWorker(4);
+
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any())).thenReturn(List.of(articleJob(5L, 5L, 0)));
+        stubArticles();
+        CountDownLatch inFlight = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(embeddingTransformationService.transformForArticle(anyString(), anyString())).thenAnswer(invocation -> {
+            inFlight.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of(new EmbeddingTransformationService.EmbeddingVariant("original", "short content"));
+        });
+
+        Thread drain = Thread.ofVirtual().start(worker::runQueue);
+        assertTrue(inFlight.await(5, TimeUnit.SECONDS));
+        when(jobRepository.extendLeases(eq(WORKER_ID), any(), any())).thenReturn(1);
+        worker.heartbeat();
+        release.countDown();
+        drain.join(5000);
+        assertTrue(worker.awaitIdle(Duration.ofSeconds(5)));
+
+        verify(jobRepository).extendLeases(eq(WORKER_ID), eq(List.of(5L)), any());
+        worker.heartbeat();
+        verify(jobRepository, times(1)).extendLeases(any(), any(), any());
+    }
+
+    @Test
+    void heartbeatExtendsLeasesWhileScheduledDrainIsBlocked() throws Exception {
+        DocumentIndexingWorkerService worker = newWorker(4, 10);
+
+        when(jobRepository.claimBatch(eq(WORKER_ID), eq(10), any(), any())).thenReturn(
+                LongStream.rangeClosed(1, 10).mapToObj(id -> articleJob(id, id, 0)).toList(),
+                List.of());
+        stubArticles();
+        CountDownLatch inFlight = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(embeddingTransformationService.transformForArticle(anyString(), anyString())).thenAnswer(invocation -> {
+            inFlight.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of(new EmbeddingTransformationService.EmbeddingVariant("original", "short content"));
+        });
+        when(jobRepository.extendLeases(eq(WORKER_ID), any(), any())).thenReturn(10);
+
+        // The scheduled poll hands the drain off, so the scheduler thread is free for the
+        // heartbeat while the drain waits for max-in-flight permits.
+        worker.pollQueue();
+        assertTrue(inFlight.await(5, TimeUnit.SECONDS));
+        worker.heartbeat();
+        release.countDown();
+        verify(jobRepository, timeout(5000).times(2)).claimBatch(eq(WORKER_ID), eq(10), any(), any());
+        assertTrue(worker.awaitIdle(Duration.ofSeconds(5)));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<Long>> extended = ArgumentCaptor.forClass(Collection.class);
+        verify(jobRepository).extendLeases(eq(WORKER_ID), extended.capture(), any());
+        assertEquals(LongStream.rangeClosed(1, 10).boxed().toList(), extended.getValue().stream().sorted().toList());
+    }
+
+    private DocumentIndexingWorkerService newWorker(int concurrency) {
+        return newWorker(concurrency, 200);
+    }
+
+    private DocumentIndexingWorkerService newWorker(int concurrency, int maxInFlight) {
+        DocumentEmbeddingPipeline pipeline = new DocumentEmbeddingPipeline(
                 articleRepository,
                 discussionRepository,
                 embeddingTransformationService,
                 semanticSummaryService,
                 vectorStoreService,
+                vectorUpsertBatcher,
+                new DocumentChunker(new DocumentChunkingProperties(true, 1000, 150, Map.of())),
+                TransactionOperations.withoutTransaction(),
+                meterRegistry,
+                1200,
+                "test-model",
+                32,
+                concurrency,
+                concurrency,
+                64,
+                2,
+                32
+        );
+        pipelines.add(pipeline);
+        return new DocumentIndexingWorkerService(
+                jobRepository,
+                articleRepository,
+                discussionRepository,
+                pipeline,
                 discussionClassificationService,
+                TransactionOperations.withoutTransaction(),
                 10,
+                concurrency,
+                maxInFlight,
                 1000,
-                1200,
-                "test-model"
+                false,
+                30000,
+                WORKER_ID,
+                60000
         );
+    }
 
-        DocumentIndexingJobRecord job = new DocumentIndexingJobRecord(
-                2L,
-                DocumentIndexingJobType.EMBED_UPSERT.name(),
+    private static void drain(DocumentIndexingWorkerService worker) {
+        worker.runQueue();
+        try {
+            assertTrue(worker.awaitIdle(Duration.ofSeconds(5)), "claimed jobs did not finish");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void stubArticles() {
+        when(articleRepository.findArticlesByIdIn(any())).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(id -> {
+                ArticleEntity article = new ArticleEntity();
+                article.setId(id);
+                article.setTitle("Title");
+                article.setContent("short content");
+                return article;
+            }).toList();
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Long> succeededJobIds() {
+        ArgumentCaptor<Collection<Long>> jobIds = ArgumentCaptor.forClass(Collection.class);
+        verify(jobRepository, atLeastOnce()).markAllSucceeded(jobIds.capture(), eq(WORKER_ID), any());
+        return jobIds.getAllValues().stream().flatMap(Collection::stream).sorted().toList();
+    }
+
+    private ArticleEntity classifiedArticle(long id, String content) {
+        ArticleEntity article = new ArticleEntity();
+        article.setId(id);
+        article.setTitle("Title");
+        article.setContent(content);
+        return article;
+    }
+
+    private DiscussionEntity discussion(long id, DiscussionEntity parent, String content) {
+        DiscussionEntity discussion = new DiscussionEntity();
+        discussion.setId(id);
+        discussion.setTitle("Discussion " + id);
+        discussion.setContent(content);
+        if (parent != null) {
+            discussion.setParentDiscussion(parent);
+            parent.getResponses().add(discussion);
+        }
+        return discussion;
+    }
+
+    private void markClassified(DiscussionEntity discussion, String inputHash) {
+        discussion.setClassificationStatus(ClassificationStatus.SUCCEEDED);
+        discussion.setClassificationInputHash(inputHash);
+    }
+
+    private DocumentIndexingJobRecord classifyJob(long jobId, long articleId) {
+        return new DocumentIndexingJobRecord(
+                jobId,
+                DocumentIndexingJobType.DISCUSSION_CLASSIFY.name(),
                 DocumentType.ARTICLE.value(),
-                7L,
-                DocumentIndexingJobStatus.PENDING,
-                1,
+                articleId,
+                DocumentIndexingJobStatus.RUNNING,
+                0,
                 5,
                 OffsetDateTime.now(),
                 null,
                 null,
                 null,
+                null,
+                null,
                 OffsetDateTime.now(),
                 OffsetDateTime.now()
         );
+    }
 
-        when(jobRepository.pollDue(eq(DocumentIndexingJobStatus.PENDING), any(), eq(10))).thenReturn(List.of(job));
-        when(jobRepository.claimPending(eq(2L), any())).thenReturn(true);
-        when(articleRepository.findArticleById(7L)).thenThrow(new TransientDataAccessResourceException("db busy"));
-        when(jobRepository.markFailedWithRetry(eq(2L), any(), any())).thenReturn(true);
-
-        worker.runQueue();
-
-        verify(jobRepository).markFailedWithRetry(eq(2L), any(), any());
+    private DocumentIndexingJobRecord articleJob(long jobId, long articleId, int attempt) {
+        return new DocumentIndexingJobRecord(
+                jobId,
+                DocumentIndexingJobType.EMBED_UPSERT.name(),
+                DocumentType.ARTICLE.value(),
+                articleId,
+                DocumentIndexingJobStatus.RUNNING,
+                attempt,
+                5,
+                OffsetDateTime.now(),
+                null,
+                null,
+                null,
+                null,
+                null,
+                OffsetDateTime.now(),
+                OffsetDateTime.now()
+        );
     }
 }
@@ -1,22 +1,37 @@
 package com.dreikraft.ai.embedding.postgres.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
 
+import java.sql.ResultSet;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class DocumentVectorStoreServiceTest {
+    private final EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
 
     @Test
     void searchUsesConfiguredSimilarityThresholdAndEntityMetadata() {
@@ -26,7 +41,7 @@ class DocumentVectorStoreServiceTest {
         when(vectorStore.similaritySearch(any(SearchRequest.class)))
                 .thenReturn(List.of(result));
 
-        DocumentVectorStoreService service = new DocumentVectorStoreService(vectorStore, 0.75);
+        DocumentVectorStoreService service = newService(vectorStore);
 
         List<Long> ids = service.searchIds("java", 10, null);
 
@@ -36,10 +51,91 @@ class DocumentVectorStoreServiceTest {
         assertEquals(List.of(42L), ids);
     }
 
+    @Test
+    void searchOnPgvectorReusesCachedQueryEmbeddingAndTranslatesFilter() throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        VectorStore vectorStore = PgVectorStore.builder(jdbcTemplate, embeddingModel).build();
+        when(embeddingModel.embed("java streams")).thenReturn(new float[]{0.1f, 0.2f});
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.getString(1)).thenReturn("42", "42", "7", "42", "42", "7");
+        when(resultSet.getDouble(2)).thenReturn(0.1, 0.2, 0.3, 0.1, 0.2, 0.3);
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(), any(), any(), any())).thenAnswer(invocation -> {
+            RowMapper<?> rowMapper = invocation.getArgument(1);
+            List<Object> rows = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                rows.add(rowMapper.mapRow(resultSet, i));
+            }
+            return rows;
+        });
+        DocumentVectorStoreService service = newService(vectorStore);
+
+        List<Long> first = service.searchIds("java streams", 10, "entityType == 'article'");
+        List<DocumentVectorStoreService.ScoredId> second = service.searchScoredIds(" java   streams ", 10, "entityType == 'article'");
+
+        assertEquals(List.of(42L, 7L), first);
+        assertEquals(List.of(new DocumentVectorStoreService.ScoredId(42L, 0.9), new DocumentVectorStoreService.ScoredId(7L, 0.7)), second);
+        verify(embeddingModel, times(1)).embed("java streams");
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, times(2)).query(sql.capture(), any(RowMapper.class), any(), any(), eq(0.25), eq(40));
+        assertTrue(sql.getValue().contains("FROM public.vector_store"), sql.getValue());
+        assertTrue(sql.getValue().contains("metadata::jsonb @@ '$.entityType == \"article\"'::jsonpath"), sql.getValue());
+    }
+
+    @Test
+    void searchAggregatesVectorHitsToLimitEntities() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        VectorStore vectorStore = PgVectorStore.builder(jdbcTemplate, embeddingModel).build();
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(), any(), any(), any())).thenReturn(List.of(
+                new DocumentVectorStoreService.ScoredId(42L, 0.9),
+                new DocumentVectorStoreService.ScoredId(42L, 0.85),
+                new DocumentVectorStoreService.ScoredId(7L, 0.8),
+                new DocumentVectorStoreService.ScoredId(42L, 0.75),
+                new DocumentVectorStoreService.ScoredId(9L, 0.7)));
+        DocumentVectorStoreService service = newService(vectorStore);
+
+        List<DocumentVectorStoreService.ScoredId> hits = service.searchScoredIds(new float[]{0.1f}, 2, null);
+
+        assertEquals(List.of(new DocumentVectorStoreService.ScoredId(42L, 0.9), new DocumentVectorStoreService.ScoredId(7L, 0.8)), hits);
+        verify(jdbcTemplate).query(anyString(), any(RowMapper.class), any(), any(), eq(0.25), eq(8));
+    }
+
+    @Test
+    void findVariantEmbeddingsGroupsStoredVectorsByEntityId() throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        VectorStore vectorStore = PgVectorStore.builder(jdbcTemplate, embeddingModel).build();
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.getString(1)).thenReturn("7", "7", "9");
+        when(resultSet.getString(2)).thenReturn("[1,0]", "[0,1]", "[0.5,0.5]");
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (int i = 0; i < 3; i++) {
+                handler.processRow(resultSet);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq("article"), any(String[].class));
+        DocumentVectorStoreService service = newService(vectorStore);
+
+        Map<Long, List<float[]>> embeddings = service.findVariantEmbeddings("article", List.of(7L, 9L));
+
+        assertEquals(2, embeddings.get(7L).size());
+        assertArrayEquals(new float[]{0, 1}, embeddings.get(7L).get(1));
+        assertArrayEquals(new float[]{0.5f, 0.5f}, embeddings.get(9L).get(0));
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).query(sql.capture(), any(RowCallbackHandler.class), eq("article"), eq(new String[]{"7", "9"}));
+        assertTrue(sql.getValue().contains("FROM public.vector_store"), sql.getValue());
+    }
+
+    @Test
+    void findVariantEmbeddingsIsEmptyForStoresWithoutVectorAccess() {
+        DocumentVectorStoreService service = newService(mock(VectorStore.class));
+
+        assertTrue(service.findVariantEmbeddings("article", List.of(7L)).isEmpty());
+    }
+
     @Test
     void upsertVariantsStoresMultipleEmbeddingDocumentsPerEntity() {
         VectorStore vectorStore = mock(VectorStore.class);
-        DocumentVectorStoreService service = new DocumentVectorStoreService(vectorStore, 0.75);
+        DocumentVectorStoreService service = newService(vectorStore);
 
         service.upsertVariants(7L, "article", "A title", List.of(
                 new EmbeddingTransformationService.EmbeddingVariant("original", "A body"),
@@ -64,4 +160,42 @@ class DocumentVectorStoreServiceTest {
         assertEquals("original", added.get(0).getMetadata().get("embeddingVariant"));
         assertFalse(added.get(0).getMetadata().containsKey("discussionItemId"));
     }
+
+    @Test
+    void toChunkDocumentsRecordsChunkOffsets() {
+        DocumentVectorStoreService service = newService(mock(VectorStore.class));
+
+        List<Document> documents = service.toChunkDocuments(7L, "article", "A title", List.of(
+                new DocumentChunker.Chunk(0, 0, 12, "First part."),
+                new DocumentChunker.Chunk(1, 8, 25, "part. Second part.")
+        ), Map.of("sampleType", "article"));
+
+        assertEquals(List.of("article:7:0", "article:7:1"), documents.stream().map(Document::getId).toList());
+        assertEquals("part. Second part.", documents.get(1).getText());
+        Map<String, Object> metadata = documents.get(1).getMetadata();
+        assertEquals("chunk", metadata.get("embeddingVariant"));
+        assertEquals(1, metadata.get("chunkIndex"));
+        assertEquals(8, metadata.get("chunkStart"));
+        assertEquals(25, metadata.get("chunkEnd"));
+        assertEquals(7L, metadata.get("entityId"));
+        assertEquals("article", metadata.get("sampleType"));
+    }
+
+    @Test
+    void deleteOtherDocumentsKeepsOnlyTheGivenIdsOfTheEntity() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        VectorStore vectorStore = PgVectorStore.builder(jdbcTemplate, embeddingModel).build();
+        DocumentVectorStoreService service = newService(vectorStore);
+
+        service.deleteOtherDocuments("article", 7L, List.of("article:7:0", "article:7:1"));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).update(sql.capture(), eq("article"), eq("7"), eq(new String[]{"article:7:0", "article:7:1"}));
+        assertTrue(sql.getValue().startsWith("DELETE FROM public.vector_store"), sql.getValue());
+    }
+
+    private DocumentVectorStoreService newService(VectorStore vectorStore) {
+        QueryEmbeddingCache queryEmbeddingCache = new QueryEmbeddingCache(embeddingModel, new SimpleMeterRegistry(), 10);
+        return new DocumentVectorStoreService(vectorStore, queryEmbeddingCache, "public", "vector_store", 0.75, 4);
+    }
 }
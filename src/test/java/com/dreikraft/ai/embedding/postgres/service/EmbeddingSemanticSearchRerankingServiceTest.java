@@ -0,0 +1,191 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import com.dreikraft.ai.embedding.postgres.model.ArticleDocument;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EmbeddingSemanticSearchRerankingServiceTest {
+    private static final Pattern CANDIDATE_ID = Pattern.compile("\"id\":(\\d+)");
+    private static final int CANDIDATES = 20;
+    private static final int DIMENSIONS = 256;
+    private static final int QUERIES = 50;
+
+    private final DocumentVectorStoreService vectorStoreService = mock(DocumentVectorStoreService.class);
+    private final QueryEmbeddingCache queryEmbeddingCache = mock(QueryEmbeddingCache.class);
+    private final LlmGateway llmGateway = new LlmGateway(new LlmGatewayProperties(
+            8, 0, 5000, 60000,
+            new LlmGatewayProperties.RateLimit(0, 4),
+            new LlmGatewayProperties.Breaker(5, 30000),
+            Map.of()
+    ), new SimpleMeterRegistry());
+
+    @AfterEach
+    void tearDown() {
+        llmGateway.shutdown();
+    }
+
+    @Test
+    void rerankOrdersByBestVariantSimilarityBlendedWithBaselineRank() {
+        when(queryEmbeddingCache.embed("query")).thenReturn(new float[]{1, 0});
+        when(vectorStoreService.findVariantEmbeddings("article", List.of(1L, 2L, 3L))).thenReturn(Map.of(
+                1L, List.of(new float[]{0, 1}),
+                2L, List.of(new float[]{0, 1}, new float[]{1, 0}),
+                3L, List.of(new float[]{1, 1})
+        ));
+        EmbeddingSemanticSearchRerankingService service = new EmbeddingSemanticSearchRerankingService(vectorStoreService, queryEmbeddingCache, 0.7);
+
+        assertEquals(List.of(2L, 3L, 1L), service.rerank("query", List.of(1L, 2L, 3L), List.of()));
+    }
+
+    @Test
+    void rerankKeepsBaselineOrderWithoutStoredVectors() {
+        when(vectorStoreService.findVariantEmbeddings(eq("article"), anyCollection())).thenReturn(Map.of());
+        EmbeddingSemanticSearchRerankingService service = new EmbeddingSemanticSearchRerankingService(vectorStoreService, queryEmbeddingCache, 0.7);
+
+        assertEquals(List.of(3L, 1L, 2L), service.rerank("query", List.of(3L, 1L, 2L), List.of()));
+        verify(queryEmbeddingCache, never()).embed("query");
+    }
+
+    /**
+     * Synthetic data set: every candidate has a hidden relevance; its variant vectors point towards
+     * the query in proportion to that relevance plus noise, and the baseline ranking is a noisier
+     * estimate of it. The stand-in LLM reranker orders by the hidden relevance, so its order is the
+     * reference the embedding reranker is scored against.
+     */
+    @Test
+    void embeddingRerankerAgreesWithLlmRerankerBetterThanBaselineOrder() {
+        Random random = new Random(42);
+        Map<Long, Double> relevance = new HashMap<>();
+        ChatModel llm = prompt -> {
+            List<Long> ranked = candidateIds(prompt.getUserMessage().getText()).stream()
+                    .sorted(Comparator.comparing((Long id) -> relevance.get(id)).reversed())
+                    .toList();
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(ranked.toString()))));
+        };
+        LlmSemanticSearchRerankingService llmReranker = new LlmSemanticSearchRerankingService(
+                ChatClient.builder(llm), new ObjectMapper(), llmGateway, "test-model");
+        EmbeddingSemanticSearchRerankingService embeddingReranker = new EmbeddingSemanticSearchRerankingService(
+                vectorStoreService, queryEmbeddingCache, 0.7);
+
+        double baselineTau = 0;
+        double embeddingTau = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            String query = "query " + q;
+            float[] queryVector = randomUnitVector(random);
+            Map<Long, List<float[]>> variants = new HashMap<>();
+            List<ArticleDocument> candidates = new ArrayList<>();
+            Map<Long, Double> baselineScore = new HashMap<>();
+            for (long id = q * 100L; id < q * 100L + CANDIDATES; id++) {
+                double hidden = random.nextDouble();
+                relevance.put(id, hidden);
+                baselineScore.put(id, hidden + random.nextGaussian() * 0.3);
+                List<float[]> candidateVariants = new ArrayList<>();
+                for (int v = 0; v < 3; v++) {
+                    candidateVariants.add(towards(queryVector, hidden + random.nextGaussian() * 0.1, random));
+                }
+                variants.put(id, candidateVariants);
+                candidates.add(new ArticleDocument(id, "Title " + id, "Content " + id, null));
+            }
+            List<Long> baseline = baselineScore.entrySet().stream()
+                    .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
+                    .map(Map.Entry::getKey)
+                    .toList();
+            when(queryEmbeddingCache.embed(query)).thenReturn(queryVector);
+            when(vectorStoreService.findVariantEmbeddings("article", baseline)).thenReturn(variants);
+
+            List<Long> llmOrder = llmReranker.rerank(query, baseline, candidates);
+            List<Long> embeddingOrder = embeddingReranker.rerank(query, baseline, candidates);
+
+            baselineTau += kendallTau(baseline, llmOrder);
+            embeddingTau += kendallTau(embeddingOrder, llmOrder);
+        }
+
+        assertTrue(embeddingTau > baselineTau, "embedding " + embeddingTau / QUERIES + ", baseline " + baselineTau / QUERIES);
+    }
+
+    private static List<Long> candidateIds(String text) {
+        List<Long> ids = new ArrayList<>();
+        Matcher matcher = CANDIDATE_ID.matcher(text);
+        while (matcher.find()) {
+            ids.add(Long.parseLong(matcher.group(1)));
+        }
+        return ids;
+    }
+
+    private static float[] randomUnitVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return normalize(vector);
+    }
+
+    /**
+     * A unit vector whose cosine similarity to {@code target} grows with {@code weight}.
+     */
+    private static float[] towards(float[] target, double weight, Random random) {
+        float[] noise = randomUnitVector(random);
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) (weight * target[i] + noise[i]);
+        }
+        return normalize(vector);
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private static double kendallTau(List<Long> ranking, List<Long> reference) {
+        Map<Long, Integer> position = new HashMap<>();
+        for (int i = 0; i < reference.size(); i++) {
+            position.put(reference.get(i), i);
+        }
+        int concordant = 0;
+        int discordant = 0;
+        for (int i = 0; i < ranking.size(); i++) {
+            for (int j = i + 1; j < ranking.size(); j++) {
+                if (position.get(ranking.get(i)) < position.get(ranking.get(j))) {
+                    concordant++;
+                } else {
+                    discordant++;
+                }
+            }
+        }
+        return (concordant - discordant) / (double) (concordant + discordant);
+    }
+}
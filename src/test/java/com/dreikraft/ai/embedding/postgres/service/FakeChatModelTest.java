@@ -0,0 +1,102 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import com.dreikraft.ai.embedding.postgres.model.ArticleDocument;
+import com.dreikraft.ai.embedding.postgres.model.DiscussionDocument;
+import com.dreikraft.ai.embedding.postgres.service.DiscussionClassificationService.DiscussionClassification;
+import com.dreikraft.ai.embedding.postgres.service.DiscussionClassificationService.DiscussionClassificationInput;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class FakeChatModelTest {
+    private static final String CONTENT = "Java streams process elements lazily. Streams can run in parallel. "
+            + "Collectors gather stream results into collections.";
+
+    private final LlmGateway llmGateway = new LlmGateway(new LlmGatewayProperties(
+            8, 0, 5000, 60000,
+            new LlmGatewayProperties.RateLimit(0, 4),
+            new LlmGatewayProperties.Breaker(5, 30000),
+            Map.of()
+    ), new SimpleMeterRegistry());
+
+    @AfterEach
+    void tearDown() {
+        llmGateway.shutdown();
+    }
+
+    @Test
+    void transformGetsSummaryAndKeywordVariants() {
+        LlmEmbeddingTransformationService service = new LlmEmbeddingTransformationService(
+                ChatClient.builder(newModel(0, 0)), new ObjectMapper(), llmGateway);
+
+        List<EmbeddingTransformationService.EmbeddingVariant> variants = service.transformForArticle("Streams", CONTENT);
+
+        assertEquals(List.of("original", "summary", "keywords"), variants.stream().map(EmbeddingTransformationService.EmbeddingVariant::label).toList());
+        assertEquals("Java streams process elements lazily. Streams can run in parallel.", variants.get(1).content());
+        assertTrue(variants.get(2).content().startsWith("streams, "), variants.get(2).content());
+        assertEquals(variants, service.transformForArticle("Streams", CONTENT));
+    }
+
+    @Test
+    void classificationGetsALabelForEveryItem() {
+        LlmDiscussionClassificationService service = new LlmDiscussionClassificationService(
+                ChatClient.builder(newModel(0, 0)), new ObjectMapper(), llmGateway, new SimpleMeterRegistry(), 20, 100_000, 1);
+        try {
+            Map<Long, DiscussionClassification> classifications = service.classify(new DiscussionClassificationInput("Streams", CONTENT, List.of(
+                    new DiscussionDocument(1L, "Root", "Are streams lazy?", null, null, null, null, null),
+                    new DiscussionDocument(2L, "Reply", "Yes, until a terminal operation.", null, 1L, null, null, null),
+                    new DiscussionDocument(3L, "Reply", "Not always.", null, 1L, null, null, null))));
+
+            assertEquals(List.of(1L, 2L, 3L), List.copyOf(classifications.keySet()));
+            assertEquals(new DiscussionClassification("negative", "substantive"), classifications.get(1L));
+            assertFalse(classifications.values().stream().anyMatch(DiscussionClassification::fallback));
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void rerankPutsCandidatesMentioningMoreQueryWordsFirst() {
+        LlmSemanticSearchRerankingService service = new LlmSemanticSearchRerankingService(
+                ChatClient.builder(newModel(0, 0)), new ObjectMapper(), llmGateway, "fake-chat");
+
+        List<Long> ranking = service.rerank("parallel java streams", List.of(1L, 2L, 3L), List.of(
+                new ArticleDocument(1L, "Collections", "Lists and sets.", null),
+                new ArticleDocument(2L, "Streams", "Streams can run in parallel.", null),
+                new ArticleDocument(3L, "Java", "A language.", null)));
+
+        assertEquals(List.of(2L, 3L, 1L), ranking);
+    }
+
+    @Test
+    void streamedRagAnswerArrivesInChunksAfterTheInjectedLatency() {
+        RagService service = new RagService(mock(ArticleService.class), ChatClient.builder(newModel(50, 5)), llmGateway,
+                new RagContextBuilder(3000), new SimpleMeterRegistry(), "fake-chat", 60000);
+        List<String> chunks = new CopyOnWriteArrayList<>();
+
+        long started = System.nanoTime();
+        String answer = service.streamAnswer("What are streams?", List.of(new ArticleDocument(1L, "Streams", CONTENT, null)), chunks::add);
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+
+        assertEquals("Based on Streams: Java streams process elements lazily.", answer);
+        assertEquals(8, chunks.size());
+        assertTrue(elapsedMillis >= 50 + 8 * 5, "elapsed " + elapsedMillis + " ms");
+    }
+
+    private static FakeChatModel newModel(long latencyMs, long streamChunkDelayMs) {
+        return new FakeChatModel(new ObjectMapper(), new FakeLlmProperties(
+                new FakeLlmProperties.Chat(latencyMs, streamChunkDelayMs),
+                new FakeLlmProperties.Embedding(8, 0, 0)));
+    }
+}
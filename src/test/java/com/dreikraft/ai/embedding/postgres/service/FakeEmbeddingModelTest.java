@@ -0,0 +1,72 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FakeEmbeddingModelTest {
+
+    @Test
+    void embedReturnsSameUnitVectorForSameTextAtConfiguredDimensions() {
+        FakeEmbeddingModel model = newModel(0, 0);
+
+        float[] first = model.embed("Java streams are lazy");
+        float[] second = newModel(0, 0).embed("Java streams are lazy");
+
+        assertEquals(384, first.length);
+        assertEquals(384, model.dimensions());
+        assertArrayEquals(first, second);
+        assertEquals(1.0, cosine(first, first), 1e-6);
+        assertEquals(1.0, cosine(model.embed(""), model.embed("  ")), 1e-6);
+    }
+
+    @Test
+    void textsSharingWordsAreMoreSimilarThanUnrelatedTexts() {
+        FakeEmbeddingModel model = newModel(0, 0);
+        float[] query = model.embed("java streams");
+
+        double related = cosine(query, model.embed("Java streams process elements lazily"));
+        double unrelated = cosine(query, model.embed("Vienna is the capital of Austria"));
+
+        assertTrue(related > 0.5, "related " + related);
+        assertTrue(Math.abs(unrelated) < 0.2, "unrelated " + unrelated);
+    }
+
+    @Test
+    void batchedEmbeddingWaitsFixedPlusPerInputLatency() {
+        FakeEmbeddingModel model = newModel(20, 5);
+        List<Document> documents = List.of(new Document("a"), new Document("b"), new Document("c"), new Document("d"));
+
+        long started = System.nanoTime();
+        List<float[]> embeddings = model.embed(documents, EmbeddingOptions.builder().build(), new TokenCountBatchingStrategy());
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+
+        assertEquals(4, embeddings.size());
+        assertTrue(elapsedMillis >= 20 + 4 * 5, "elapsed " + elapsedMillis + " ms");
+    }
+
+    private static FakeEmbeddingModel newModel(long latencyMs, long latencyPerInputMs) {
+        return new FakeEmbeddingModel(new FakeLlmProperties(
+                new FakeLlmProperties.Chat(0, 0),
+                new FakeLlmProperties.Embedding(384, latencyMs, latencyPerInputMs)));
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+}
@@ -0,0 +1,283 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import com.dreikraft.ai.embedding.postgres.model.DiscussionDocument;
+import com.dreikraft.ai.embedding.postgres.service.DiscussionClassificationService.DiscussionClassification;
+import com.dreikraft.ai.embedding.postgres.service.DiscussionClassificationService.DiscussionClassificationInput;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LlmDiscussionClassificationServiceTest {
+    private static final Pattern ITEM_ID = Pattern.compile("\"id\":(\\d+)");
+    private static final int RESPONSE_COUNT = 100;
+
+    private final LlmGateway llmGateway = new LlmGateway(new LlmGatewayProperties(
+            8, 0, 5000, 60000,
+            new LlmGatewayProperties.RateLimit(0, 4),
+            new LlmGatewayProperties.Breaker(5, 30000),
+            Map.of()
+    ), new SimpleMeterRegistry());
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<List<Long>> responsePrompts = new CopyOnWriteArrayList<>();
+    private final List<LlmDiscussionClassificationService> services = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        services.forEach(LlmDiscussionClassificationService::shutdown);
+        llmGateway.shutdown();
+    }
+
+    @Test
+    void classifyPacksResponsesIntoBatchesBySize() {
+        LlmDiscussionClassificationService service = newService(classifyingModel(Set.of(), 0), 20, 100_000);
+
+        Map<Long, DiscussionClassification> classifications = service.classify(thread(45));
+
+        assertEquals(List.of(20, 20, 5), responsePrompts.stream().map(List::size).toList());
+        assertEquals(46, classifications.size());
+        assertEquals(new DiscussionClassification("positive", "in_depth"), classifications.get(2L));
+    }
+
+    @Test
+    void classifyStartsNewBatchWhenCharacterBudgetIsReached() {
+        LlmDiscussionClassificationService service = newService(classifyingModel(Set.of(), 0), 20, 100);
+
+        service.classify(thread(6));
+
+        // Each response and its parent add up to 39 characters, so only two fit into the budget.
+        assertEquals(List.of(2, 2, 2), responsePrompts.stream().map(List::size).toList());
+    }
+
+    @Test
+    void classifyRetriesResponsesMissingFromBatchResultInSmallerBatches() {
+        LlmDiscussionClassificationService service = newService(classifyingModel(Set.of(3L, 5L), 1), 20, 100_000);
+
+        Map<Long, DiscussionClassification> classifications = service.classify(thread(8));
+
+        assertEquals(List.of(8, 1, 1), responsePrompts.stream().map(List::size).toList());
+        assertEquals(List.of(3L), responsePrompts.get(1));
+        assertEquals(List.of(5L), responsePrompts.get(2));
+        assertEquals(new DiscussionClassification("positive", "in_depth"), classifications.get(3L));
+        assertEquals(new DiscussionClassification("positive", "in_depth"), classifications.get(5L));
+    }
+
+    @Test
+    void classifyFallsBackOnlyForResponsesTheModelNeverReturns() {
+        LlmDiscussionClassificationService service = newService(classifyingModel(Set.of(4L), Integer.MAX_VALUE), 20, 100_000);
+
+        Map<Long, DiscussionClassification> classifications = service.classify(thread(4));
+
+        assertEquals(List.of(4, 1), responsePrompts.stream().map(List::size).toList());
+        assertEquals(new DiscussionClassification("neutral", "substantive", true), classifications.get(4L));
+        assertEquals(new DiscussionClassification("positive", "in_depth"), classifications.get(3L));
+    }
+
+    @Test
+    void classifySendsOnlyTargetItemsAndKeepsTheRestAsParentContext() {
+        LlmDiscussionClassificationService service = newService(classifyingModel(Set.of(), 0), 20, 100_000);
+        DiscussionClassificationInput thread = thread(3);
+
+        Map<Long, DiscussionClassification> classifications = service.classify(new DiscussionClassificationInput(
+                thread.articleTitle(), thread.articleContent(), thread.discussions(), Set.of(3L)));
+
+        assertEquals(List.of(List.of(3L)), responsePrompts);
+        assertEquals(Set.of(3L), classifications.keySet());
+    }
+
+    @Test
+    void classifyRunsResponseBatchesConcurrentlyUpToLimitAndMergesInOrder() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch limitReached = new CountDownLatch(3);
+        ChatModel delegate = classifyingModel(Set.of(), 0);
+        ChatModel model = prompt -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            if (prompt.getContents().contains("direct parent context")) {
+                // The first three batches only finish once all of them are running.
+                limitReached.countDown();
+                await(limitReached);
+            }
+            running.decrementAndGet();
+            return delegate.call(prompt);
+        };
+        LlmDiscussionClassificationService service = newService(model, 1, 100_000, 3);
+
+        Map<Long, DiscussionClassification> classifications = service.classify(thread(9));
+
+        assertEquals(3, maxRunning.get());
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L), List.copyOf(classifications.keySet()));
+    }
+
+    @Test
+    void classifyFallsBackOnlyForTheBatchThatFailed() {
+        ChatModel delegate = classifyingModel(Set.of(), 0);
+        ChatModel model = prompt -> {
+            if (requestedIds(prompt).contains(4L)) {
+                throw new IllegalStateException("model unavailable");
+            }
+            return delegate.call(prompt);
+        };
+        LlmDiscussionClassificationService service = newService(model, 1, 100_000, 4);
+
+        Map<Long, DiscussionClassification> classifications = service.classify(thread(5));
+
+        assertEquals(new DiscussionClassification("neutral", "substantive", true), classifications.get(4L));
+        for (long id : List.of(1L, 2L, 3L, 5L, 6L)) {
+            assertEquals(new DiscussionClassification("positive", "in_depth"), classifications.get(id), "item " + id);
+        }
+        assertEquals(1.0, fallbackCount("response", "failure"));
+        assertEquals(0.0, fallbackCount("root", "failure"));
+    }
+
+    @Test
+    void classifyKeepsResponseClassificationsWhenRootsFail() {
+        ChatModel delegate = classifyingModel(Set.of(), 0);
+        ChatModel model = prompt -> {
+            if (prompt.getContents().contains("Root discussion items")) {
+                throw new IllegalStateException("model unavailable");
+            }
+            return delegate.call(prompt);
+        };
+        LlmDiscussionClassificationService service = newService(model, 20, 100_000);
+
+        Map<Long, DiscussionClassification> classifications = service.classify(thread(3));
+
+        assertEquals(new DiscussionClassification("neutral", "substantive", true), classifications.get(1L));
+        for (long id : List.of(2L, 3L, 4L)) {
+            assertEquals(new DiscussionClassification("positive", "in_depth"), classifications.get(id), "item " + id);
+        }
+        assertEquals(1.0, fallbackCount("root", "failure"));
+        assertEquals(0.0, fallbackCount("response", "failure"));
+    }
+
+    @Test
+    void classifyCountsItemsRejectedByTheGatewaySeparately() {
+        LlmGateway strictGateway = new LlmGateway(new LlmGatewayProperties(
+                8, 0, 5000, 60000,
+                new LlmGatewayProperties.RateLimit(0, 4),
+                new LlmGatewayProperties.Breaker(1, 30000),
+                Map.of()
+        ), new SimpleMeterRegistry());
+        LlmDiscussionClassificationService service = new LlmDiscussionClassificationService(
+                ChatClient.builder(prompt -> {
+                    throw new IllegalStateException("model unavailable");
+                }), new ObjectMapper(), strictGateway, meterRegistry, 20, 100_000, 1);
+        services.add(service);
+        try {
+            Map<Long, DiscussionClassification> classifications = service.classify(thread(3));
+
+            assertEquals(4, classifications.size());
+            assertEquals(1.0, fallbackCount("root", "failure"));
+            assertEquals(3.0, fallbackCount("response", "unavailable"));
+            assertEquals(0.0, fallbackCount("response", "failure"));
+        } finally {
+            strictGateway.shutdown();
+        }
+    }
+
+    @Test
+    void batchedClassificationNeedsFewerCompletionsThanOnePerResponse() {
+        Map<Long, DiscussionClassification> single = newService(classifyingModel(Set.of(), 0), 1, 100_000).classify(thread(RESPONSE_COUNT));
+        int singleCalls = responsePrompts.size();
+
+        responsePrompts.clear();
+        Map<Long, DiscussionClassification> batched = newService(classifyingModel(Set.of(), 0), 20, 100_000).classify(thread(RESPONSE_COUNT));
+        int batchedCalls = responsePrompts.size();
+
+        assertEquals(RESPONSE_COUNT, singleCalls);
+        assertEquals(5, batchedCalls);
+        assertEquals(single, batched);
+    }
+
+    private double fallbackCount(String role, String reason) {
+        return meterRegistry.get("discussion.classification.fallback").tag("role", role).tag("reason", reason).counter().count();
+    }
+
+    private LlmDiscussionClassificationService newService(ChatModel chatModel, int batchSize, int batchMaxChars) {
+        return newService(chatModel, batchSize, batchMaxChars, 1);
+    }
+
+    private LlmDiscussionClassificationService newService(ChatModel chatModel, int batchSize, int batchMaxChars, int concurrency) {
+        LlmDiscussionClassificationService service = new LlmDiscussionClassificationService(
+                ChatClient.builder(chatModel), new ObjectMapper(), llmGateway, meterRegistry, batchSize, batchMaxChars, concurrency);
+        services.add(service);
+        return service;
+    }
+
+    /**
+     * Answers every prompt with a classification for each requested id, except that ids in
+     * {@code dropped} are left out of the first {@code dropTimes} response batches they appear in.
+     */
+    private ChatModel classifyingModel(Set<Long> dropped, int dropTimes) {
+        Map<Long, Integer> dropCounts = new ConcurrentHashMap<>();
+        return prompt -> {
+            List<Long> ids = requestedIds(prompt);
+            boolean responsePrompt = prompt.getContents().contains("direct parent context");
+            if (responsePrompt) {
+                responsePrompts.add(ids);
+            }
+            List<String> items = new ArrayList<>();
+            for (Long id : ids) {
+                if (responsePrompt && dropped.contains(id) && dropCounts.merge(id, 1, Integer::sum) <= dropTimes) {
+                    continue;
+                }
+                items.add("{\"id\":" + id + ",\"sentiment\":\"positive\",\"responseDepth\":\"in_depth\"}");
+            }
+            return chatResponse("{\"items\":[" + String.join(",", items) + "]}");
+        };
+    }
+
+    private static List<Long> requestedIds(Prompt prompt) {
+        List<Long> ids = new ArrayList<>();
+        Matcher matcher = ITEM_ID.matcher(prompt.getUserMessage().getText());
+        while (matcher.find()) {
+            ids.add(Long.parseLong(matcher.group(1)));
+        }
+        return ids;
+    }
+
+    private static ChatResponse chatResponse(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    /**
+     * Builds one root entry (id 1) followed by {@code responses} replies (ids 2..n+1) to it.
+     */
+    private static DiscussionClassificationInput thread(int responses) {
+        List<DiscussionDocument> discussions = new ArrayList<>();
+        discussions.add(new DiscussionDocument(1L, "Root", "root entry text", null, null, null, null, null));
+        for (long id = 2; id <= responses + 1; id++) {
+            discussions.add(new DiscussionDocument(id, "Reply", "reply text with 25 chars", null, 1L, null, null, null));
+        }
+        return new DiscussionClassificationInput("Article", "Article content", discussions);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LlmGatewayTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private LlmGateway gateway;
+
+    @AfterEach
+    void tearDown() {
+        if (gateway != null) {
+            gateway.shutdown();
+        }
+    }
+
+    @Test
+    void callLimitsConcurrencyPerTask() throws Exception {
+        gateway = newGateway(8, 0, 5000, 60000,
+                Map.of(LlmTask.SUMMARIZE, new LlmGatewayProperties.TaskLimits(1, null)));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<Thread> callers = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            callers.add(Thread.ofVirtual().start(() -> gateway.call(LlmTask.SUMMARIZE, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(50);
+                running.decrementAndGet();
+                return "ok";
+            })));
+        }
+        for (Thread caller : callers) {
+            caller.join(5000);
+        }
+
+        assertEquals(1, maxRunning.get());
+        assertEquals(3, meterRegistry.get("llm.gateway.call").tag("task", "summarize").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void callServesWaitingInteractiveTasksBeforeBackgroundTasks() throws Exception {
+        gateway = newGateway(1, 0, 5000, 5000, Map.of());
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        Thread holder = Thread.ofVirtual().start(() -> gateway.call(LlmTask.TRANSFORM, () -> {
+            holding.countDown();
+            await(release);
+            return "held";
+        }));
+        assertTrue(holding.await(5, TimeUnit.SECONDS));
+        Thread background = Thread.ofVirtual().start(() -> gateway.call(LlmTask.CLASSIFY, () -> order.add("background")));
+        sleep(50);
+        Thread interactive = Thread.ofVirtual().start(() -> gateway.call(LlmTask.RERANK, () -> order.add("interactive")));
+        sleep(50);
+        release.countDown();
+
+        for (Thread thread : List.of(holder, background, interactive)) {
+            thread.join(5000);
+        }
+        assertEquals(List.of("interactive", "background"), order);
+    }
+
+    @Test
+    void callFailsWhenDeadlineIsMissed() {
+        gateway = newGateway(8, 0, 50, 50, Map.of());
+
+        assertThrows(LlmUnavailableException.class, () -> gateway.call(LlmTask.QUERY_REWRITE, () -> {
+            sleep(1000);
+            return "late";
+        }));
+        assertEquals(1, meterRegistry.get("llm.gateway.call").tag("task", "query-rewrite").tag("outcome", "timeout").timer().count());
+    }
+
+    @Test
+    void callStreamingAppliesTaskDeadlineOnlyUntilFirstChunk() {
+        gateway = newGateway(8, 0, 50, 50, Map.of());
+
+        assertEquals("streamed", gateway.callStreaming(LlmTask.RAG_ANSWER, Duration.ofSeconds(5), firstChunk -> {
+            firstChunk.run();
+            sleep(200);
+            return "streamed";
+        }));
+        assertThrows(LlmUnavailableException.class, () -> gateway.callStreaming(LlmTask.RAG_ANSWER, Duration.ofSeconds(5), firstChunk -> {
+            sleep(1000);
+            return "late";
+        }));
+        assertThrows(LlmUnavailableException.class, () -> gateway.callStreaming(LlmTask.RAG_ANSWER, Duration.ofMillis(100), firstChunk -> {
+            firstChunk.run();
+            sleep(1000);
+            return "too long";
+        }));
+        assertEquals(2, meterRegistry.get("llm.gateway.call").tag("task", "rag-answer").tag("outcome", "timeout").timer().count());
+    }
+
+    @Test
+    void circuitBreakerRejectsCallsAfterConsecutiveFailuresAndClosesAfterTrial() {
+        gateway = newGateway(8, 0, 5000, 5000, Map.of(), new LlmGatewayProperties.Breaker(2, 100));
+        AtomicInteger invocations = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(IllegalStateException.class, () -> gateway.call(LlmTask.SUMMARIZE, () -> {
+                invocations.incrementAndGet();
+                throw new IllegalStateException("model server down");
+            }));
+        }
+        assertThrows(LlmUnavailableException.class, () -> gateway.call(LlmTask.SUMMARIZE, invocations::incrementAndGet));
+        assertEquals(2, invocations.get());
+        assertEquals(1.0, meterRegistry.get("llm.gateway.circuit.open").tag("priority", "background").gauge().value());
+
+        sleep(150);
+        assertEquals("recovered", gateway.call(LlmTask.SUMMARIZE, () -> "recovered"));
+        assertEquals(0.0, meterRegistry.get("llm.gateway.circuit.open").tag("priority", "background").gauge().value());
+    }
+
+    @Test
+    void backgroundFailuresDoNotOpenTheBreakerForInteractiveTasks() {
+        gateway = newGateway(8, 0, 5000, 5000, Map.of(), new LlmGatewayProperties.Breaker(2, 30000));
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(IllegalStateException.class, () -> gateway.call(LlmTask.CLASSIFY, () -> {
+                throw new IllegalStateException("model server overloaded");
+            }));
+        }
+
+        assertThrows(LlmUnavailableException.class, () -> gateway.call(LlmTask.SUMMARIZE, () -> "rejected"));
+        assertEquals("answered", gateway.call(LlmTask.RAG_ANSWER, () -> "answered"));
+        assertEquals(1.0, meterRegistry.get("llm.gateway.circuit.open").tag("priority", "background").gauge().value());
+        assertEquals(0.0, meterRegistry.get("llm.gateway.circuit.open").tag("priority", "interactive").gauge().value());
+    }
+
+    @Test
+    void callSharedCollapsesConcurrentIdenticalCallsIntoOneRequest() throws Exception {
+        gateway = newGateway(8, 0, 5000, 5000, Map.of(LlmTask.RERANK, new LlmGatewayProperties.TaskLimits(2, null)));
+        int callers = 20;
+        AtomicInteger invocations = new AtomicInteger();
+        List<Object> results = new CopyOnWriteArrayList<>();
+
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            threads.add(Thread.ofVirtual().start(() -> results.add(gateway.callShared(LlmTask.RERANK, "model", "query\u0000candidates", () -> {
+                invocations.incrementAndGet();
+                await(release);
+                return "[2,1,3]";
+            }))));
+        }
+        while (meterRegistry.get("llm.gateway.collapsed").tag("task", "rerank").counter().count() < callers - 1) {
+            sleep(5);
+        }
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertEquals(1, invocations.get());
+        assertEquals(Collections.nCopies(callers, "[2,1,3]"), results);
+        assertEquals(callers - 1, meterRegistry.get("llm.gateway.collapsed").tag("task", "rerank").counter().count());
+    }
+
+    @Test
+    void callSharedKeepsDifferentModelsAndPromptsApartAndSharesFailures() throws Exception {
+        gateway = newGateway(8, 0, 5000, 5000, Map.of());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger invocations = new AtomicInteger();
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+
+        Thread leader = Thread.ofVirtual().start(() -> failures.add(assertThrows(IllegalStateException.class,
+                () -> gateway.callShared(LlmTask.RAG_ANSWER, "model", "question", () -> {
+                    invocations.incrementAndGet();
+                    started.countDown();
+                    await(release);
+                    throw new IllegalStateException("model server down");
+                }))));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Thread follower = Thread.ofVirtual().start(() -> failures.add(assertThrows(IllegalStateException.class,
+                () -> gateway.callShared(LlmTask.RAG_ANSWER, "model", "question", invocations::incrementAndGet))));
+        assertEquals("other model", gateway.callShared(LlmTask.RAG_ANSWER, "other-model", "question", () -> {
+            invocations.incrementAndGet();
+            return "other model";
+        }));
+        assertEquals("other question", gateway.callShared(LlmTask.RAG_ANSWER, "model", "other question", () -> {
+            invocations.incrementAndGet();
+            return "other question";
+        }));
+        while (meterRegistry.get("llm.gateway.collapsed").tag("task", "rag-answer").counter().count() < 1) {
+            sleep(5);
+        }
+        release.countDown();
+        leader.join(5000);
+        follower.join(5000);
+
+        assertEquals(3, invocations.get());
+        assertEquals(2, failures.size());
+        assertSame(failures.get(0), failures.get(1));
+    }
+
+    private LlmGateway newGateway(int maxConcurrency, int interactiveReserved, long interactiveTimeoutMs, long backgroundTimeoutMs,
+                                  Map<LlmTask, LlmGatewayProperties.TaskLimits> tasks) {
+        return newGateway(maxConcurrency, interactiveReserved, interactiveTimeoutMs, backgroundTimeoutMs, tasks,
+                new LlmGatewayProperties.Breaker(5, 30000));
+    }
+
+    private LlmGateway newGateway(int maxConcurrency, int interactiveReserved, long interactiveTimeoutMs, long backgroundTimeoutMs,
+                                  Map<LlmTask, LlmGatewayProperties.TaskLimits> tasks, LlmGatewayProperties.Breaker breaker) {
+        return new LlmGateway(new LlmGatewayProperties(
+                maxConcurrency,
+                interactiveReserved,
+                interactiveTimeoutMs,
+                backgroundTimeoutMs,
+                new LlmGatewayProperties.RateLimit(0, 4),
+                breaker,
+                tasks
+        ), meterRegistry);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import com.dreikraft.ai.embedding.postgres.repository.SummaryCacheRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LlmSemanticSummaryServiceTest {
+    private final LlmGateway llmGateway = new LlmGateway(new LlmGatewayProperties(
+            8, 0, 5000, 60000,
+            new LlmGatewayProperties.RateLimit(0, 4),
+            new LlmGatewayProperties.Breaker(5, 30000),
+            Map.of()
+    ), new SimpleMeterRegistry());
+    private final SummaryCacheRepository repository = mock(SummaryCacheRepository.class);
+    private final SummaryCache summaryCache = new SummaryCache(repository, new SimpleMeterRegistry(), 10);
+    private final AtomicInteger modelCalls = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        llmGateway.shutdown();
+    }
+
+    @Test
+    void summarizeDocumentCallsModelOncePerIdenticalSource() {
+        when(repository.find(anyString(), anyString(), anyString())).thenReturn(Optional.empty());
+        LlmSemanticSummaryService service = newService(prompt -> {
+            modelCalls.incrementAndGet();
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(" short summary "))));
+        });
+
+        assertEquals(new SemanticSummaryService.DocumentSummary("short summary"), service.summarizeDocumentForEmbedding("Title", "long content"));
+        assertEquals(new SemanticSummaryService.DocumentSummary("short summary"), service.summarizeDocumentForEmbedding("Title", "long content"));
+
+        assertEquals(1, modelCalls.get());
+        verify(repository).save(ContentHashes.summarySource("Title", "long content"), "test-chat-model",
+                LlmSemanticSummaryService.DOCUMENT_SUMMARY_PROMPT_VERSION, "short summary");
+    }
+
+    @Test
+    void summarizeDocumentDoesNotCacheFallbackContent() {
+        when(repository.find(anyString(), anyString(), anyString())).thenReturn(Optional.empty());
+        LlmSemanticSummaryService service = newService(prompt -> {
+            modelCalls.incrementAndGet();
+            throw new IllegalStateException("model unavailable");
+        });
+
+        assertEquals(new SemanticSummaryService.DocumentSummary("long content", true), service.summarizeDocumentForEmbedding("Title", "long content"));
+        assertEquals(new SemanticSummaryService.DocumentSummary("long content", true), service.summarizeDocumentForEmbedding("Title", "long content"));
+
+        assertEquals(2, modelCalls.get());
+        verify(repository, never()).save(anyString(), anyString(), anyString(), any());
+    }
+
+    @Test
+    void summarizeDocumentRethrowsWhenGatewayRejectsTheCall() {
+        when(repository.find(anyString(), anyString(), anyString())).thenReturn(Optional.empty());
+        LlmSemanticSummaryService service = newService(prompt -> {
+            throw new LlmUnavailableException("LLM task summarize rejected: circuit open");
+        });
+
+        assertThrows(LlmUnavailableException.class, () -> service.summarizeDocumentForEmbedding("Title", "long content"));
+        verify(repository, never()).save(anyString(), anyString(), anyString(), any());
+    }
+
+    @Test
+    void summarizeQueryCachesRewritesButNotFallbacks() {
+        AtomicInteger failures = new AtomicInteger(1);
+        LlmSemanticSummaryService service = newService(prompt -> {
+            modelCalls.incrementAndGet();
+            if (failures.getAndDecrement() > 0) {
+                throw new IllegalStateException("model unavailable");
+            }
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("rewritten query"))));
+        });
+
+        assertEquals("Original  Query", service.summarizeQueryForSemanticSearch("Original  Query"));
+        assertEquals("rewritten query", service.summarizeQueryForSemanticSearch("Original  Query"));
+        assertEquals("rewritten query", service.summarizeQueryForSemanticSearch("original query"));
+
+        assertEquals(2, modelCalls.get());
+    }
+
+    private LlmSemanticSummaryService newService(ChatModel chatModel) {
+        return new LlmSemanticSummaryService(ChatClient.builder(chatModel), summaryCache,
+                new QueryRewriteCache(new SimpleMeterRegistry(), 10, 60000), "test-chat-model", llmGateway);
+    }
+}
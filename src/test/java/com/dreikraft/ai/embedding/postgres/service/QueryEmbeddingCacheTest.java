@@ -0,0 +1,48 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class QueryEmbeddingCacheTest {
+    private final EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void embedReusesVectorForWhitespaceVariantsOfSameQuery() {
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(embeddingModel, meterRegistry, 10);
+        when(embeddingModel.embed("Berlin Wall")).thenReturn(new float[]{1f, 2f});
+
+        assertArrayEquals(new float[]{1f, 2f}, cache.embed("Berlin Wall"));
+        assertArrayEquals(new float[]{1f, 2f}, cache.embed("  Berlin \n Wall "));
+
+        verify(embeddingModel, times(1)).embed("Berlin Wall");
+        assertEquals(1, meterRegistry.get("query.embedding.cache.hits").counter().count());
+        assertEquals(1, meterRegistry.get("query.embedding.cache.misses").counter().count());
+    }
+
+    @Test
+    void embedEvictsLeastRecentlyUsedQuery() {
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(embeddingModel, meterRegistry, 2);
+        when(embeddingModel.embed(anyString())).thenReturn(new float[]{1f});
+
+        cache.embed("a");
+        cache.embed("b");
+        cache.embed("a");
+        cache.embed("c");
+        cache.embed("a");
+        cache.embed("b");
+
+        verify(embeddingModel, times(1)).embed("a");
+        verify(embeddingModel, times(2)).embed("b");
+        assertEquals(2, meterRegistry.get("query.embedding.cache.size").gauge().value());
+    }
+}
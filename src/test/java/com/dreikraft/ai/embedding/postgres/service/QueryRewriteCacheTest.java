@@ -0,0 +1,128 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryRewriteCacheTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger rewrites = new AtomicInteger();
+
+    @Test
+    void rewriteServesNormalizedQueryFromCache() {
+        QueryRewriteCache cache = new QueryRewriteCache(meterRegistry, 10, 60000);
+
+        assertEquals("rewrite 1", cache.rewrite("Berlin  Wall", "model", "1", this::countedRewrite));
+        assertEquals("rewrite 1", cache.rewrite(" berlin wall ", "model", "1", this::countedRewrite));
+        assertEquals("rewrite 2", cache.rewrite("berlin wall", "other-model", "1", this::countedRewrite));
+        assertEquals("rewrite 3", cache.rewrite("berlin wall", "model", "2", this::countedRewrite));
+
+        assertEquals(3, rewrites.get());
+        assertEquals(1, meterRegistry.get("query.rewrite.cache.hits").counter().count());
+        assertEquals(3, meterRegistry.get("query.rewrite.cache.misses").counter().count());
+        assertEquals(1, meterRegistry.get("query.rewrite.cache.saved").timer().count());
+    }
+
+    @Test
+    void rewriteExpiresEntriesAfterTtl() throws Exception {
+        QueryRewriteCache cache = new QueryRewriteCache(meterRegistry, 10, 20);
+
+        cache.rewrite("query", "model", "1", this::countedRewrite);
+        Thread.sleep(40);
+
+        assertEquals("rewrite 2", cache.rewrite("query", "model", "1", this::countedRewrite));
+    }
+
+    @Test
+    void rewriteEvictsLeastRecentlyUsedEntry() {
+        QueryRewriteCache cache = new QueryRewriteCache(meterRegistry, 2, 60000);
+
+        cache.rewrite("a", "model", "1", this::countedRewrite);
+        cache.rewrite("b", "model", "1", this::countedRewrite);
+        cache.rewrite("a", "model", "1", this::countedRewrite);
+        cache.rewrite("c", "model", "1", this::countedRewrite);
+
+        assertEquals("rewrite 1", cache.rewrite("a", "model", "1", this::countedRewrite));
+        assertEquals("rewrite 4", cache.rewrite("b", "model", "1", this::countedRewrite));
+    }
+
+    @Test
+    void rewriteDoesNotCacheFailedRewrites() {
+        QueryRewriteCache cache = new QueryRewriteCache(meterRegistry, 10, 60000);
+
+        assertNull(cache.rewrite("query", "model", "1", () -> null));
+        assertEquals("rewrite 1", cache.rewrite("query", "model", "1", this::countedRewrite));
+    }
+
+    @Test
+    void rewriteCollapsesConcurrentIdenticalMisses() throws Exception {
+        QueryRewriteCache cache = new QueryRewriteCache(meterRegistry, 10, 60000);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Thread> callers = new ArrayList<>();
+        List<String> results = new CopyOnWriteArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            callers.add(Thread.ofVirtual().start(() -> results.add(cache.rewrite("query", "model", "1", () -> {
+                await(release);
+                return countedRewrite();
+            }))));
+        }
+        while (meterRegistry.get("query.rewrite.cache.shared").counter().count() < 4) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        for (Thread caller : callers) {
+            caller.join(5000);
+        }
+
+        assertEquals(1, rewrites.get());
+        assertEquals(List.of("rewrite 1", "rewrite 1", "rewrite 1", "rewrite 1", "rewrite 1"), results);
+    }
+
+    @Test
+    void cachedRewritesCallModelOncePerDistinctSkewedQuery() {
+        int lookups = 1000;
+        int distinctQueries = 100;
+        Random random = new Random(42);
+        List<String> queries = new ArrayList<>(lookups);
+        for (int i = 0; i < lookups; i++) {
+            // Zipf-like skew: low query numbers are asked far more often than high ones.
+            int rank = (int) Math.floor(Math.pow(distinctQueries, random.nextDouble()));
+            queries.add("query " + rank);
+        }
+        long distinct = queries.stream().distinct().count();
+
+        QueryRewriteCache cache = new QueryRewriteCache(meterRegistry, 1000, 60000);
+        for (String query : queries) {
+            cache.rewrite(query, "model", "1", this::countedRewrite);
+        }
+
+        assertEquals(distinct, rewrites.get());
+        assertEquals(lookups - distinct, meterRegistry.get("query.rewrite.cache.hits").counter().count());
+        assertEquals(lookups - distinct, meterRegistry.get("query.rewrite.cache.saved").timer().count());
+        assertTrue(lookups - distinct > lookups / 2);
+    }
+
+    private String countedRewrite() {
+        return "rewrite " + rewrites.incrementAndGet();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import com.dreikraft.ai.embedding.postgres.model.ArticleDocument;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RagContextBuilderTest {
+
+    @Test
+    void keepsArticlesThatFitTheBudgetWhole() {
+        RagContextBuilder builder = new RagContextBuilder(3000);
+
+        String context = builder.build("streams", List.of(
+                article(1L, "Streams", "Streams are lazy. They run on terminal operations."),
+                article(2L, "Lambdas", "Lambdas are functions.")
+        ));
+
+        assertEquals("""
+                Title: Streams
+                Content: Streams are lazy. They run on terminal operations.
+
+                Title: Lambdas
+                Content: Lambdas are functions.
+
+                """, context);
+    }
+
+    @Test
+    void trimsLongArticleToLeadAndQueryRelevantSentencesInOriginalOrder() {
+        List<String> sentences = new ArrayList<>();
+        sentences.add("Java is a programming language.");
+        for (int i = 0; i < 40; i++) {
+            sentences.add("Filler sentence number " + i + " talks about something else entirely.");
+        }
+        sentences.add(20, "The garbage collector frees unreachable objects.");
+        sentences.add("Generational garbage collection splits the heap.");
+        RagContextBuilder builder = new RagContextBuilder(60);
+
+        String context = builder.build("How does garbage collection work?", List.of(article(1L, "Java", String.join(" ", sentences))));
+
+        assertEquals("""
+                Title: Java
+                Content: Java is a programming language. The garbage collector frees unreachable objects. Generational garbage collection splits the heap.
+
+                """, context);
+    }
+
+    @Test
+    void skipsDuplicateArticlesAndSentencesAlreadyInContext() {
+        RagContextBuilder builder = new RagContextBuilder(3000);
+
+        String context = builder.build("streams", List.of(
+                article(1L, "Streams", "Streams are lazy. They run on terminal operations."),
+                article(2L, "Streams copy", "Streams are lazy.  They run on terminal operations."),
+                article(3L, "Collectors", "Streams are lazy. Collectors gather stream elements.")
+        ));
+
+        assertFalse(context.contains("Streams copy"), context);
+        assertTrue(context.contains("Title: Collectors\nContent: Collectors gather stream elements."), context);
+    }
+
+    @Test
+    void staysWithinBudgetAndLeavesRoomForLaterReferences() {
+        String longContent = "Streams process elements lazily in a pipeline. ".repeat(200);
+        List<ArticleDocument> references = new ArrayList<>();
+        for (long id = 1; id <= 5; id++) {
+            references.add(article(id, "Article " + id, "Article " + id + " introduction sentence. " + longContent.replace("Streams", "Streams" + id)));
+        }
+        RagContextBuilder builder = new RagContextBuilder(500);
+
+        String context = builder.build("streams pipeline", references);
+
+        assertTrue(RagContextBuilder.estimateTokens(context) <= 500, "context uses " + RagContextBuilder.estimateTokens(context) + " tokens");
+        for (long id = 1; id <= 5; id++) {
+            assertTrue(context.contains("Title: Article " + id), context);
+        }
+    }
+
+    @Test
+    void estimatesAboutFourCharactersPerToken() {
+        assertEquals(0, RagContextBuilder.estimateTokens(""));
+        assertEquals(1, RagContextBuilder.estimateTokens("Java"));
+        assertEquals(3, RagContextBuilder.estimateTokens("Java streams"));
+    }
+
+    private static ArticleDocument article(long id, String title, String content) {
+        return new ArticleDocument(id, title, content, null);
+    }
+}
@@ -0,0 +1,113 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import com.dreikraft.ai.embedding.postgres.model.ArticleDocument;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class RagServiceTest {
+    private static final List<String> CHUNKS = List.of("Java", " streams", " are", " lazy", ".");
+
+    private final LlmGateway llmGateway = new LlmGateway(new LlmGatewayProperties(
+            8, 0, 5000, 60000,
+            new LlmGatewayProperties.RateLimit(0, 4),
+            new LlmGatewayProperties.Breaker(5, 30000),
+            Map.of()
+    ), new SimpleMeterRegistry());
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger emittedChunks = new AtomicInteger();
+    private final List<String> prompts = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        llmGateway.shutdown();
+    }
+
+    @Test
+    void streamAnswerHandsOutChunksAsTheyArriveAndReturnsFullAnswer() {
+        RagService service = new RagService(mock(ArticleService.class), ChatClient.builder(streamingModel()), llmGateway, new RagContextBuilder(3000), meterRegistry, "test-model", 60000);
+        List<String> received = new CopyOnWriteArrayList<>();
+        List<Long> receivedAt = new CopyOnWriteArrayList<>();
+        long started = System.nanoTime();
+
+        String answer = service.streamAnswer("What are streams?", List.of(reference()), token -> {
+            received.add(token);
+            receivedAt.add(System.nanoTime() - started);
+            return true;
+        });
+
+        assertEquals(CHUNKS, received);
+        assertEquals("Java streams are lazy.", answer);
+        assertTrue(receivedAt.getFirst() < receivedAt.getLast() - Duration.ofMillis(60).toNanos(),
+                "first chunk should arrive well before the last one");
+        assertTrue(prompts.getFirst().contains("Title: Streams"), prompts.getFirst());
+        assertEquals(1, meterRegistry.get("rag.answer.prefill").timer().count());
+        assertTrue(meterRegistry.get("rag.answer.prefill").timer().totalTime(TimeUnit.MILLISECONDS) >= 20);
+        assertTrue(meterRegistry.get("rag.prompt.tokens").summary().totalAmount() > 0);
+    }
+
+    @Test
+    void streamAnswerStopsGeneratingWhenConsumerGivesUp() {
+        RagService service = new RagService(mock(ArticleService.class), ChatClient.builder(streamingModel()), llmGateway, new RagContextBuilder(3000), meterRegistry, "test-model", 60000);
+
+        String answer = service.streamAnswer("What are streams?", List.of(reference()), token -> !token.equals(" streams"));
+
+        assertEquals("Java streams", answer);
+        assertTrue(emittedChunks.get() < CHUNKS.size(), "model kept streaming after the consumer stopped");
+    }
+
+    @Test
+    void answerWithReferencesDoesNotRetrieveAgain() {
+        ArticleService articleService = mock(ArticleService.class);
+        ChatModel model = prompt -> {
+            prompts.add(prompt.getUserMessage().getText());
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("Streams are lazy."))));
+        };
+        RagService service = new RagService(articleService, ChatClient.builder(model), llmGateway, new RagContextBuilder(3000), meterRegistry, "test-model", 60000);
+
+        assertEquals("Streams are lazy.", service.answer("What are streams?", List.of(reference())));
+        assertTrue(prompts.getFirst().contains("Content: Streams are evaluated lazily."), prompts.getFirst());
+        verifyNoInteractions(articleService);
+    }
+
+    private ChatModel streamingModel() {
+        return new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                prompts.add(prompt.getUserMessage().getText());
+                return Flux.fromIterable(CHUNKS)
+                        .delayElements(Duration.ofMillis(25))
+                        .doOnNext(chunk -> emittedChunks.incrementAndGet())
+                        .map(chunk -> new ChatResponse(List.of(new Generation(new AssistantMessage(chunk)))));
+            }
+        };
+    }
+
+    private static ArticleDocument reference() {
+        return new ArticleDocument(1L, "Streams", "Streams are evaluated lazily.", null);
+    }
+}
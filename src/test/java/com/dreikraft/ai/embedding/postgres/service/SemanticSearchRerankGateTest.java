@@ -0,0 +1,57 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import com.dreikraft.ai.embedding.postgres.service.DocumentVectorStoreService.ScoredId;
+import com.dreikraft.ai.embedding.postgres.service.SemanticSearchRerankGate.Decision;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SemanticSearchRerankGateTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SemanticSearchRerankGate gate = new SemanticSearchRerankGate(meterRegistry, true, 3, 0.04, 1000);
+
+    @Test
+    void skipsWhenThereAreTooFewCandidatesToReorder() {
+        assertEquals(Decision.TOO_FEW_CANDIDATES, gate.decide(List.of(hit(1, 0.8), hit(2, 0.79)), 0));
+    }
+
+    @Test
+    void skipsWhenBestHitLeadsByTheScoreGapEvenIfFusionRankedItLower() {
+        assertEquals(Decision.CLEAR_WINNER, gate.decide(List.of(hit(1, 0.80), hit(2, 0.86), hit(3, 0.79)), 0));
+    }
+
+    @Test
+    void reranksAmbiguousResultsWithinBudget() {
+        assertEquals(Decision.AMBIGUOUS, gate.decide(List.of(hit(1, 0.82), hit(2, 0.81), hit(3, 0.80)), 0));
+    }
+
+    @Test
+    void skipsWhenExpectedRerankLatencyWouldExceedBudget() {
+        List<ScoredId> ambiguous = List.of(hit(1, 0.82), hit(2, 0.81), hit(3, 0.80));
+        gate.recordRerankLatency(Duration.ofMillis(600).toNanos());
+
+        assertEquals(Decision.AMBIGUOUS, gate.decide(ambiguous, Duration.ofMillis(300).toNanos()));
+        assertEquals(Decision.OVER_BUDGET, gate.decide(ambiguous, Duration.ofMillis(500).toNanos()));
+    }
+
+    @Test
+    void disabledGateAlwaysReranksAndEveryDecisionIsCounted() {
+        SemanticSearchRerankGate disabled = new SemanticSearchRerankGate(meterRegistry, false, 3, 0.04, 1000);
+        assertEquals(Decision.GATE_DISABLED, disabled.decide(List.of(hit(1, 0.9)), 0));
+        gate.decide(List.of(hit(1, 0.9)), 0);
+        gate.decide(List.of(hit(1, 0.9)), 0);
+
+        assertEquals(1, meterRegistry.get("semantic.search.rerank.decisions")
+                .tags("decision", "rerank", "reason", "gate_disabled").counter().count());
+        assertEquals(2, meterRegistry.get("semantic.search.rerank.decisions")
+                .tags("decision", "skip", "reason", "too_few_candidates").counter().count());
+    }
+
+    private static ScoredId hit(long id, double score) {
+        return new ScoredId(id, score);
+    }
+}
@@ -0,0 +1,81 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import com.dreikraft.ai.embedding.postgres.repository.SummaryCacheRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SummaryCacheTest {
+    private SummaryCacheRepository repository;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(SummaryCacheRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void getServesStoredSummaryAndKeepsItInMemory() {
+        SummaryCache cache = new SummaryCache(repository, meterRegistry, 10);
+        when(repository.find("hash", "model", "1")).thenReturn(Optional.of("summary"));
+
+        assertEquals(Optional.of("summary"), cache.get("hash", "model", "1"));
+        assertEquals(Optional.of("summary"), cache.get("hash", "model", "1"));
+
+        verify(repository, times(1)).find("hash", "model", "1");
+        assertEquals(1, hits("database"));
+        assertEquals(1, hits("memory"));
+    }
+
+    @Test
+    void getCountsMissesPerModelAndPromptVersion() {
+        SummaryCache cache = new SummaryCache(repository, meterRegistry, 10);
+        when(repository.find("hash", "model", "1")).thenReturn(Optional.empty());
+        when(repository.find("hash", "other-model", "1")).thenReturn(Optional.empty());
+        cache.put("hash", "model", "2", "summary");
+
+        assertEquals(Optional.empty(), cache.get("hash", "model", "1"));
+        assertEquals(Optional.empty(), cache.get("hash", "other-model", "1"));
+
+        verify(repository).save("hash", "model", "2", "summary");
+        assertEquals(2, meterRegistry.get("summary.cache.misses").counter().count());
+    }
+
+    @Test
+    void putEvictsLeastRecentlyUsedSummaryFromMemory() {
+        SummaryCache cache = new SummaryCache(repository, meterRegistry, 2);
+        when(repository.find("a", "model", "1")).thenReturn(Optional.of("summary a"));
+        cache.put("a", "model", "1", "summary a");
+        cache.put("b", "model", "1", "summary b");
+        cache.get("b", "model", "1");
+        cache.put("c", "model", "1", "summary c");
+
+        assertEquals(Optional.of("summary a"), cache.get("a", "model", "1"));
+
+        verify(repository).find("a", "model", "1");
+        assertEquals(1, hits("database"));
+    }
+
+    @Test
+    void getTreatsUnreadableCacheAsMiss() {
+        SummaryCache cache = new SummaryCache(repository, meterRegistry, 10);
+        when(repository.find("hash", "model", "1")).thenThrow(new QueryTimeoutException("timeout"));
+
+        assertEquals(Optional.empty(), cache.get("hash", "model", "1"));
+        assertEquals(1, meterRegistry.get("summary.cache.misses").counter().count());
+    }
+
+    private double hits(String tier) {
+        return meterRegistry.get("summary.cache.hits").tag("tier", tier).counter().count();
+    }
+}
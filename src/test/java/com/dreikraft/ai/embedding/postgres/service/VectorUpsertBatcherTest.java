@@ -0,0 +1,86 @@
+package com.dreikraft.ai.embedding.postgres.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.document.Document;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class VectorUpsertBatcherTest {
+
+    @Test
+    void submissionsWithinLingerWindowAreUpsertedInOneBatch() {
+        DocumentVectorStoreService vectorStoreService = mock(DocumentVectorStoreService.class);
+        VectorUpsertBatcher batcher = new VectorUpsertBatcher(vectorStoreService, 8, 5_000);
+
+        List<CompletableFuture<Void>> submissions = IntStream.range(0, 4)
+                .mapToObj(job -> batcher.submit(List.of(document(job, 0), document(job, 1))))
+                .toList();
+        submissions.forEach(submission -> submission.orTimeout(5, TimeUnit.SECONDS).join());
+        batcher.shutdown();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Document>> batch = ArgumentCaptor.forClass(List.class);
+        verify(vectorStoreService).upsertDocuments(batch.capture());
+        assertEquals(8, batch.getValue().size());
+    }
+
+    @Test
+    void failedBatchIsRetriedPerSubmissionSoOnlyTheBadJobFails() {
+        DocumentVectorStoreService vectorStoreService = mock(DocumentVectorStoreService.class);
+        doAnswer(invocation -> {
+            List<Document> documents = invocation.getArgument(0);
+            if (documents.stream().anyMatch(document -> document.getId().startsWith("bad"))) {
+                throw new IllegalArgumentException("input too long");
+            }
+            return null;
+        }).when(vectorStoreService).upsertDocuments(anyList());
+        VectorUpsertBatcher batcher = new VectorUpsertBatcher(vectorStoreService, 2, 5_000);
+
+        CompletableFuture<Void> good = batcher.submit(List.of(document(1, 0)));
+        CompletableFuture<Void> bad = batcher.submit(List.of(new Document("bad:1", "text", Map.of())));
+
+        good.orTimeout(5, TimeUnit.SECONDS).join();
+        CompletionException failure = assertThrows(CompletionException.class, () -> bad.orTimeout(5, TimeUnit.SECONDS).join());
+        assertEquals(IllegalArgumentException.class, failure.getCause().getClass());
+        batcher.shutdown();
+    }
+
+    @Test
+    void batchFailsAtOnceWhenTheEmbeddingServerIsUnreachable() {
+        DocumentVectorStoreService vectorStoreService = mock(DocumentVectorStoreService.class);
+        ResourceAccessException unreachable = new ResourceAccessException("Connection refused");
+        doThrow(unreachable).when(vectorStoreService).upsertDocuments(anyList());
+        VectorUpsertBatcher batcher = new VectorUpsertBatcher(vectorStoreService, 2, 5_000);
+
+        CompletableFuture<Void> first = batcher.submit(List.of(document(1, 0)));
+        CompletableFuture<Void> second = batcher.submit(List.of(document(2, 0)));
+
+        for (CompletableFuture<Void> submission : List.of(first, second)) {
+            CompletionException failure = assertThrows(CompletionException.class, () -> submission.orTimeout(5, TimeUnit.SECONDS).join());
+            assertSame(unreachable, failure.getCause());
+        }
+        verify(vectorStoreService, times(1)).upsertDocuments(anyList());
+        batcher.shutdown();
+    }
+
+    private Document document(int job, int variant) {
+        return new Document("article:" + job + ":" + variant, "content " + job, Map.of());
+    }
+}